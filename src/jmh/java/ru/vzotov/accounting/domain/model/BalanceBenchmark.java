@@ -0,0 +1,75 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.banking.domain.model.OperationType;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Balance of an account over operation sets of different size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BalanceBenchmark {
+
+    private static final AccountNumber ACCOUNT = new AccountNumber("40817810108290012345");
+
+    private static final LocalDate DATE = LocalDate.of(2020, Month.JANUARY, 1);
+
+    @Param({"100", "10000", "1000000"})
+    public int operations;
+
+    private Remain remain;
+
+    private List<Operation> records;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(operations);
+        remain = new Remain(ACCOUNT, DATE, Money.rubles(10000.0d));
+        records = new ArrayList<>(operations);
+        for (int i = 0; i < operations; i++) {
+            records.add(new Operation(
+                    new OperationId("op-" + i),
+                    DATE.plusDays(random.nextInt(3650) - 30),
+                    Money.kopecks(100L + random.nextInt(100_000)),
+                    random.nextBoolean() ? OperationType.DEPOSIT : OperationType.WITHDRAW,
+                    ACCOUNT,
+                    "operation " + i
+            ));
+        }
+    }
+
+    @Benchmark
+    public Money balance() {
+        return new Balance(remain, records).value();
+    }
+
+    @Benchmark
+    public Money parallel() {
+        return Balance.parallel(remain, records).value();
+    }
+}
@@ -0,0 +1,74 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.calendar.domain.model.Recurrence;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Totals of a budget balance with different number of plan items.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BudgetBalanceBenchmark {
+
+    private static final AccountNumber ACCOUNT = new AccountNumber("40817810108290012345");
+
+    private static final LocalDate DATE = LocalDate.of(2020, Month.JANUARY, 1);
+
+    @Param({"10", "100", "1000"})
+    public int items;
+
+    private BudgetBalance balance;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(items);
+        final List<BudgetPlan> plan = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            final BudgetRuleType type = i % 4 == 0 ? BudgetRuleType.INCOME : BudgetRuleType.EXPENSE;
+            final Money value = Money.kopecks(100L + random.nextInt(1_000_000));
+            final BudgetRule rule = new BudgetRule(BudgetRuleId.nextId(), type, null, null, ACCOUNT, ACCOUNT,
+                    new Recurrence(DATE), "rule " + i, value);
+            plan.add(new BudgetPlan(BudgetPlanId.nextId(), rule, DATE, BudgetDirection.of(type.symbol()), value,
+                    ACCOUNT, ACCOUNT, null, null));
+        }
+        balance = new BudgetBalance(DATE, DATE.plusDays(6), plan, List.of(), List.of());
+    }
+
+    @Benchmark
+    public Money incomes() {
+        return balance.incomes();
+    }
+
+    @Benchmark
+    public Money expenses() {
+        return balance.expenses();
+    }
+
+    @Benchmark
+    public Money balance() {
+        return balance.balance();
+    }
+}
@@ -0,0 +1,124 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.BankRecord;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.banking.domain.model.OperationType;
+import ru.vzotov.calendar.domain.model.Recurrence;
+import ru.vzotov.calendar.domain.model.RecurrenceUnit;
+import ru.vzotov.calendar.domain.model.WorkCalendar;
+import ru.vzotov.calendar.domain.model.WorkCalendars;
+import ru.vzotov.domain.model.Money;
+import ru.vzotov.person.domain.model.PersonId;
+
+import javax.script.ScriptException;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forecast calculation over rule sets of different size, horizons and operation volumes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BudgetBenchmark {
+
+    private static final LocalDate START = LocalDate.of(2020, Month.JANUARY, 1);
+
+    private static final WorkCalendar CALENDAR = WorkCalendars.CALENDAR_2020;
+
+    private static final AccountNumber ACCOUNT = new AccountNumber("40817810108290012345");
+
+    @Param({"10", "100", "1000"})
+    public int rules;
+
+    @Param({"4", "13", "52"})
+    public int weeks;
+
+    @Param({"0", "10000"})
+    public int operations;
+
+    private Budget budget;
+
+    private BudgetSnapshot snapshot;
+
+    private LocalDate finish;
+
+    private List<BankRecord<?>> records;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(rules);
+        final Set<BudgetRule> set = new HashSet<>();
+        for (int i = 0; i < rules; i++) {
+            final Recurrence recurrence = switch (i % 3) {
+                case 0 -> new Recurrence(START, null, RecurrenceUnit.WEEKLY);
+                case 1 -> new Recurrence(START, null, RecurrenceUnit.MONTHLY, 1, 1 + random.nextInt(28));
+                default -> new Recurrence(START.plusDays(random.nextInt(365)));
+            };
+            set.add(new BudgetRule(
+                    BudgetRuleId.nextId(),
+                    i % 4 == 0 ? BudgetRuleType.INCOME : BudgetRuleType.EXPENSE,
+                    null,
+                    null,
+                    ACCOUNT,
+                    ACCOUNT,
+                    recurrence,
+                    "rule " + i,
+                    Money.kopecks(100L + random.nextInt(1_000_000))
+            ));
+        }
+        budget = new Budget(BudgetId.nextId(), PersonId.nextId(), "benchmark", set);
+        snapshot = budget.snapshot();
+        finish = START.plusWeeks(weeks).minusDays(1);
+
+        records = new ArrayList<>(operations);
+        for (int i = 0; i < operations; i++) {
+            records.add(new Operation(
+                    new OperationId("op-" + i),
+                    START.plusDays(random.nextInt(weeks * 7)),
+                    Money.kopecks(100L + random.nextInt(100_000)),
+                    random.nextBoolean() ? OperationType.DEPOSIT : OperationType.WITHDRAW,
+                    ACCOUNT,
+                    "operation " + i
+            ));
+        }
+    }
+
+    @Benchmark
+    public List<BudgetBalance> calculate() throws ScriptException {
+        return budget.calculate(CALENDAR, List.of(), ACCOUNT, START, finish, records);
+    }
+
+    @Benchmark
+    public List<List<BudgetSnapshot.Occurrence>> calculateRules() throws ScriptException {
+        final List<BudgetSnapshot.Period> periods = snapshot.periods(START, finish);
+        final List<List<BudgetSnapshot.Occurrence>> result = new ArrayList<>(rules);
+        int order = 0;
+        for (BudgetRule rule : snapshot.rules()) {
+            result.add(BudgetSnapshot.evaluate(rule, order++, CALENDAR, periods));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,59 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vzotov.calendar.domain.model.WorkCalendars;
+import ru.vzotov.domain.model.Money;
+
+import javax.script.ScriptException;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Script evaluation of a typical salary calculation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculationBenchmark {
+
+    private final Calculation calculation = new Calculation(
+            "value.amount().doubleValue() * (calendar.workdaysBetween(month.atDay(1), month.atDay(16)) / calendar.workdaysBetween(month.atDay(1), month.atEndOfMonth()));"
+    );
+
+    private Map<String, Object> arguments;
+
+    @Setup
+    public void setup() {
+        final LocalDate date = LocalDate.of(2020, Month.MARCH, 20);
+        final Money value = Money.rubles(18000.0d);
+        arguments = new HashMap<>();
+        arguments.put("date", date);
+        arguments.put("month", YearMonth.from(date));
+        arguments.put("prevMonth", YearMonth.from(date).minusMonths(1));
+        arguments.put("nextMonth", YearMonth.from(date).plusMonths(1));
+        arguments.put("value", value);
+        arguments.put("currency", value.currency().getCurrencyCode());
+        arguments.put("calendar", WorkCalendars.CALENDAR_2020);
+    }
+
+    @Benchmark
+    public Money calculate() throws ScriptException {
+        return calculation.calculate(arguments);
+    }
+}
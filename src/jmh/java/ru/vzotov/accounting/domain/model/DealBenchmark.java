@@ -0,0 +1,75 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.cashreceipt.domain.model.ReceiptId;
+import ru.vzotov.domain.model.Money;
+import ru.vzotov.person.domain.model.PersonId;
+import ru.vzotov.purchase.domain.model.PurchaseId;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Joining deals of different size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DealBenchmark {
+
+    private static final PersonId OWNER = new PersonId("benchmark");
+
+    private static final LocalDate DATE = LocalDate.of(2020, Month.JANUARY, 1);
+
+    @Param({"1", "10", "1000"})
+    public int size;
+
+    private Deal target;
+
+    private Deal source;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        target = deal("target");
+        source = deal("source");
+    }
+
+    @Benchmark
+    public Deal join() {
+        target.join(source);
+        return target;
+    }
+
+    private Deal deal(String prefix) {
+        final Set<ReceiptId> receipts = new HashSet<>();
+        final Set<OperationId> operations = new HashSet<>();
+        final List<PurchaseId> purchases = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            receipts.add(new ReceiptId(prefix + "-receipt-" + i));
+            operations.add(new OperationId(prefix + "-op-" + i));
+            purchases.add(new PurchaseId(prefix + "-purchase-" + i));
+        }
+        return new Deal(DealId.nextId(), OWNER, DATE, Money.kopecks(100L), null, null, null,
+                receipts, operations, Set.of(), purchases);
+    }
+}
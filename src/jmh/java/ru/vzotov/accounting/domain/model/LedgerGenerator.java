@@ -0,0 +1,139 @@
+package ru.vzotov.accounting.domain.model;
+
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.banking.domain.model.OperationType;
+import ru.vzotov.calendar.domain.model.Recurrence;
+import ru.vzotov.calendar.domain.model.RecurrenceUnit;
+import ru.vzotov.domain.model.Money;
+import ru.vzotov.person.domain.model.PersonId;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generator of reproducible synthetic ledgers: accounts, budget rules, operations, remains and deals.
+ * The same seed always produces the same data.
+ */
+public class LedgerGenerator {
+
+    private static final String[] EXPRESSIONS = {
+            "value.amount().doubleValue() * 1.1",
+            "value.amount().doubleValue() * (calendar.workdaysBetween(month.atDay(1), month.atDay(16)) / calendar.workdaysBetween(month.atDay(1), month.atEndOfMonth()));",
+            "value.amount().doubleValue() * (date.getDayOfMonth() > 15 ? 1.0 : 0.5)"
+    };
+
+    private final Random random;
+
+    public LedgerGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public List<AccountNumber> accounts(int count) {
+        final List<AccountNumber> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new AccountNumber(String.format("40817810%012d", i)));
+        }
+        return result;
+    }
+
+    /**
+     * Generate budget rules with mixed recurrences. About <code>scripts</code> fraction of rules
+     * have script calculations.
+     */
+    public Set<BudgetRule> rules(int count, List<AccountNumber> accounts, LocalDate start, double scripts) {
+        final Set<BudgetRule> result = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            final Recurrence recurrence = switch (random.nextInt(4)) {
+                case 0 -> new Recurrence(start, null, RecurrenceUnit.WEEKLY);
+                case 1 -> new Recurrence(start, null, RecurrenceUnit.MONTHLY, 1, 1 + random.nextInt(28));
+                case 2 -> new Recurrence(start, null, RecurrenceUnit.WEEKLY, 1 + random.nextInt(4), 1 + random.nextInt(7));
+                default -> new Recurrence(start.plusDays(random.nextInt(365)));
+            };
+            final BudgetRuleType type = switch (random.nextInt(10)) {
+                case 0, 1 -> BudgetRuleType.INCOME;
+                case 2 -> BudgetRuleType.MOVE;
+                default -> BudgetRuleType.EXPENSE;
+            };
+            final Calculation calculation = random.nextDouble() < scripts
+                    ? new Calculation(EXPRESSIONS[random.nextInt(EXPRESSIONS.length)])
+                    : null;
+            result.add(new BudgetRule(
+                    BudgetRuleId.nextId(),
+                    type,
+                    null,
+                    null,
+                    pick(accounts),
+                    pick(accounts),
+                    recurrence,
+                    "rule " + i,
+                    Money.kopecks(100L + random.nextInt(5_000_000)),
+                    calculation
+            ));
+        }
+        return result;
+    }
+
+    public Budget budget(int rules, List<AccountNumber> accounts, LocalDate start, double scripts) {
+        return new Budget(BudgetId.nextId(), PersonId.nextId(), "synthetic", rules(rules, accounts, start, scripts));
+    }
+
+    /**
+     * Generate operations with dates uniformly distributed in the time range.
+     */
+    public List<Operation> operations(int count, List<AccountNumber> accounts, LocalDate from, LocalDate to) {
+        final int days = (int) ChronoUnit.DAYS.between(from, to) + 1;
+        final List<Operation> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new Operation(
+                    new OperationId("op-" + i),
+                    from.plusDays(random.nextInt(days)),
+                    Money.kopecks(100L + random.nextInt(1_000_000)),
+                    random.nextInt(5) == 0 ? OperationType.DEPOSIT : OperationType.WITHDRAW,
+                    pick(accounts),
+                    "operation " + i
+            ));
+        }
+        return result;
+    }
+
+    /**
+     * Generate remains of every account at regular intervals.
+     */
+    public List<Remain> remains(List<AccountNumber> accounts, LocalDate from, LocalDate to, int intervalDays) {
+        final List<Remain> result = new ArrayList<>();
+        for (AccountNumber account : accounts) {
+            for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(intervalDays)) {
+                result.add(new Remain(account, date, Money.kopecks(random.nextInt(100_000_000))));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Generate one deal per operation.
+     */
+    public List<Deal> deals(List<Operation> operations, PersonId owner) {
+        final List<Deal> result = new ArrayList<>(operations.size());
+        for (Operation operation : operations) {
+            final Deal deal = new Deal(DealId.nextId(), owner, operation.date(), operation.amount());
+            deal.addOperation(operation.operationId());
+            result.add(deal);
+        }
+        return result;
+    }
+
+    public Random random() {
+        return random;
+    }
+
+    private <T> T pick(List<T> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+}
@@ -0,0 +1,241 @@
+package ru.vzotov.accounting.domain.model;
+
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.BankRecord;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.calendar.domain.model.WorkCalendar;
+import ru.vzotov.calendar.domain.model.WorkCalendars;
+import ru.vzotov.person.domain.model.PersonId;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Load test of the model on a synthetic ledger.
+ * <p>
+ * Usage: <code>mvn -Pjmh test-compile exec:exec@load -Dload.args="workload=calculate threads=8 duration=60"</code>
+ * <p>
+ * Parameters (<code>name=value</code>):
+ * <ul>
+ *     <li><code>workload</code> - <code>calculate</code>, <code>balance</code>, <code>deal</code> or <code>all</code></li>
+ *     <li><code>threads</code> - number of concurrent workers</li>
+ *     <li><code>duration</code> - duration of measurement, in seconds (after warmup of the same duration / 4)</li>
+ *     <li><code>accounts</code>, <code>rules</code>, <code>operations</code> - size of the ledger</li>
+ *     <li><code>scripts</code> - fraction of rules with script calculations</li>
+ *     <li><code>weeks</code> - forecast horizon</li>
+ *     <li><code>seed</code> - seed of the ledger generator</li>
+ * </ul>
+ * The report contains throughput, latency percentiles and heap usage.
+ */
+public class LoadTest {
+
+    private static final LocalDate START = LocalDate.of(2020, Month.JANUARY, 1);
+
+    private static final LocalDate FINISH = LocalDate.of(2020, Month.DECEMBER, 31);
+
+    private static final WorkCalendar CALENDAR = WorkCalendars.CALENDAR_2020;
+
+    private final Map<String, String> parameters;
+
+    private final List<AccountNumber> accounts;
+
+    private final Budget budget;
+
+    private final List<Remain> remains;
+
+    private final List<BankRecord<?>> records;
+
+    private final Map<AccountNumber, List<Operation>> operationsByAccount;
+
+    private final List<Operation> operations;
+
+    private final int weeks;
+
+    public LoadTest(Map<String, String> parameters) {
+        this.parameters = parameters;
+        final LedgerGenerator generator = new LedgerGenerator(longParameter("seed", 1L));
+        this.accounts = generator.accounts(intParameter("accounts", 100));
+        this.budget = generator.budget(intParameter("rules", 1000), accounts, START, doubleParameter("scripts", 0.0d));
+        this.operations = generator.operations(intParameter("operations", 1_000_000), accounts, START, FINISH);
+        this.records = new ArrayList<>(operations);
+        this.remains = generator.remains(accounts, START, FINISH, 30);
+        this.operationsByAccount = operations.stream().collect(Collectors.groupingBy(Operation::account));
+        this.weeks = intParameter("weeks", 13);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Map<String, String> parameters = new HashMap<>();
+        for (String arg : args) {
+            for (String pair : arg.trim().split("\\s+")) {
+                final int i = pair.indexOf('=');
+                if (i > 0) parameters.put(pair.substring(0, i), pair.substring(i + 1));
+            }
+        }
+
+        System.out.println("Generating ledger " + parameters);
+        final LoadTest test = new LoadTest(parameters);
+        System.out.printf("Ledger: %d accounts, %d rules, %d operations, %d remains, heap used %d MiB%n",
+                test.accounts.size(), test.budget.rules().size(), test.operations.size(), test.remains.size(),
+                usedHeap() >> 20);
+
+        final String workload = parameters.getOrDefault("workload", "all");
+        for (String name : List.of("calculate", "balance", "deal")) {
+            if ("all".equals(workload) || name.equals(workload)) {
+                test.run(name);
+            }
+        }
+    }
+
+    private void run(String workload) throws Exception {
+        final int threads = intParameter("threads", Runtime.getRuntime().availableProcessors());
+        final long duration = TimeUnit.SECONDS.toNanos(longParameter("duration", 30L));
+
+        final Task task = switch (workload) {
+            case "calculate" -> this::calculate;
+            case "balance" -> this::balance;
+            case "deal" -> this::deal;
+            default -> throw new IllegalArgumentException("Unknown workload " + workload);
+        };
+
+        System.out.printf("%n[%s] warmup%n", workload);
+        measure(task, threads, duration / 4);
+
+        System.gc();
+        resetPeakUsage();
+        System.out.printf("[%s] measurement, %d threads%n", workload, threads);
+        final Result result = measure(task, threads, duration);
+
+        System.out.printf(Locale.ROOT, "[%s] operations: %d, errors: %d, throughput: %.1f ops/s%n",
+                workload, result.count, result.errors, result.count * 1e9d / duration);
+        System.out.printf(Locale.ROOT, "[%s] latency, ms: p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f%n",
+                workload,
+                result.latency.quantile(0.5d) / 1e6d,
+                result.latency.quantile(0.9d) / 1e6d,
+                result.latency.quantile(0.99d) / 1e6d,
+                result.latency.quantile(0.999d) / 1e6d,
+                result.latency.quantile(1.0d) / 1e6d);
+        System.out.printf("[%s] heap: used %d MiB, peak %d MiB%n", workload, usedHeap() >> 20, peakHeap() >> 20);
+    }
+
+    private Result measure(Task task, int threads, long duration) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final long deadline = System.nanoTime() + duration;
+            final List<Future<Result>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    final Result result = new Result();
+                    while (System.nanoTime() < deadline) {
+                        final long started = System.nanoTime();
+                        try {
+                            task.run();
+                        } catch (Exception e) {
+                            result.errors++;
+                        }
+                        result.latency.add(System.nanoTime() - started);
+                        result.count++;
+                    }
+                    return result;
+                }));
+            }
+            final Result total = new Result();
+            for (Future<Result> future : futures) {
+                total.merge(future.get());
+            }
+            return total;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void calculate() throws Exception {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final LocalDate start = START.plusWeeks(random.nextInt(Math.max(1, 52 - weeks)));
+        final LocalDate finish = start.plusWeeks(weeks).minusDays(1);
+        budget.calculate(CALENDAR, remains, accounts.get(0), start, finish, records);
+    }
+
+    private void balance() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final AccountNumber account = accounts.get(random.nextInt(accounts.size()));
+        final Remain remain = remains.get(random.nextInt(remains.size()));
+        new Balance(new Remain(account, remain.date(), remain.value()),
+                operationsByAccount.getOrDefault(account, List.of())).value();
+    }
+
+    private void deal() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int from = random.nextInt(Math.max(1, operations.size() - 100));
+        final LedgerGenerator generator = new LedgerGenerator(random.nextLong());
+        final List<Deal> deals = generator.deals(operations.subList(from, Math.min(operations.size(), from + 100)), PersonId.nextId());
+        for (int i = 1; i < deals.size(); i++) {
+            final Deal source = deals.get(i);
+            final Deal target = deals.get(random.nextInt(i));
+            if (random.nextBoolean()) {
+                target.join(source);
+            } else {
+                source.operations().stream().findFirst()
+                        .ifPresent(operation -> source.moveOperation(operation, target));
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long peakHeap() {
+        long result = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) result += pool.getPeakUsage().getUsed();
+        }
+        return result;
+    }
+
+    private static void resetPeakUsage() {
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    private int intParameter(String name, int defaultValue) {
+        return parameters.containsKey(name) ? Integer.parseInt(parameters.get(name)) : defaultValue;
+    }
+
+    private long longParameter(String name, long defaultValue) {
+        return parameters.containsKey(name) ? Long.parseLong(parameters.get(name)) : defaultValue;
+    }
+
+    private double doubleParameter(String name, double defaultValue) {
+        return parameters.containsKey(name) ? Double.parseDouble(parameters.get(name)) : defaultValue;
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    private static class Result {
+        final QuantileSketch latency = new QuantileSketch();
+        long count;
+        long errors;
+
+        void merge(Result other) {
+            latency.merge(other.latency);
+            count += other.count;
+            errors += other.errors;
+        }
+    }
+}
@@ -3,7 +3,9 @@ package ru.vzotov.accounting.domain.model;
 import org.apache.commons.lang3.Validate;
 import ru.vzotov.banking.domain.model.BankRecord;
 import ru.vzotov.ddd.shared.ValueObject;
+import ru.vzotov.domain.model.Money;
 
+import java.util.Currency;
 import java.util.List;
 import java.util.Objects;
 
@@ -23,10 +25,30 @@ public class AccountMovement implements ValueObject<AccountMovement> {
     private Remain finish;
 
     /**
-     * Операции по счету
+     * Операции по счету. В режиме сводки не хранятся.
      */
     private List<BankRecord<?>> operations;
 
+    /**
+     * Количество операций
+     */
+    private int count;
+
+    /**
+     * Сумма поступлений
+     */
+    private Money deposit;
+
+    /**
+     * Сумма списаний
+     */
+    private Money withdraw;
+
+    /**
+     * Источник операций в режиме сводки
+     */
+    private transient OperationLoader loader;
+
     public AccountMovement(Remain start, Remain finish, List<BankRecord<?>> operations) {
         Validate.notNull(start);
         Validate.notNull(finish);
@@ -34,6 +56,40 @@ public class AccountMovement implements ValueObject<AccountMovement> {
         this.start = start;
         this.finish = finish;
         this.operations = operations;
+
+        final Currency currency = start.value().currency();
+        long deposit = 0L, withdraw = 0L;
+        for (BankRecord<?> op : operations) {
+            Validate.isTrue(currency.equals(op.amount().currency()));
+            switch (op.type()) {
+                case DEPOSIT -> deposit += op.amount().rawAmount();
+                case WITHDRAW -> withdraw += op.amount().rawAmount();
+                //noinspection UnnecessaryDefault
+                default -> throw new IllegalArgumentException("Unknown operation type");
+            }
+        }
+        this.count = operations.size();
+        this.deposit = Money.ofRaw(deposit, currency);
+        this.withdraw = Money.ofRaw(withdraw, currency);
+    }
+
+    /**
+     * Movement in summary mode. Operations are not kept and are loaded on demand.
+     *
+     * @param loader source of operations
+     */
+    public AccountMovement(Remain start, Remain finish, int count, Money deposit, Money withdraw, OperationLoader loader) {
+        Validate.notNull(start);
+        Validate.notNull(finish);
+        Validate.isTrue(count >= 0);
+        Validate.notNull(deposit);
+        Validate.notNull(withdraw);
+        this.start = start;
+        this.finish = finish;
+        this.count = count;
+        this.deposit = deposit;
+        this.withdraw = withdraw;
+        this.loader = loader;
     }
 
     public Remain start() {
@@ -44,14 +100,50 @@ public class AccountMovement implements ValueObject<AccountMovement> {
         return finish;
     }
 
+    /**
+     * @return operations of the movement. In summary mode operations are loaded on every call.
+     * @throws IllegalStateException if movement is a summary without source of operations
+     */
     public List<BankRecord<?>> operations() {
-        return operations;
+        if (operations != null) return operations;
+        Validate.validState(loader != null, "Operations of summary movement are not available");
+        return loader.load(start.account(), start.date(), finish.date());
+    }
+
+    /**
+     * @return true if operations are not kept by the movement
+     */
+    public boolean isSummary() {
+        return operations == null;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public Money deposit() {
+        return deposit;
+    }
+
+    public Money withdraw() {
+        return withdraw;
+    }
+
+    /**
+     * @param loader source of operations, may be null
+     * @return movement without operations
+     */
+    public AccountMovement summary(OperationLoader loader) {
+        return new AccountMovement(start, finish, count, deposit, withdraw, loader);
     }
 
     @Override
     public boolean sameValueAs(AccountMovement that) {
         return that != null && Objects.equals(start, that.start) &&
                 Objects.equals(finish, that.finish) &&
+                count == that.count &&
+                Objects.equals(deposit, that.deposit) &&
+                Objects.equals(withdraw, that.withdraw) &&
                 Objects.equals(operations, that.operations);
     }
 
@@ -65,7 +157,7 @@ public class AccountMovement implements ValueObject<AccountMovement> {
 
     @Override
     public int hashCode() {
-        return Objects.hash(start, finish, operations);
+        return Objects.hash(start, finish, count, deposit, withdraw, operations);
     }
 
     @Override
@@ -73,6 +165,9 @@ public class AccountMovement implements ValueObject<AccountMovement> {
         return "AccountMovement{" +
                 "start=" + start +
                 ", finish=" + finish +
+                ", count=" + count +
+                ", deposit=" + deposit +
+                ", withdraw=" + withdraw +
                 ", operations=" + operations +
                 '}';
     }
@@ -0,0 +1,182 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.domain.model.Money;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Incrementally updated account balance.
+ * <p>
+ * The accumulator starts from a remain and is updated operation by operation: appending an operation
+ * costs <code>O(1)</code>, removing or replacing an operation costs <code>O(n)</code>.
+ * {@link #snapshot()} returns an immutable {@link Balance} without recalculating it; the snapshot shares
+ * operations with the accumulator, so taking it costs <code>O(1)</code> as well.
+ * <p>
+ * Operations made before the date of the remain are kept but do not change the value, as in {@link Balance}.
+ * The accumulator is not thread-safe and should be confined to a single thread; snapshots can be shared.
+ */
+public class BalanceAccumulator {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Remain remain;
+
+    private final Currency currency;
+
+    private Operation[] operations = new Operation[INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * Value of the balance in minor currency units
+     */
+    private long value;
+
+    /**
+     * True if the operations array is referenced by a snapshot and must not be modified in place
+     */
+    private boolean shared;
+
+    public BalanceAccumulator(Remain remain) {
+        Validate.notNull(remain);
+        this.remain = remain;
+        this.currency = remain.value().currency();
+        this.value = remain.value().rawAmount();
+    }
+
+    public BalanceAccumulator(Remain remain, Collection<Operation> operations) {
+        this(remain);
+        Validate.notNull(operations);
+        operations.forEach(this::add);
+    }
+
+    public Remain remain() {
+        return remain;
+    }
+
+    public Money value() {
+        return Money.ofRaw(value, currency);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Append operation.
+     *
+     * @param operation new operation
+     */
+    public void add(Operation operation) {
+        value += amount(operation);
+        if (size == operations.length) {
+            operations = Arrays.copyOf(operations, size * 2);
+            shared = false;
+        }
+        // slots after the size are not visible to snapshots, so they can be written even if the array is shared
+        operations[size++] = operation;
+    }
+
+    /**
+     * Remove operation.
+     *
+     * @param operation operation to remove
+     * @return true if the operation was found
+     */
+    public boolean remove(Operation operation) {
+        final int index = indexOf(operation);
+        if (index < 0) return false;
+        value -= amount(operations[index]);
+        final Operation[] target = shared ? new Operation[operations.length] : operations;
+        if (shared) System.arraycopy(operations, 0, target, 0, index);
+        System.arraycopy(operations, index + 1, target, index, size - index - 1);
+        target[--size] = null;
+        operations = target;
+        shared = false;
+        return true;
+    }
+
+    /**
+     * Replace operation with its corrected version.
+     *
+     * @param operation operation to replace
+     * @param corrected corrected operation
+     * @return true if the operation was found
+     */
+    public boolean replace(Operation operation, Operation corrected) {
+        final int index = indexOf(operation);
+        if (index < 0) return false;
+        final long delta = amount(corrected) - amount(operations[index]);
+        if (shared) {
+            operations = operations.clone();
+            shared = false;
+        }
+        operations[index] = corrected;
+        value += delta;
+        return true;
+    }
+
+    /**
+     * @return immutable balance with the current value and operations
+     */
+    public Balance snapshot() {
+        shared = true;
+        return new Balance(remain, new Operations(operations, size), value());
+    }
+
+    private int indexOf(Operation operation) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (Objects.equals(operations[i], operation)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return signed amount of the operation in minor currency units, or zero for operations before the remain
+     */
+    private long amount(Operation operation) {
+        Validate.notNull(operation);
+        if (operation.date().isBefore(remain.date())) {
+            return 0L;
+        }
+        final Money v = operation.amount();
+        Validate.isTrue(v.currency().equals(currency));
+        return switch (operation.type()) {
+            case DEPOSIT -> v.rawAmount();
+            case WITHDRAW -> -v.rawAmount();
+            //noinspection UnnecessaryDefault
+            default -> throw new IllegalArgumentException("Unknown operation type");
+        };
+    }
+
+    /**
+     * Immutable view of the first operations of the array
+     */
+    private static final class Operations extends AbstractList<Operation> implements RandomAccess {
+        private final Operation[] operations;
+        private final int size;
+
+        Operations(Operation[] operations, int size) {
+            this.operations = operations;
+            this.size = size;
+        }
+
+        @Override
+        public Operation get(int index) {
+            Objects.checkIndex(index, size);
+            return operations[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
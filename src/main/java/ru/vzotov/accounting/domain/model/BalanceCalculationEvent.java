@@ -0,0 +1,34 @@
+package ru.vzotov.accounting.domain.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event of an account balance calculation.
+ */
+@Name("ru.vzotov.accounting.BalanceCalculation")
+@Label("Balance Calculation")
+@Description("Calculation of an account balance over a set of operations")
+@Category({"Accounting", "Balance"})
+@Threshold("10 ms")
+final class BalanceCalculationEvent extends Event {
+
+    /**
+     * Type of the event. Events are not created while no recording enables the type.
+     */
+    static final EventType TYPE = EventType.getEventType(BalanceCalculationEvent.class);
+
+    @Label("Account")
+    String account;
+
+    @Label("Remain Date")
+    String remainDate;
+
+    @Label("Operations")
+    int operations;
+}
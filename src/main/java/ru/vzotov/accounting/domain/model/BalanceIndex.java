@@ -0,0 +1,164 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Currency;
+
+/**
+ * Point-in-time balance index of an account.
+ * <p>
+ * The index is built from a known remain and the operations of the account. Signed amounts of operations
+ * are summed by day in a Fenwick tree over epoch days, so the balance at any date and the net flow between
+ * any two dates are answered in <code>O(log n)</code>, where <i>n</i> is the number of days covered by operations.
+ * Operations can be added in any order; the covered range grows automatically.
+ * <p>
+ * The remain is the balance at the beginning of its date, as in {@link Balance}: the balance at the end
+ * of a day after the remain includes operations from the remain date up to that day, and the balance
+ * at the end of a day before the remain excludes operations after that day.
+ * <p>
+ * The index is not thread-safe.
+ */
+public class BalanceIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Remain remain;
+
+    private final Currency currency;
+
+    private final long remainDay;
+
+    /**
+     * Epoch day of the first slot
+     */
+    private long origin;
+
+    /**
+     * Net flow by day
+     */
+    private long[] daily;
+
+    /**
+     * Fenwick tree over daily flows, 1-based
+     */
+    private long[] tree;
+
+    private long count;
+
+    public BalanceIndex(Remain remain) {
+        Validate.notNull(remain);
+        this.remain = remain;
+        this.currency = remain.value().currency();
+        this.remainDay = remain.date().toEpochDay();
+        this.origin = remainDay - INITIAL_CAPACITY / 2;
+        this.daily = new long[INITIAL_CAPACITY];
+        this.tree = new long[INITIAL_CAPACITY + 1];
+    }
+
+    public BalanceIndex(Remain remain, Collection<Operation> operations) {
+        this(remain);
+        Validate.notNull(operations);
+        operations.forEach(this::add);
+    }
+
+    public Remain remain() {
+        return remain;
+    }
+
+    /**
+     * @return number of indexed operations
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Add operation to the index.
+     *
+     * @param operation operation of the account
+     */
+    public void add(Operation operation) {
+        Validate.notNull(operation);
+        final Money amount = operation.amount();
+        Validate.isTrue(amount.currency().equals(currency));
+        final long delta = switch (operation.type()) {
+            case DEPOSIT -> amount.rawAmount();
+            case WITHDRAW -> -amount.rawAmount();
+            //noinspection UnnecessaryDefault
+            default -> throw new IllegalArgumentException("Unknown operation type");
+        };
+        final long day = operation.date().toEpochDay();
+        ensureCapacity(day);
+        final int slot = (int) (day - origin);
+        daily[slot] += delta;
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+        count++;
+    }
+
+    /**
+     * @param date date
+     * @return balance at the end of the day
+     */
+    public Money balanceAt(LocalDate date) {
+        Validate.notNull(date);
+        return Money.ofRaw(remain.value().rawAmount() + prefix(date.toEpochDay()) - prefix(remainDay - 1), currency);
+    }
+
+    /**
+     * @param from first day (inclusive)
+     * @param to   last day (inclusive)
+     * @return sum of deposits minus sum of withdrawals within the time range
+     */
+    public Money netFlow(LocalDate from, LocalDate to) {
+        Validate.notNull(from);
+        Validate.notNull(to);
+        Validate.isTrue(!from.isAfter(to));
+        return Money.ofRaw(prefix(to.toEpochDay()) - prefix(from.toEpochDay() - 1), currency);
+    }
+
+    /**
+     * @return sum of flows of all days up to the day (inclusive)
+     */
+    private long prefix(long day) {
+        if (day < origin) return 0L;
+        int i = (int) Math.min(day - origin + 1, daily.length);
+        long result = 0L;
+        for (; i > 0; i -= i & -i) {
+            result += tree[i];
+        }
+        return result;
+    }
+
+    private void ensureCapacity(long day) {
+        final long end = origin + daily.length;
+        if (day >= origin && day < end) return;
+
+        final long first = Math.min(origin, day);
+        final long last = Math.max(end, day + 1);
+        long capacity = daily.length;
+        while (capacity < last - first) capacity *= 2;
+        Validate.isTrue(capacity <= Integer.MAX_VALUE - 1, "Time range is too long");
+
+        // leave free space on the side where the range grows
+        final long newOrigin = day < origin ? last - capacity : first;
+        final long[] newDaily = new long[(int) capacity];
+        System.arraycopy(daily, 0, newDaily, (int) (origin - newOrigin), daily.length);
+
+        final long[] newTree = new long[(int) capacity + 1];
+        for (int i = 1; i <= capacity; i++) {
+            newTree[i] += newDaily[i - 1];
+            final int parent = i + (i & -i);
+            if (parent <= capacity) newTree[parent] += newTree[i];
+        }
+
+        origin = newOrigin;
+        daily = newDaily;
+        tree = newTree;
+    }
+}
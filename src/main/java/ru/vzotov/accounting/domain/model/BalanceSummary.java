@@ -0,0 +1,200 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.ddd.shared.ValueObject;
+import ru.vzotov.domain.model.Money;
+
+import java.util.Currency;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/**
+ * Balance calculated from a stream of operations.
+ * <p>
+ * Unlike {@link Balance} the summary does not keep the operations, only their count and totals,
+ * so operations can be read straight from a database cursor or a file in constant memory.
+ */
+public class BalanceSummary implements ValueObject<BalanceSummary> {
+
+    /**
+     * Остаток по счету, от которого проводим расчет баланса
+     */
+    private final Remain remain;
+
+    /**
+     * Количество учтенных операций
+     */
+    private final long count;
+
+    /**
+     * Сумма поступлений
+     */
+    private final Money deposit;
+
+    /**
+     * Сумма списаний
+     */
+    private final Money withdraw;
+
+    public BalanceSummary(Remain remain, long count, Money deposit, Money withdraw) {
+        Validate.notNull(remain);
+        Validate.isTrue(count >= 0);
+        Validate.notNull(deposit);
+        Validate.notNull(withdraw);
+        Validate.isTrue(deposit.currency().equals(remain.value().currency()));
+        Validate.isTrue(withdraw.currency().equals(remain.value().currency()));
+
+        this.remain = remain;
+        this.count = count;
+        this.deposit = deposit;
+        this.withdraw = withdraw;
+    }
+
+    public static BalanceSummary of(Remain remain, Iterator<Operation> operations) {
+        Validate.notNull(operations);
+        final Accumulator accumulator = new Accumulator(remain);
+        operations.forEachRemaining(accumulator);
+        return accumulator.summary();
+    }
+
+    public static BalanceSummary of(Remain remain, Spliterator<Operation> operations) {
+        Validate.notNull(operations);
+        final Accumulator accumulator = new Accumulator(remain);
+        operations.forEachRemaining(accumulator);
+        return accumulator.summary();
+    }
+
+    public static BalanceSummary of(Remain remain, Stream<Operation> operations) {
+        Validate.notNull(operations);
+        return operations.collect(summarizing(remain));
+    }
+
+    /**
+     * Collector of operations into a balance summary.
+     * The collector may be used with parallel streams.
+     *
+     * @param remain remain to calculate the balance from
+     * @return collector
+     */
+    public static Collector<Operation, ?, BalanceSummary> summarizing(Remain remain) {
+        Validate.notNull(remain);
+        return Collector.of(
+                () -> new Accumulator(remain),
+                Accumulator::accept,
+                Accumulator::combine,
+                Accumulator::summary);
+    }
+
+    public Remain remain() {
+        return remain;
+    }
+
+    /**
+     * @return number of operations made since the remain date
+     */
+    public long count() {
+        return count;
+    }
+
+    public Money deposit() {
+        return deposit;
+    }
+
+    public Money withdraw() {
+        return withdraw;
+    }
+
+    public Money value() {
+        return remain.value().add(deposit).subtract(withdraw);
+    }
+
+    @Override
+    public boolean sameValueAs(BalanceSummary that) {
+        return that != null &&
+                count == that.count &&
+                Objects.equals(remain, that.remain) &&
+                Objects.equals(deposit, that.deposit) &&
+                Objects.equals(withdraw, that.withdraw);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BalanceSummary that = (BalanceSummary) o;
+        return sameValueAs(that);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(remain, count, deposit, withdraw);
+    }
+
+    @Override
+    public String toString() {
+        return "BalanceSummary{" +
+                "remain=" + remain +
+                ", count=" + count +
+                ", deposit=" + deposit +
+                ", withdraw=" + withdraw +
+                '}';
+    }
+
+    /**
+     * Mutable totals in minor currency units
+     */
+    static final class Accumulator implements Consumer<Operation> {
+
+        private final Remain remain;
+
+        private final Currency currency;
+
+        long count;
+
+        long deposit;
+
+        long withdraw;
+
+        Accumulator(Remain remain) {
+            this.remain = remain;
+            this.currency = remain.value().currency();
+        }
+
+        @Override
+        public void accept(Operation op) {
+            if (op.date().isBefore(remain.date())) {
+                // пропускаем операции, выполненные до подсчета остатка
+                return;
+            }
+            final Money v = op.amount();
+            Validate.isTrue(v.currency().equals(currency));
+            switch (op.type()) {
+                case DEPOSIT -> deposit += v.rawAmount();
+                case WITHDRAW -> withdraw += v.rawAmount();
+                //noinspection UnnecessaryDefault
+                default -> throw new IllegalArgumentException("Unknown operation type");
+            }
+            count++;
+        }
+
+        Accumulator combine(Accumulator other) {
+            count += other.count;
+            deposit += other.deposit;
+            withdraw += other.withdraw;
+            return this;
+        }
+
+        Money value() {
+            return Money.ofRaw(remain.value().rawAmount() + deposit - withdraw, currency);
+        }
+
+        BalanceSummary summary() {
+            return new BalanceSummary(remain, count, Money.ofRaw(deposit, currency), Money.ofRaw(withdraw, currency));
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.BudgetCategoryId;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.calendar.domain.model.Recurrence;
+import ru.vzotov.cashreceipt.domain.model.PurchaseCategoryId;
+import ru.vzotov.cashreceipt.domain.model.ReceiptId;
+import ru.vzotov.domain.model.Money;
+import ru.vzotov.person.domain.model.PersonId;
+import ru.vzotov.purchase.domain.model.PurchaseId;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Compact binary format of forecast and ledger objects.
+ * <p>
+ * Every object is written as a frame: format version (1 byte), type (1 byte), length of the payload (4 bytes)
+ * and the payload. Dates are written as variable-length epoch days, amounts as variable-length minor units.
+ * Accounts, categories, currencies and other identifiers are dictionary-encoded: an identifier is written
+ * in full only the first time, later frames of the same stream refer to it by index. Budget rules of plan items
+ * are dictionary-encoded too, a rule that changed since it was written is written in full again.
+ * So an {@link Encoder} and a {@link Decoder} must process the same frames in the same order.
+ * <p>
+ * Movements are written in summary mode: remains, number of operations and totals.
+ * Recurrences are written with {@link Recurrence#toString()} and read with {@link Recurrence#fromString(String)}.
+ * Identifiers of other modules are written with <code>toString()</code>.
+ */
+public final class BinaryCodec {
+
+    public static final int VERSION = 2;
+
+    static final byte REMAIN = 1;
+    static final byte MOVEMENT = 2;
+    static final byte PLAN = 3;
+    static final byte BALANCE = 4;
+    static final byte DEAL = 5;
+
+    /**
+     * Version, type and payload length
+     */
+    static final int HEADER = 6;
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Writes frames to byte buffers. The encoder is not thread-safe.
+     */
+    public static final class Encoder {
+
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        private final Map<RuleState, Integer> rules = new HashMap<>();
+
+        /**
+         * Dictionary entries added by the current frame
+         */
+        private final List<Object> added = new ArrayList<>();
+
+        private ByteBuffer out;
+
+        public void encode(Remain remain, ByteBuffer buffer) {
+            frame(buffer, REMAIN, () -> writeRemain(remain));
+        }
+
+        public void encode(AccountMovement movement, ByteBuffer buffer) {
+            frame(buffer, MOVEMENT, () -> writeMovement(movement));
+        }
+
+        public void encode(BudgetPlan plan, ByteBuffer buffer) {
+            frame(buffer, PLAN, () -> writePlan(plan));
+        }
+
+        public void encode(BudgetBalance balance, ByteBuffer buffer) {
+            frame(buffer, BALANCE, () -> writeBalance(balance));
+        }
+
+        public void encode(Deal deal, ByteBuffer buffer) {
+            frame(buffer, DEAL, () -> writeDeal(deal));
+        }
+
+        /**
+         * Write a frame. If the buffer overflows, its position and the dictionaries are restored,
+         * so the frame can be written again after the buffer is drained.
+         */
+        private void frame(ByteBuffer buffer, byte type, Runnable payload) {
+            Validate.notNull(buffer);
+            final int start = buffer.position();
+            out = buffer;
+            added.clear();
+            try {
+                buffer.put((byte) VERSION);
+                buffer.put(type);
+                buffer.putInt(0);
+                payload.run();
+                buffer.putInt(start + 2, buffer.position() - start - HEADER);
+            } catch (BufferOverflowException e) {
+                buffer.position(start);
+                for (Object key : added) {
+                    if (key instanceof RuleState) rules.remove(key);
+                    else strings.remove(key);
+                }
+                throw e;
+            } finally {
+                added.clear();
+                out = null;
+            }
+        }
+
+        private void writeRemain(Remain remain) {
+            writeId(remain.account().number());
+            writeDate(remain.date());
+            writeMoney(remain.value());
+        }
+
+        private void writeMovement(AccountMovement movement) {
+            writeRemain(movement.start());
+            writeRemain(movement.finish());
+            writeVarint(movement.count());
+            writeMoney(movement.deposit());
+            writeMoney(movement.withdraw());
+        }
+
+        private void writePlan(BudgetPlan plan) {
+            writeId(plan.itemId().value());
+            writeRule(plan.rule());
+            writeNullableDate(plan.date());
+            writeNullableDate(plan.occurrence());
+            writeVarint(plan.direction().ordinal());
+            writeMoney(plan.value());
+            writeId(plan.source() == null ? null : plan.source().number());
+            writeId(plan.target() == null ? null : plan.target().number());
+            writeId(plan.category() == null ? null : plan.category().toString());
+            writeId(plan.purchaseCategory() == null ? null : plan.purchaseCategory().toString());
+        }
+
+        private void writeRule(BudgetRule rule) {
+            final RuleState state = RuleState.of(rule);
+            final Integer index = rules.get(state);
+            if (index != null) {
+                writeVarint(index + 1);
+                return;
+            }
+            writeVarint(0);
+            rules.put(state, rules.size());
+            added.add(state);
+            writeId(state.ruleId());
+            writeVarint(state.type().ordinal());
+            writeId(state.category());
+            writeId(state.purchaseCategory());
+            writeId(state.source());
+            writeId(state.target());
+            writeString(state.recurrence());
+            writeString(state.name());
+            writeMoney(state.value());
+            writeString(state.expression());
+            out.put((byte) (state.enabled() ? 1 : 0));
+        }
+
+        private void writeBalance(BudgetBalance balance) {
+            writeDate(balance.from());
+            writeDate(balance.to());
+            writeVarint(balance.items().size());
+            balance.items().forEach(this::writePlan);
+            writeVarint(balance.remains().size());
+            balance.remains().forEach(this::writeRemain);
+            writeVarint(balance.movements().size());
+            balance.movements().forEach(this::writeMovement);
+        }
+
+        private void writeDeal(Deal deal) {
+            writeId(deal.dealId().value());
+            writeId(deal.owner().toString());
+            writeDate(deal.date());
+            writeMoney(deal.amount());
+            writeString(deal.description());
+            writeString(deal.comment());
+            writeId(deal.category() == null ? null : deal.category().toString());
+            // links are live views, so they are written under the lock of the deal
+            DealLocks.withLock(deal.dealId(), () -> {
+                writeIds(deal.receipts());
+                writeIds(deal.operations());
+                writeIds(deal.cardOperations());
+                writeIds(deal.purchases());
+            });
+        }
+
+        private void writeIds(Collection<?> ids) {
+            writeVarint(ids.size());
+            ids.forEach(id -> writeId(id.toString()));
+        }
+
+        /**
+         * Dictionary-encoded nullable string: 0 is null, 1 is a new entry followed by the string,
+         * other values are indexes of known entries shifted by 2
+         */
+        private void writeId(String id) {
+            if (id == null) {
+                writeVarint(0);
+                return;
+            }
+            final Integer index = strings.get(id);
+            if (index != null) {
+                writeVarint(index + 2);
+                return;
+            }
+            writeVarint(1);
+            writeBytes(id.getBytes(StandardCharsets.UTF_8));
+            strings.put(id, strings.size());
+            added.add(id);
+        }
+
+        /**
+         * Nullable string: 0 is null, otherwise length of UTF-8 bytes shifted by 1 followed by the bytes
+         */
+        private void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1L);
+            out.put(bytes);
+        }
+
+        private void writeBytes(byte[] bytes) {
+            writeVarint(bytes.length);
+            out.put(bytes);
+        }
+
+        private void writeMoney(Money money) {
+            writeId(money.currency().getCurrencyCode());
+            writeSigned(money.rawAmount());
+        }
+
+        private void writeDate(LocalDate date) {
+            writeSigned(date.toEpochDay());
+        }
+
+        private void writeNullableDate(LocalDate date) {
+            out.put((byte) (date == null ? 0 : 1));
+            if (date != null) writeDate(date);
+        }
+
+        private void writeSigned(long value) {
+            // zigzag keeps small negative values short
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        private void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.put((byte) value);
+        }
+    }
+
+    /**
+     * Budget rule as it is written. Rules are dictionary-encoded by their state rather than by identifier,
+     * because a rule with the same identifier may be edited or disabled between frames.
+     */
+    private record RuleState(String ruleId, BudgetRuleType type, String category, String purchaseCategory,
+                             String source, String target, String recurrence, String name, Money value,
+                             String expression, boolean enabled) {
+
+        static RuleState of(BudgetRule rule) {
+            return new RuleState(rule.ruleId().value(), rule.type(),
+                    rule.categoryId() == null ? null : rule.categoryId().toString(),
+                    rule.purchaseCategoryId() == null ? null : rule.purchaseCategoryId().toString(),
+                    rule.sourceAccount() == null ? null : rule.sourceAccount().number(),
+                    rule.targetAccount() == null ? null : rule.targetAccount().number(),
+                    rule.recurrence().toString(), rule.name(), rule.value(),
+                    rule.calculation() == null ? null : rule.calculation().expression(),
+                    rule.isEnabled());
+        }
+    }
+
+    /**
+     * Reads frames from byte buffers. If a frame cannot be read, the position of the buffer
+     * and the dictionaries are restored, so the decoder stays usable. The decoder is not thread-safe.
+     */
+    public static final class Decoder {
+
+        private final List<String> strings = new ArrayList<>();
+
+        private final List<BudgetRule> rules = new ArrayList<>();
+
+        private final OperationLoader loader;
+
+        private ByteBuffer in;
+
+        public Decoder() {
+            this(null);
+        }
+
+        /**
+         * @param loader source of operations for decoded movements, may be null
+         */
+        public Decoder(OperationLoader loader) {
+            this.loader = loader;
+        }
+
+        /**
+         * Check that the buffer contains a complete frame.
+         *
+         * @return true if the next frame can be read from the buffer without underflow
+         */
+        public static boolean hasFrame(ByteBuffer buffer) {
+            return buffer.remaining() >= HEADER && buffer.remaining() - HEADER >= buffer.getInt(buffer.position() + 2);
+        }
+
+        /**
+         * Read the next frame of any type.
+         *
+         * @return decoded object
+         * @throws BufferUnderflowException if the buffer does not contain a complete frame. The buffer is not consumed.
+         */
+        public Object decode(ByteBuffer buffer) {
+            return frame(buffer, null, type -> switch (type) {
+                case REMAIN -> readRemain();
+                case MOVEMENT -> readMovement();
+                case PLAN -> readPlan();
+                case BALANCE -> readBalance();
+                case DEAL -> readDeal();
+                default -> throw new IllegalArgumentException("Unknown frame type " + type);
+            });
+        }
+
+        public Remain decodeRemain(ByteBuffer buffer) {
+            return frame(buffer, REMAIN, type -> readRemain());
+        }
+
+        public AccountMovement decodeMovement(ByteBuffer buffer) {
+            return frame(buffer, MOVEMENT, type -> readMovement());
+        }
+
+        public BudgetPlan decodePlan(ByteBuffer buffer) {
+            return frame(buffer, PLAN, type -> readPlan());
+        }
+
+        public BudgetBalance decodeBalance(ByteBuffer buffer) {
+            return frame(buffer, BALANCE, type -> readBalance());
+        }
+
+        public Deal decodeDeal(ByteBuffer buffer) {
+            return frame(buffer, DEAL, type -> readDeal());
+        }
+
+        private <T> T frame(ByteBuffer buffer, Byte expected, Function<Byte, T> payload) {
+            Validate.notNull(buffer);
+            if (!hasFrame(buffer)) throw new BufferUnderflowException();
+            final int version = buffer.get(buffer.position());
+            Validate.isTrue(version == VERSION, "Unsupported format version %d", version);
+            final byte type = buffer.get(buffer.position() + 1);
+            Validate.isTrue(expected == null || expected == type, "Unexpected frame type %d", type);
+            final int start = buffer.position();
+            final int end = start + HEADER + buffer.getInt(start + 2);
+            final int knownStrings = strings.size();
+            final int knownRules = rules.size();
+            buffer.position(start + HEADER);
+            in = buffer;
+            try {
+                final T result = payload.apply(type);
+                Validate.isTrue(buffer.position() == end, "Frame length does not match");
+                return result;
+            } catch (RuntimeException e) {
+                buffer.position(start);
+                strings.subList(knownStrings, strings.size()).clear();
+                rules.subList(knownRules, rules.size()).clear();
+                throw e;
+            } finally {
+                in = null;
+            }
+        }
+
+        private Remain readRemain() {
+            return new Remain(new AccountNumber(readId()), readDate(), readMoney());
+        }
+
+        private AccountMovement readMovement() {
+            final Remain start = readRemain();
+            final Remain finish = readRemain();
+            return new AccountMovement(start, finish, (int) readVarint(), readMoney(), readMoney(), loader);
+        }
+
+        private BudgetPlan readPlan() {
+            final BudgetPlanId itemId = new BudgetPlanId(readId());
+            final BudgetRule rule = readRule();
+            final LocalDate date = readNullableDate();
+            final LocalDate occurrence = readNullableDate();
+            final BudgetDirection direction = BudgetDirection.values()[(int) readVarint()];
+            final Money value = readMoney();
+            final AccountNumber source = account(readId());
+            final AccountNumber target = account(readId());
+            final String category = readId();
+            final String purchaseCategory = readId();
+            return new BudgetPlan(itemId, rule, date, direction, value, source, target,
+                    category == null ? null : BudgetCategoryId.of(category),
+                    purchaseCategory == null ? null : new PurchaseCategoryId(purchaseCategory)).occursOn(occurrence);
+        }
+
+        private BudgetRule readRule() {
+            final int index = (int) readVarint();
+            if (index > 0) return rules.get(index - 1);
+
+            final BudgetRuleId ruleId = new BudgetRuleId(readId());
+            final BudgetRuleType type = BudgetRuleType.values()[(int) readVarint()];
+            final String category = readId();
+            final String purchaseCategory = readId();
+            final AccountNumber source = account(readId());
+            final AccountNumber target = account(readId());
+            final Recurrence recurrence = Recurrence.fromString(readString());
+            final String name = readString();
+            final Money value = readMoney();
+            final String expression = readString();
+            final boolean enabled = in.get() != 0;
+            final BudgetRule rule = new BudgetRule(ruleId, type,
+                    category == null ? null : BudgetCategoryId.of(category),
+                    purchaseCategory == null ? null : new PurchaseCategoryId(purchaseCategory),
+                    source, target, recurrence, name, value,
+                    expression == null ? null : new Calculation(expression), enabled);
+            rules.add(rule);
+            return rule;
+        }
+
+        private BudgetBalance readBalance() {
+            final LocalDate from = readDate();
+            final LocalDate to = readDate();
+            final int items = (int) readVarint();
+            final List<BudgetPlan> plan = new ArrayList<>(items);
+            for (int i = 0; i < items; i++) plan.add(readPlan());
+            final int remainCount = (int) readVarint();
+            final List<Remain> remains = new ArrayList<>(remainCount);
+            for (int i = 0; i < remainCount; i++) remains.add(readRemain());
+            final int movementCount = (int) readVarint();
+            final List<AccountMovement> movements = new ArrayList<>(movementCount);
+            for (int i = 0; i < movementCount; i++) movements.add(readMovement());
+            return new BudgetBalance(from, to, plan, remains, movements);
+        }
+
+        private Deal readDeal() {
+            final DealId dealId = new DealId(readId());
+            final PersonId owner = new PersonId(readId());
+            final LocalDate date = readDate();
+            final Money amount = readMoney();
+            final String description = readString();
+            final String comment = readString();
+            final String category = readId();
+            final Set<ReceiptId> receipts = readIds(ReceiptId::new, new LinkedHashSet<>());
+            final Set<OperationId> operations = readIds(OperationId::new, new LinkedHashSet<>());
+            final Set<OperationId> cardOperations = readIds(OperationId::new, new LinkedHashSet<>());
+            final List<PurchaseId> purchases = readIds(PurchaseId::new, new ArrayList<>());
+            return new Deal(dealId, owner, date, amount, description, comment,
+                    category == null ? null : BudgetCategoryId.of(category),
+                    receipts, operations, cardOperations, purchases);
+        }
+
+        private <T, C extends Collection<T>> C readIds(Function<String, T> factory, C result) {
+            final int n = (int) readVarint();
+            for (int i = 0; i < n; i++) result.add(factory.apply(readId()));
+            return result;
+        }
+
+        private static AccountNumber account(String number) {
+            return number == null ? null : new AccountNumber(number);
+        }
+
+        private String readId() {
+            final int ref = (int) readVarint();
+            if (ref == 0) return null;
+            if (ref > 1) return strings.get(ref - 2);
+            final byte[] bytes = new byte[(int) readVarint()];
+            in.get(bytes);
+            final String id = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(id);
+            return id;
+        }
+
+        private String readString() {
+            final int length = (int) readVarint();
+            if (length == 0) return null;
+            final byte[] bytes = new byte[length - 1];
+            in.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private Money readMoney() {
+            final Currency currency = Currency.getInstance(readId());
+            return Money.ofRaw(readSigned(), currency);
+        }
+
+        private LocalDate readDate() {
+            return LocalDate.ofEpochDay(readSigned());
+        }
+
+        private LocalDate readNullableDate() {
+            return in.get() == 0 ? null : readDate();
+        }
+
+        private long readSigned() {
+            final long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private long readVarint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final byte b = in.get();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return result;
+            }
+            throw new IllegalArgumentException("Malformed variable-length number");
+        }
+    }
+}
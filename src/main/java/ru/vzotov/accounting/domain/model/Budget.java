@@ -6,26 +6,17 @@ import ru.vzotov.banking.domain.model.BankRecord;
 import ru.vzotov.calendar.domain.model.WorkCalendar;
 import ru.vzotov.ddd.shared.AggregateRoot;
 import ru.vzotov.ddd.shared.Entity;
-import ru.vzotov.domain.model.Money;
 import ru.vzotov.person.domain.model.PersonId;
 
 import javax.script.ScriptException;
 import java.time.LocalDate;
-import java.time.YearMonth;
-import java.time.temporal.WeekFields;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Currency;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * Budget
@@ -67,6 +58,16 @@ public class Budget implements Entity<Budget> {
      */
     private PersonId owner;
 
+    /**
+     * Current snapshot. Replaced on every modification of rules or settings.
+     */
+    private transient volatile BudgetSnapshot snapshot;
+
+    /**
+     * Listener of rule changes, not persisted
+     */
+    private transient BudgetListener listener;
+
     public Budget(BudgetId budgetId, PersonId owner, String name, Set<BudgetRule> rules) {
         this(budgetId, owner, name, rules, CURRENCY_DEFAULT, LOCALE_DEFAULT);
     }
@@ -85,6 +86,7 @@ public class Budget implements Entity<Budget> {
         this.rules = new HashSet<>(rules);
         this.currency = currency;
         this.locale = locale;
+        this.snapshot = newSnapshot();
     }
 
     public BudgetId budgetId() {
@@ -108,27 +110,82 @@ public class Budget implements Entity<Budget> {
     }
 
     public Set<BudgetRule> rules() {
-        return Collections.unmodifiableSet(rules);
+        return snapshot().rules();
     }
 
     public void addRule(BudgetRule rule) {
-        this.rules.add(rule);
+        final BudgetListener listener;
+        synchronized (this) {
+            if (!this.rules.add(rule)) return;
+            this.snapshot = newSnapshot();
+            listener = this.listener;
+        }
+        if (listener != null) listener.ruleAdded(this, rule);
     }
 
     public void deleteRule(BudgetRule rule) {
-        this.rules.remove(rule);
+        final BudgetListener listener;
+        synchronized (this) {
+            if (!this.rules.remove(rule)) return;
+            this.snapshot = newSnapshot();
+            listener = this.listener;
+        }
+        if (listener != null) listener.ruleDeleted(this, rule);
+    }
+
+    /**
+     * Set listener of rule changes. Listener is not persisted.
+     * The listener is called only when the rules have changed, after the budget is unlocked,
+     * so changes made concurrently by several threads may be reported in a different order.
+     *
+     * @param listener listener or null
+     */
+    public synchronized void setListener(BudgetListener listener) {
+        this.listener = listener;
     }
 
-    public void setName(String name) {
+    public synchronized BudgetListener listener() {
+        return listener;
+    }
+
+    public synchronized void setName(String name) {
         this.name = name;
     }
 
-    public void setLocale(String locale) {
+    public synchronized void setLocale(String locale) {
         this.locale = locale;
+        this.snapshot = newSnapshot();
     }
 
-    public void setCurrency(Currency currency) {
+    public synchronized void setCurrency(Currency currency) {
         this.currency = currency;
+        this.snapshot = newSnapshot();
+    }
+
+    /**
+     * Immutable view of the budget rules and settings.
+     * The snapshot is built by the modification itself and shared by all readers until the next one,
+     * so concurrent forecasts never block (and are never broken by) modifications of the budget.
+     * Only the first read of a budget loaded from the storage builds the snapshot under the lock.
+     *
+     * @return current snapshot of the budget
+     */
+    public BudgetSnapshot snapshot() {
+        BudgetSnapshot result = snapshot;
+        if (result == null) {
+            synchronized (this) {
+                result = snapshot;
+                if (result == null) {
+                    result = newSnapshot();
+                    snapshot = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private BudgetSnapshot newSnapshot() {
+        return new BudgetSnapshot(budgetId, rules, currency, locale);
     }
 
     public List<BudgetBalance> calculate(
@@ -157,6 +214,7 @@ public class Budget implements Entity<Budget> {
      * @param finish         last day of time range (inclusive)
      * @return list of budget balance entries for each week of time range
      * @throws ScriptException in case of calculation error
+     * @see #snapshot()
      */
     public List<BudgetBalance> calculate(
             WorkCalendar calendar,
@@ -165,148 +223,83 @@ public class Budget implements Entity<Budget> {
             LocalDate start,
             LocalDate finish,
             List<BankRecord<?>> operations) throws ScriptException {
-        Validate.isTrue(!calendar.from().isAfter(start) && !calendar.to().isBefore(finish), "Calendar must include the calculated time range");
-
-        final WeekFields weekFields = WeekFields.of(new Locale(this.locale));
-        final List<BudgetBalance> result = new ArrayList<>();
-        final List<Remain> knownRemains = actualRemains.stream()
-                .filter(remain -> !remain.date().isAfter(finish))
-                .sorted(Comparator.comparing(Remain::date).reversed())
-                .toList();
-
-        final List<BankRecord<?>> knownOperations = operations.stream()
-                .filter(op -> !(op.recorded().isAfter(finish) || op.recorded().isBefore(start)))
-                .toList();
-
-        final Map<AccountNumber, Remain> currentRemains = new HashMap<>();
-
-        for (LocalDate date = start; !date.isAfter(finish); date = date.plusWeeks(1)) {
-
-            // calculate time range of current period
-            final LocalDate weekStart = date.isEqual(start) ? start : date.with(weekFields.dayOfWeek(), 1L);
-            final LocalDate weekLastDay = date.with(weekFields.dayOfWeek(), 7L);
-            final LocalDate weekEnd = weekLastDay.isAfter(finish) ? finish : weekLastDay;
-
-            // calculate remains for current period
-            knownRemains
-                    .stream()
-                    .filter(remain -> !remain.date().isAfter(weekStart)) // use remains with date before end of period
-                    .forEach(remain -> currentRemains.merge(remain.account(), remain, (a, b) -> a.date().isAfter(b.date()) ? a : b)); // use most actual remains
-
-            // currentRemains contain remains for start of period
-            // put them into startRemains
-            final Map<AccountNumber, Remain> startRemains = new HashMap<>(currentRemains);
-
-            // calculate rules
-            final Map<BudgetRule, Money> calculation = calculateRules(calendar, weekStart, weekEnd);
-
-            final LocalDate itemDate = date;
-            final List<BudgetPlan> items = calculation.entrySet().stream()
-                    .map(entry -> {
-                        final BudgetRule rule = entry.getKey();
-                        return new BudgetPlan(
-                                BudgetPlanId.nextId(),
-                                rule,
-                                itemDate,
-                                BudgetDirection.of(rule.type().symbol()),
-                                entry.getValue(),
-                                rule.sourceAccount(),
-                                rule.targetAccount(),
-                                rule.categoryId(),
-                                rule.purchaseCategoryId()
-                        );
-                    })
-                    .peek(item -> {
-                        // calculate remains for end of period
-                        final AccountNumber source = item.source() == null ? defaultAccount : item.source();
-                        final AccountNumber target = item.target() == null ? defaultAccount : item.target();
-                        Remain sourceRemain = currentRemains.get(source);
-                        if (sourceRemain == null) {
-                            sourceRemain = new Remain(source, weekEnd, Money.ofRaw(0, item.value().currency()));
-                        }
-                        Remain targetRemain = currentRemains.get(target);
-                        if (targetRemain == null) {
-                            targetRemain = new Remain(target, weekEnd, Money.ofRaw(0, item.value().currency()));
-                        }
-                        switch (item.direction()) {
-                            case INCOME -> {
-                                targetRemain = new Remain(target, weekEnd, targetRemain.value().add(item.value()));
-                                currentRemains.put(target, targetRemain);
-                            }
-                            case EXPENSE -> {
-                                sourceRemain = new Remain(source, weekEnd, sourceRemain.value().subtract(item.value()));
-                                currentRemains.put(source, sourceRemain);
-                            }
-                            case MOVE -> {
-                                sourceRemain = new Remain(source, weekEnd, sourceRemain.value().subtract(item.value()));
-                                currentRemains.put(source, sourceRemain);
-                                targetRemain = new Remain(target, weekEnd, targetRemain.value().add(item.value()));
-                                currentRemains.put(target, targetRemain);
-                            }
-                            default -> throw new IllegalArgumentException();
-                        }
-                    })
-                    .collect(Collectors.toList());
-
-            // calculate flow of funds for all accounts
-            final Map<AccountNumber, AccountMovement> movements = new HashMap<>();
-            final Map<AccountNumber, List<BankRecord<?>>> weekOperations = knownOperations.stream()
-                    .filter(op -> !(op.recorded().isAfter(weekEnd) || op.recorded().isBefore(weekStart)))
-                    .collect(Collectors.groupingBy(
-                            BankRecord::account,
-                            Collectors.toList()
-                    ));
-            weekOperations.forEach((k, v) -> {
-                final Remain startRemain = startRemains.computeIfAbsent(k, n -> new Remain(n, weekStart, Money.kopecks(0L)));
-                Money finishRemainValue = startRemain.value();
-                for (BankRecord<?> op : v) {
-                    finishRemainValue = switch (op.type()) {
-                        case DEPOSIT -> finishRemainValue.add(op.amount());
-                        case WITHDRAW -> finishRemainValue.subtract(op.amount());
-                        //noinspection UnnecessaryDefault
-                        default -> throw new IllegalArgumentException();
-                    };
-                }
-                final Remain finishRemain = new Remain(k, weekEnd, finishRemainValue);
-                AccountMovement movement = new AccountMovement(startRemain, finishRemain, v);
-                movements.put(k, movement);
-            });
-
-            final BudgetBalance budgetBalance = new BudgetBalance(
-                    weekStart, weekEnd, items,
-                    new ArrayList<>(currentRemains.values()),
-                    new ArrayList<>(movements.values())
-            );
-            result.add(budgetBalance);
-        }
+        return snapshot().calculate(calendar, actualRemains, defaultAccount, start, finish, operations);
+    }
 
-        return result;
+    /**
+     * Calculate budget within specified time range according to budget rules and report calculation metrics.
+     *
+     * @param metrics listener of calculation metrics
+     * @see #calculate(WorkCalendar, List, AccountNumber, LocalDate, LocalDate, List)
+     */
+    public List<BudgetBalance> calculate(
+            WorkCalendar calendar,
+            List<Remain> actualRemains,
+            AccountNumber defaultAccount,
+            LocalDate start,
+            LocalDate finish,
+            List<BankRecord<?>> operations,
+            BudgetMetrics metrics) throws ScriptException {
+        return snapshot().calculate(calendar, actualRemains, defaultAccount, start, finish, operations, metrics);
     }
 
-    private Map<BudgetRule, Money> calculateRules(WorkCalendar calendar, LocalDate start, LocalDate finish) throws ScriptException {
-        Map<BudgetRule, Money> calculation = new LinkedHashMap<>();
-        for (LocalDate date = start; !date.isAfter(finish); date = date.plusDays(1)) {
-            for (BudgetRule rule : rules) {
-                if (rule.matches(date, calendar)) {
-                    Money value;
-                    if (rule.calculation() == null) {
-                        value = rule.value();
-                    } else {
-                        Map<String, Object> arguments = new HashMap<>();
-                        arguments.put("date", date);
-                        arguments.put("month", YearMonth.from(date));
-                        arguments.put("prevMonth", YearMonth.from(date).minusMonths(1));
-                        arguments.put("nextMonth", YearMonth.from(date).plusMonths(1));
-                        arguments.put("value", rule.value());
-                        arguments.put("currency", rule.value().currency().getCurrencyCode());
-                        arguments.put("calendar", calendar);
-                        value = rule.calculation().calculate(arguments);
-                    }
-                    calculation.put(rule, value);
-                }
-            }
-        }
-        return calculation;
+    /**
+     * Calculate budget within specified time range using shared history of remains.
+     * The history is not copied or sorted, so it can be reused by many calculations.
+     *
+     * @param actualRemains known remains for accounts. If account has no remains, then it will be assumed that account remain is zero.
+     * @see #calculate(WorkCalendar, List, AccountNumber, LocalDate, LocalDate, List)
+     */
+    public List<BudgetBalance> calculate(
+            WorkCalendar calendar,
+            RemainHistory actualRemains,
+            AccountNumber defaultAccount,
+            LocalDate start,
+            LocalDate finish,
+            List<BankRecord<?>> operations) throws ScriptException {
+        return snapshot().calculate(calendar, actualRemains, defaultAccount, start, finish, operations);
+    }
+
+    /**
+     * Calculate budget within specified time range in summary mode.
+     * Movements of the result keep only start and finish remains, number of operations and totals,
+     * so long forecasts are small to cache and to serialize. Operations are fetched from the loader on demand.
+     *
+     * @param loader source of operations for movements
+     * @see AccountMovement#isSummary()
+     * @see #calculate(WorkCalendar, RemainHistory, AccountNumber, LocalDate, LocalDate, List)
+     */
+    public List<BudgetBalance> calculateSummary(
+            WorkCalendar calendar,
+            RemainHistory actualRemains,
+            AccountNumber defaultAccount,
+            LocalDate start,
+            LocalDate finish,
+            List<BankRecord<?>> operations,
+            OperationLoader loader) throws ScriptException {
+        return snapshot().calculateSummary(calendar, actualRemains, defaultAccount, start, finish, operations, loader);
+    }
+
+    /**
+     * Calculate budget within specified time range and collect the profile of the calculation:
+     * number of match checks, matches, plan items and script evaluations for every rule,
+     * and time spent in each calculation phase for every period.
+     * Profiling adds overhead, so use it only to investigate slow or unexpected forecasts.
+     *
+     * @return calculated balances and the profile of the calculation
+     * @throws ScriptException in case of calculation error
+     * @see #calculate(WorkCalendar, List, AccountNumber, LocalDate, LocalDate, List)
+     */
+    public BudgetForecast explain(
+            WorkCalendar calendar,
+            List<Remain> actualRemains,
+            AccountNumber defaultAccount,
+            LocalDate start,
+            LocalDate finish,
+            List<BankRecord<?>> operations) throws ScriptException {
+        final BudgetProfile.Recorder recorder = new BudgetProfile.Recorder();
+        final List<BudgetBalance> balances = calculate(calendar, actualRemains, defaultAccount, start, finish, operations, recorder);
+        return new BudgetForecast(balances, recorder.profile());
     }
 
     @Override
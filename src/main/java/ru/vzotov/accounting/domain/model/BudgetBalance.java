@@ -103,6 +103,17 @@ public class BudgetBalance implements ValueObject<BudgetBalance> {
         return movements;
     }
 
+    /**
+     * @param loader source of operations for movements
+     * @return balance with movements in summary mode
+     * @see AccountMovement#summary(OperationLoader)
+     */
+    public BudgetBalance summary(OperationLoader loader) {
+        return new BudgetBalance(from, to, items, remains, movements.stream()
+                .map(movement -> movement.summary(loader))
+                .toList());
+    }
+
     @Override
     public boolean sameValueAs(BudgetBalance that) {
         return that != null && Objects.equals(from, that.from) &&
@@ -0,0 +1,40 @@
+package ru.vzotov.accounting.domain.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event of a budget forecast calculation.
+ */
+@Name("ru.vzotov.accounting.BudgetCalculation")
+@Label("Budget Calculation")
+@Description("Calculation of a budget forecast")
+@Category({"Accounting", "Budget"})
+@Threshold("10 ms")
+final class BudgetCalculationEvent extends Event {
+
+    /**
+     * Type of the event. Events are not created while no recording enables the type.
+     */
+    static final EventType TYPE = EventType.getEventType(BudgetCalculationEvent.class);
+
+    @Label("Budget")
+    String budgetId;
+
+    @Label("Start")
+    String start;
+
+    @Label("Finish")
+    String finish;
+
+    @Label("Rules")
+    int rules;
+
+    @Label("Operations")
+    int operations;
+}
@@ -0,0 +1,41 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a budget calculation together with its profile.
+ *
+ * @see Budget#explain
+ */
+public class BudgetForecast {
+
+    private final List<BudgetBalance> balances;
+
+    private final BudgetProfile profile;
+
+    public BudgetForecast(List<BudgetBalance> balances, BudgetProfile profile) {
+        Validate.notNull(balances);
+        Validate.notNull(profile);
+        this.balances = Collections.unmodifiableList(balances);
+        this.profile = profile;
+    }
+
+    public List<BudgetBalance> balances() {
+        return balances;
+    }
+
+    public BudgetProfile profile() {
+        return profile;
+    }
+
+    @Override
+    public String toString() {
+        return "BudgetForecast{" +
+                "balances=" + balances +
+                ", profile=" + profile +
+                '}';
+    }
+}
@@ -0,0 +1,15 @@
+package ru.vzotov.accounting.domain.model;
+
+/**
+ * Listener of changes of budget rules. Changes are reported after the budget is changed.
+ *
+ * @see Budget#setListener(BudgetListener)
+ */
+public interface BudgetListener {
+
+    default void ruleAdded(Budget budget, BudgetRule rule) {
+    }
+
+    default void ruleDeleted(Budget budget, BudgetRule rule) {
+    }
+}
@@ -0,0 +1,142 @@
+package ru.vzotov.accounting.domain.model;
+
+import java.time.LocalDate;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Listener of budget calculation metrics.
+ * <p>
+ * {@link Budget} and {@link Calculation} call the listener at phase boundaries with timings and counters.
+ * Timings are measured only when the listener is {@link #isEnabled() enabled}, so {@link #NOOP} costs nothing.
+ * Implementations must be thread-safe if they are shared by concurrent calculations.
+ */
+public interface BudgetMetrics {
+
+    /**
+     * Listener that ignores all metrics
+     */
+    BudgetMetrics NOOP = new BudgetMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * Phases of the budget calculation
+     */
+    enum Phase {
+        /**
+         * Matching of budget rules and calculation of their values
+         */
+        RULES,
+        /**
+         * Grouping of operations by period and account
+         */
+        BUCKETING,
+        /**
+         * Creation of plan items and propagation of remains
+         */
+        REMAINS,
+        /**
+         * Calculation of account movements
+         */
+        MOVEMENTS
+    }
+
+    /**
+     * @return false if metrics should not be measured at all
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Budget forecast was calculated.
+     *
+     * @param budget     calculated budget
+     * @param start      first day of time range
+     * @param finish     last day of time range
+     * @param operations number of operations passed to the calculation
+     * @param nanos      total time of the calculation
+     */
+    default void onForecast(BudgetSnapshot budget, LocalDate start, LocalDate finish, int operations, long nanos) {
+    }
+
+    /**
+     * Phase of the calculation was completed for the time range.
+     *
+     * @param phase  calculation phase
+     * @param from   first day of the period
+     * @param to     last day of the period
+     * @param nanos  time spent in the phase
+     */
+    default void onPhase(Phase phase, LocalDate from, LocalDate to, long nanos) {
+    }
+
+    /**
+     * Rule was evaluated for the period.
+     *
+     * @param rule        budget rule
+     * @param from        first day of the period
+     * @param to          last day of the period
+     * @param checks      number of checked days
+     * @param matches     number of matched days
+     * @param scripts     number of script evaluations
+     * @param scriptNanos time spent in script evaluations
+     */
+    default void onRule(BudgetRule rule, LocalDate from, LocalDate to, int checks, int matches, int scripts, long scriptNanos) {
+    }
+
+    /**
+     * Script of the calculation was evaluated.
+     *
+     * @param calculation evaluated calculation
+     * @param nanos       time of the evaluation, including creation of the script engine
+     */
+    default void onScript(Calculation calculation, long nanos) {
+    }
+
+    /**
+     * Adapter to an external metrics registry. Metrics are reported by name:
+     * <ul>
+     *     <li>timers <code>budget.forecast</code>, <code>budget.phase.rules</code>, <code>budget.phase.bucketing</code>,
+     *     <code>budget.phase.remains</code>, <code>budget.phase.movements</code>, <code>budget.script</code></li>
+     *     <li>counters <code>budget.rule.checks</code>, <code>budget.rule.matches</code>, <code>budget.script.evaluations</code></li>
+     * </ul>
+     *
+     * @param timer   receives name of the timer and measured time in nanoseconds
+     * @param counter receives name of the counter and increment
+     * @return metrics listener
+     */
+    static BudgetMetrics of(ObjLongConsumer<String> timer, ObjLongConsumer<String> counter) {
+        return new BudgetMetrics() {
+            @Override
+            public void onForecast(BudgetSnapshot budget, LocalDate start, LocalDate finish, int operations, long nanos) {
+                timer.accept("budget.forecast", nanos);
+            }
+
+            @Override
+            public void onPhase(Phase phase, LocalDate from, LocalDate to, long nanos) {
+                timer.accept(switch (phase) {
+                    case RULES -> "budget.phase.rules";
+                    case BUCKETING -> "budget.phase.bucketing";
+                    case REMAINS -> "budget.phase.remains";
+                    case MOVEMENTS -> "budget.phase.movements";
+                }, nanos);
+            }
+
+            @Override
+            public void onRule(BudgetRule rule, LocalDate from, LocalDate to, int checks, int matches, int scripts, long scriptNanos) {
+                counter.accept("budget.rule.checks", checks);
+                counter.accept("budget.rule.matches", matches);
+            }
+
+            @Override
+            public void onScript(Calculation calculation, long nanos) {
+                timer.accept("budget.script", nanos);
+                counter.accept("budget.script.evaluations", 1L);
+            }
+        };
+    }
+}
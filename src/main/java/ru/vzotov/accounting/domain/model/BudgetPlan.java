@@ -36,6 +36,11 @@ public class BudgetPlan implements Entity<BudgetPlan> {
 
     private LocalDate date;
 
+    /**
+     * Day the rule first occurs within the period of the item, not persisted
+     */
+    private transient LocalDate occurrence;
+
     public BudgetPlan(BudgetPlanId itemId, BudgetRule rule, LocalDate date, BudgetDirection direction, Money value,
                       AccountNumber source, AccountNumber target,
                       BudgetCategoryId category, PurchaseCategoryId purchaseCategory) {
@@ -75,6 +80,18 @@ public class BudgetPlan implements Entity<BudgetPlan> {
         return date;
     }
 
+    /**
+     * @return day the rule first occurs within the period of the item, or {@link #date()} if it is not known
+     */
+    public LocalDate occurrence() {
+        return occurrence == null ? date : occurrence;
+    }
+
+    BudgetPlan occursOn(LocalDate occurrence) {
+        this.occurrence = occurrence;
+        return this;
+    }
+
     public AccountNumber source() {
         return source;
     }
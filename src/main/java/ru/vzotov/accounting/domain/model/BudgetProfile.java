@@ -0,0 +1,318 @@
+package ru.vzotov.accounting.domain.model;
+
+import ru.vzotov.ddd.shared.ValueObject;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Profile of a budget calculation: work done for every rule and time spent in every phase of every period.
+ *
+ * @see Budget#explain
+ */
+public class BudgetProfile implements ValueObject<BudgetProfile> {
+
+    /**
+     * Phases that are measured for every period
+     */
+    private static final Set<BudgetMetrics.Phase> PERIOD_PHASES =
+            EnumSet.complementOf(EnumSet.of(BudgetMetrics.Phase.BUCKETING));
+
+    /**
+     * Total time of the calculation, in nanoseconds
+     */
+    private final long nanos;
+
+    /**
+     * Time spent grouping operations, once for the whole time range, in nanoseconds
+     */
+    private final long bucketingNanos;
+
+    /**
+     * Rule profiles, most expensive first
+     */
+    private final List<RuleProfile> rules;
+
+    /**
+     * Period profiles, in order of periods
+     */
+    private final List<PeriodProfile> periods;
+
+    BudgetProfile(long nanos, long bucketingNanos, List<RuleProfile> rules, List<PeriodProfile> periods) {
+        this.nanos = nanos;
+        this.bucketingNanos = bucketingNanos;
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        this.periods = Collections.unmodifiableList(new ArrayList<>(periods));
+    }
+
+    public long nanos() {
+        return nanos;
+    }
+
+    /**
+     * @return time spent grouping operations by period and account, in nanoseconds.
+     * Operations are grouped once for the whole time range, so this time is not a part of period profiles.
+     */
+    public long bucketingNanos() {
+        return bucketingNanos;
+    }
+
+    public List<RuleProfile> rules() {
+        return rules;
+    }
+
+    public List<PeriodProfile> periods() {
+        return periods;
+    }
+
+    @Override
+    public boolean sameValueAs(BudgetProfile that) {
+        return that != null && nanos == that.nanos && bucketingNanos == that.bucketingNanos &&
+                Objects.equals(rules, that.rules) &&
+                Objects.equals(periods, that.periods);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BudgetProfile that = (BudgetProfile) o;
+        return sameValueAs(that);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(nanos, bucketingNanos, rules, periods);
+    }
+
+    /**
+     * @return human-readable report
+     */
+    @Override
+    public String toString() {
+        final StringBuilder result = new StringBuilder();
+        result.append(String.format(Locale.ROOT, "Budget calculation: %.3f ms%n", nanos / 1e6d));
+        result.append(String.format(Locale.ROOT, "Bucketing of operations: %.3f ms%n", bucketingNanos / 1e6d));
+        result.append(String.format(Locale.ROOT, "%-40s %8s %8s %8s %8s %12s%n",
+                "Rule", "Checks", "Matches", "Items", "Scripts", "Script, ms"));
+        for (RuleProfile rule : rules) {
+            result.append(String.format(Locale.ROOT, "%-40.40s %8d %8d %8d %8d %12.3f%n",
+                    rule.rule().name() + " (" + rule.rule().ruleId() + ")",
+                    rule.checks(), rule.matches(), rule.occurrences(), rule.scripts(), rule.scriptNanos() / 1e6d));
+        }
+        result.append(String.format(Locale.ROOT, "%-23s", "Period"));
+        for (BudgetMetrics.Phase phase : PERIOD_PHASES) {
+            result.append(String.format(Locale.ROOT, " %12s", phase.name().toLowerCase(Locale.ROOT) + ", ms"));
+        }
+        result.append(System.lineSeparator());
+        for (PeriodProfile period : periods) {
+            result.append(String.format(Locale.ROOT, "%-23s", period.from() + ".." + period.to()));
+            for (BudgetMetrics.Phase phase : PERIOD_PHASES) {
+                result.append(String.format(Locale.ROOT, " %12.3f", period.nanos(phase) / 1e6d));
+            }
+            result.append(System.lineSeparator());
+        }
+        return result.toString();
+    }
+
+    /**
+     * Work done for a budget rule over the whole time range
+     */
+    public static class RuleProfile implements ValueObject<RuleProfile> {
+        private final BudgetRule rule;
+        private final long checks;
+        private final long matches;
+        private final long occurrences;
+        private final long scripts;
+        private final long scriptNanos;
+
+        RuleProfile(BudgetRule rule, long checks, long matches, long occurrences, long scripts, long scriptNanos) {
+            this.rule = rule;
+            this.checks = checks;
+            this.matches = matches;
+            this.occurrences = occurrences;
+            this.scripts = scripts;
+            this.scriptNanos = scriptNanos;
+        }
+
+        public BudgetRule rule() {
+            return rule;
+        }
+
+        /**
+         * @return number of days checked against the rule recurrence
+         */
+        public long checks() {
+            return checks;
+        }
+
+        /**
+         * @return number of days matched by the rule recurrence
+         */
+        public long matches() {
+            return matches;
+        }
+
+        /**
+         * @return number of plan items produced by the rule
+         */
+        public long occurrences() {
+            return occurrences;
+        }
+
+        /**
+         * @return number of script evaluations
+         */
+        public long scripts() {
+            return scripts;
+        }
+
+        /**
+         * @return time spent in script evaluations, in nanoseconds
+         */
+        public long scriptNanos() {
+            return scriptNanos;
+        }
+
+        @Override
+        public boolean sameValueAs(RuleProfile that) {
+            return that != null && Objects.equals(rule, that.rule) &&
+                    checks == that.checks && matches == that.matches && occurrences == that.occurrences &&
+                    scripts == that.scripts && scriptNanos == that.scriptNanos;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            RuleProfile that = (RuleProfile) o;
+            return sameValueAs(that);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(rule, checks, matches, occurrences, scripts, scriptNanos);
+        }
+    }
+
+    /**
+     * Time spent in calculation phases for a period
+     */
+    public static class PeriodProfile implements ValueObject<PeriodProfile> {
+        private final LocalDate from;
+        private final LocalDate to;
+        private final Map<BudgetMetrics.Phase, Long> nanos;
+
+        PeriodProfile(LocalDate from, LocalDate to, Map<BudgetMetrics.Phase, Long> nanos) {
+            this.from = from;
+            this.to = to;
+            this.nanos = Collections.unmodifiableMap(new EnumMap<>(nanos));
+        }
+
+        public LocalDate from() {
+            return from;
+        }
+
+        public LocalDate to() {
+            return to;
+        }
+
+        /**
+         * @return time spent in the phase, in nanoseconds
+         */
+        public long nanos(BudgetMetrics.Phase phase) {
+            return nanos.getOrDefault(phase, 0L);
+        }
+
+        @Override
+        public boolean sameValueAs(PeriodProfile that) {
+            return that != null && Objects.equals(from, that.from) && Objects.equals(to, that.to) &&
+                    Objects.equals(nanos, that.nanos);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PeriodProfile that = (PeriodProfile) o;
+            return sameValueAs(that);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(from, to, nanos);
+        }
+    }
+
+    /**
+     * Collects metrics of a single calculation into a profile. Not thread-safe.
+     */
+    static class Recorder implements BudgetMetrics {
+
+        private final Map<BudgetRule, long[]> rules = new LinkedHashMap<>();
+
+        private final Map<LocalDate, PeriodData> periods = new LinkedHashMap<>();
+
+        private long nanos;
+
+        private long bucketingNanos;
+
+        @Override
+        public void onForecast(BudgetSnapshot budget, LocalDate start, LocalDate finish, int operations, long nanos) {
+            this.nanos = nanos;
+        }
+
+        @Override
+        public void onPhase(Phase phase, LocalDate from, LocalDate to, long nanos) {
+            if (phase == Phase.BUCKETING) {
+                // bucketing is done once for the whole time range
+                bucketingNanos += nanos;
+                return;
+            }
+            periods.computeIfAbsent(from, k -> new PeriodData(from, to)).nanos.merge(phase, nanos, Long::sum);
+        }
+
+        @Override
+        public void onRule(BudgetRule rule, LocalDate from, LocalDate to, int checks, int matches, int scripts, long scriptNanos) {
+            final long[] data = rules.computeIfAbsent(rule, k -> new long[5]);
+            data[0] += checks;
+            data[1] += matches;
+            data[2] += matches > 0 ? 1 : 0;
+            data[3] += scripts;
+            data[4] += scriptNanos;
+        }
+
+        BudgetProfile profile() {
+            final List<RuleProfile> ruleProfiles = new ArrayList<>(rules.size());
+            rules.forEach((rule, data) -> ruleProfiles.add(new RuleProfile(rule, data[0], data[1], data[2], data[3], data[4])));
+            ruleProfiles.sort(Comparator.comparingLong(RuleProfile::scriptNanos)
+                    .thenComparingLong(RuleProfile::checks)
+                    .reversed());
+
+            final List<PeriodProfile> periodProfiles = new ArrayList<>(periods.size());
+            periods.values().forEach(period -> periodProfiles.add(new PeriodProfile(period.from, period.to, period.nanos)));
+            return new BudgetProfile(nanos, bucketingNanos, ruleProfiles, periodProfiles);
+        }
+
+        private static class PeriodData {
+            final LocalDate from;
+            final LocalDate to;
+            final Map<Phase, Long> nanos = new EnumMap<>(Phase.class);
+
+            PeriodData(LocalDate from, LocalDate to) {
+                this.from = from;
+                this.to = to;
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.ddd.shared.ValueObject;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * What-if variant of a budget: the base rule set without some rules and with some additional rules.
+ * To change a rule, remove it and add the new version with the same identifier.
+ */
+public class BudgetScenario implements ValueObject<BudgetScenario> {
+
+    /**
+     * Name of the scenario
+     */
+    private final String name;
+
+    /**
+     * Rules of the base budget that are excluded from the scenario
+     */
+    private final Set<BudgetRuleId> removedRules;
+
+    /**
+     * Rules that are added to the scenario
+     */
+    private final Set<BudgetRule> addedRules;
+
+    public BudgetScenario(String name, Set<BudgetRuleId> removedRules, Set<BudgetRule> addedRules) {
+        Validate.notEmpty(name);
+        Validate.notNull(removedRules);
+        Validate.notNull(addedRules);
+        this.name = name;
+        this.removedRules = Collections.unmodifiableSet(new LinkedHashSet<>(removedRules));
+        this.addedRules = Collections.unmodifiableSet(new LinkedHashSet<>(addedRules));
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Set<BudgetRuleId> removedRules() {
+        return removedRules;
+    }
+
+    public Set<BudgetRule> addedRules() {
+        return addedRules;
+    }
+
+    @Override
+    public boolean sameValueAs(BudgetScenario that) {
+        return that != null &&
+                Objects.equals(name, that.name) &&
+                Objects.equals(removedRules, that.removedRules) &&
+                Objects.equals(addedRules, that.addedRules);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BudgetScenario that = (BudgetScenario) o;
+        return sameValueAs(that);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, removedRules, addedRules);
+    }
+
+    @Override
+    public String toString() {
+        return "BudgetScenario{" +
+                "name=" + name +
+                ", removedRules=" + removedRules +
+                ", addedRules=" + addedRules +
+                '}';
+    }
+}
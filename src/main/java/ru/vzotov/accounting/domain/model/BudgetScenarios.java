@@ -0,0 +1,187 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.BankRecord;
+import ru.vzotov.calendar.domain.model.WorkCalendar;
+
+import javax.script.ScriptException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Batch evaluation of what-if scenarios against a base budget.
+ * <p>
+ * Work that does not depend on the rule set is done once for all scenarios: periods of the forecast,
+ * bucketing of operations and evaluation (including scripts) of every distinct rule.
+ * Each scenario then only assembles plan items and remains from the already evaluated rules.
+ * Scenarios are assembled in parallel.
+ */
+public class BudgetScenarios {
+
+    private final BudgetSnapshot base;
+
+    private final WorkCalendar calendar;
+
+    private final RemainHistory actualRemains;
+
+    private final AccountNumber defaultAccount;
+
+    private final List<BudgetSnapshot.Period> periods;
+
+    private final List<Map<AccountNumber, List<BankRecord<?>>>> operations;
+
+    /**
+     * Evaluated rules of the base budget and of the scenarios
+     */
+    private final Map<RuleKey, List<BudgetSnapshot.Occurrence>> evaluated = new ConcurrentHashMap<>();
+
+    /**
+     * @param base           base budget
+     * @param calendar       work calendar for the time range
+     * @param actualRemains  known remains for accounts
+     * @param defaultAccount default account number
+     * @param start          first day of time range (inclusive)
+     * @param finish         last day of time range (inclusive)
+     * @param operations     operations within the time range
+     * @throws ScriptException in case of calculation error
+     * @see Budget#calculate(WorkCalendar, List, AccountNumber, LocalDate, LocalDate, List)
+     */
+    public BudgetScenarios(BudgetSnapshot base,
+                           WorkCalendar calendar,
+                           List<Remain> actualRemains,
+                           AccountNumber defaultAccount,
+                           LocalDate start,
+                           LocalDate finish,
+                           List<BankRecord<?>> operations) throws ScriptException {
+        Validate.notNull(base);
+        Validate.isTrue(!calendar.from().isAfter(start) && !calendar.to().isBefore(finish), "Calendar must include the calculated time range");
+
+        this.base = base;
+        this.calendar = calendar;
+        this.actualRemains = new RemainHistory(actualRemains);
+        this.defaultAccount = defaultAccount;
+        this.periods = base.periods(start, finish);
+        this.operations = BudgetSnapshot.bucket(periods, operations);
+        evaluate(base.rules());
+    }
+
+    /**
+     * @return forecast of the base budget
+     */
+    public List<BudgetBalance> base() {
+        return assemble(base.rules());
+    }
+
+    /**
+     * Calculate forecast for every scenario.
+     *
+     * @param scenarios scenarios to evaluate
+     * @return forecast for each scenario, in order of scenarios
+     * @throws ScriptException in case of calculation error
+     */
+    public Map<BudgetScenario, List<BudgetBalance>> evaluate(List<BudgetScenario> scenarios) throws ScriptException {
+        final List<BudgetRule> added = new ArrayList<>();
+        scenarios.forEach(scenario -> added.addAll(scenario.addedRules()));
+        evaluate(added);
+
+        final Map<BudgetScenario, List<BudgetBalance>> result = scenarios.parallelStream()
+                .collect(Collectors.toMap(
+                        scenario -> scenario,
+                        scenario -> assemble(rules(scenario)),
+                        (a, b) -> a
+                ));
+
+        final Map<BudgetScenario, List<BudgetBalance>> ordered = new LinkedHashMap<>();
+        scenarios.forEach(scenario -> ordered.put(scenario, result.get(scenario)));
+        return ordered;
+    }
+
+    private Set<BudgetRule> rules(BudgetScenario scenario) {
+        final Set<BudgetRule> rules = new LinkedHashSet<>();
+        for (BudgetRule rule : base.rules()) {
+            if (!scenario.removedRules().contains(rule.ruleId())) rules.add(rule);
+        }
+        rules.addAll(scenario.addedRules());
+        return rules;
+    }
+
+    /**
+     * Evaluate rules that were not evaluated yet. Rules are evaluated in parallel.
+     */
+    private void evaluate(Collection<BudgetRule> rules) throws ScriptException {
+        final Map<RuleKey, BudgetRule> pending = new LinkedHashMap<>();
+        for (BudgetRule rule : rules) {
+            final RuleKey key = RuleKey.of(rule);
+            if (!evaluated.containsKey(key)) pending.putIfAbsent(key, rule);
+        }
+        try {
+            final Map<RuleKey, List<BudgetSnapshot.Occurrence>> result = pending.values().parallelStream()
+                    .collect(Collectors.toMap(RuleKey::of, rule -> {
+                        try {
+                            return BudgetSnapshot.evaluate(rule, 0, calendar, periods);
+                        } catch (ScriptException e) {
+                            throw new ScriptFailure(e);
+                        }
+                    }));
+            evaluated.putAll(result);
+        } catch (RuntimeException e) {
+            // fork-join tasks may wrap the failure of a worker into another exception
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof ScriptFailure failure) throw failure.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Key of an evaluated rule. {@link BudgetRule#equals(Object)} does not compare the enabled flag,
+     * but a disabled rule has no occurrences, so the flag is a part of the key.
+     */
+    private record RuleKey(BudgetRule rule, boolean enabled) {
+
+        static RuleKey of(BudgetRule rule) {
+            return new RuleKey(rule, rule.isEnabled());
+        }
+    }
+
+    /**
+     * Carries script error of a rule out of the parallel evaluation
+     */
+    private static final class ScriptFailure extends RuntimeException {
+
+        ScriptFailure(ScriptException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized ScriptException getCause() {
+            return (ScriptException) super.getCause();
+        }
+    }
+
+    private List<BudgetBalance> assemble(Set<BudgetRule> rules) {
+        final List<List<BudgetSnapshot.Occurrence>> occurrences = new ArrayList<>(periods.size());
+        for (int i = 0; i < periods.size(); i++) {
+            occurrences.add(new ArrayList<>());
+        }
+        int order = 0;
+        for (BudgetRule rule : rules) {
+            final List<BudgetSnapshot.Occurrence> ruleOccurrences = evaluated.get(RuleKey.of(rule));
+            for (int i = 0; i < periods.size(); i++) {
+                final BudgetSnapshot.Occurrence occurrence = ruleOccurrences.get(i);
+                if (occurrence != null) occurrences.get(i).add(occurrence.withOrder(order));
+            }
+            order++;
+        }
+        return BudgetSnapshot.assemble(periods, occurrences, actualRemains, defaultAccount, operations);
+    }
+}
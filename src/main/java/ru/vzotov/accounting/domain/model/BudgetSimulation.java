@@ -0,0 +1,248 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Monte Carlo simulation of a budget forecast.
+ * <p>
+ * Rules of the budget may be assigned a {@link Perturbation} that describes uncertainty of their values and dates.
+ * Dates are shifted around the day the rule occurs (see {@link BudgetPlan#occurrence()}).
+ * Each trajectory of the simulation perturbs all plan items of the deterministic forecast and propagates
+ * the differences to the remains of the following periods. Trajectories are calculated in parallel and reduced
+ * to per-period quantiles of the account remains, so memory usage does not depend on the number of trajectories.
+ * <p>
+ * Every trajectory uses its own random generator derived from the seed and the trajectory number,
+ * so the set of simulated trajectories is reproducible. The quantiles are estimated with a streaming summary
+ * and are approximate.
+ */
+public class BudgetSimulation {
+
+    /**
+     * Number of trajectories calculated by single task
+     */
+    private static final int CHUNK_SIZE = 256;
+
+    private final List<BudgetBalance> forecast;
+
+    private final AccountNumber defaultAccount;
+
+    private final Map<BudgetRuleId, Perturbation> perturbations = new HashMap<>();
+
+    /**
+     * @param forecast       deterministic forecast, as calculated by {@link Budget#calculate}
+     * @param defaultAccount default account number that was used for the forecast
+     */
+    public BudgetSimulation(List<BudgetBalance> forecast, AccountNumber defaultAccount) {
+        Validate.notEmpty(forecast);
+        Validate.notNull(defaultAccount);
+        this.forecast = List.copyOf(forecast);
+        this.defaultAccount = defaultAccount;
+    }
+
+    /**
+     * Assign uncertainty to the rule.
+     *
+     * @param ruleId       budget rule
+     * @param perturbation uncertainty of the rule values and dates
+     * @return this simulation
+     */
+    public BudgetSimulation perturb(BudgetRuleId ruleId, Perturbation perturbation) {
+        Validate.notNull(ruleId);
+        Validate.notNull(perturbation);
+        perturbations.put(ruleId, perturbation);
+        return this;
+    }
+
+    /**
+     * Run simulation.
+     *
+     * @param trajectories number of trajectories
+     * @param seed         seed of random generators
+     * @param quantiles    quantiles to estimate, e.g. <code>0.1, 0.5, 0.9</code>
+     * @return remain bands for every period of the forecast and every account
+     */
+    public List<RemainBand> run(int trajectories, long seed, double... quantiles) {
+        Validate.isTrue(trajectories > 0, "Number of trajectories must be positive");
+        Validate.isTrue(quantiles.length > 0, "At least one quantile is required");
+
+        final Model model = new Model();
+        final int chunks = (trajectories + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        final QuantileSketch[][] sketches = IntStream.range(0, chunks)
+                .parallel()
+                .mapToObj(chunk -> model.simulate(
+                        chunk * CHUNK_SIZE,
+                        Math.min(trajectories, (chunk + 1) * CHUNK_SIZE),
+                        seed))
+                .reduce(BudgetSimulation::merge)
+                .orElseThrow();
+
+        final List<RemainBand> result = new ArrayList<>();
+        for (int p = 0; p < model.periods; p++) {
+            for (int a = 0; a < model.accounts.size(); a++) {
+                final Map<Double, Money> values = new LinkedHashMap<>();
+                for (double q : quantiles) {
+                    values.put(q, Money.ofRaw(sketches[p][a].quantile(q), model.currencies.get(a)));
+                }
+                result.add(new RemainBand(model.accounts.get(a), forecast.get(p).to(), values));
+            }
+        }
+        return result;
+    }
+
+    private static QuantileSketch[][] merge(QuantileSketch[][] a, QuantileSketch[][] b) {
+        for (int p = 0; p < a.length; p++) {
+            for (int i = 0; i < a[p].length; i++) {
+                a[p][i].merge(b[p][i]);
+            }
+        }
+        return a;
+    }
+
+    /**
+     * Forecast flattened into primitive arrays
+     */
+    private class Model {
+        final int periods = forecast.size();
+        final List<AccountNumber> accounts = new ArrayList<>();
+        final List<Currency> currencies = new ArrayList<>();
+        final Map<AccountNumber, Integer> index = new HashMap<>();
+
+        /**
+         * Deterministic remains, by period and account
+         */
+        final long[][] remains;
+
+        /**
+         * Plan items of the forecast
+         */
+        final List<Item> items = new ArrayList<>();
+
+        Model() {
+            for (BudgetBalance balance : forecast) {
+                for (Remain remain : balance.remains()) {
+                    account(remain.account(), remain.value().currency());
+                }
+                for (BudgetPlan item : balance.items()) {
+                    account(source(item), item.value().currency());
+                    account(target(item), item.value().currency());
+                }
+            }
+
+            remains = new long[periods][accounts.size()];
+            for (int p = 0; p < periods; p++) {
+                final BudgetBalance balance = forecast.get(p);
+                for (Remain remain : balance.remains()) {
+                    remains[p][index.get(remain.account())] = remain.value().rawAmount();
+                }
+                for (BudgetPlan item : balance.items()) {
+                    final Perturbation perturbation = perturbations.getOrDefault(item.rule().ruleId(), Perturbation.NONE);
+                    if (!Perturbation.NONE.equals(perturbation)) {
+                        items.add(new Item(p, item, perturbation));
+                    }
+                }
+            }
+        }
+
+        QuantileSketch[][] simulate(int from, int to, long seed) {
+            final QuantileSketch[][] sketches = new QuantileSketch[periods][accounts.size()];
+            for (QuantileSketch[] row : sketches) {
+                for (int a = 0; a < row.length; a++) row[a] = new QuantileSketch();
+            }
+
+            final long[][] deltas = new long[periods][accounts.size()];
+            for (int trajectory = from; trajectory < to; trajectory++) {
+                final SplittableRandom random = new SplittableRandom(seed + trajectory * 0x9E3779B97F4A7C15L);
+                for (long[] row : deltas) Arrays.fill(row, 0L);
+
+                for (Item item : items) {
+                    final long value = item.perturbation.value(item.value, random);
+                    final int period = period(item.date.plusDays(item.perturbation.shift(random)), item.period);
+                    item.apply(deltas[item.period], -item.value);
+                    if (period >= 0) {
+                        item.apply(deltas[period], value);
+                    }
+                }
+
+                final long[] cumulative = new long[accounts.size()];
+                for (int p = 0; p < periods; p++) {
+                    for (int a = 0; a < cumulative.length; a++) {
+                        cumulative[a] += deltas[p][a];
+                        sketches[p][a].add(remains[p][a] + cumulative[a]);
+                    }
+                }
+            }
+            return sketches;
+        }
+
+        /**
+         * @return index of the period that contains the date, or -1 if the date is after the forecast
+         */
+        int period(LocalDate date, int hint) {
+            int p = hint;
+            while (p > 0 && date.isBefore(forecast.get(p).from())) p--;
+            while (p < periods && date.isAfter(forecast.get(p).to())) p++;
+            return p < periods ? p : -1;
+        }
+
+        AccountNumber source(BudgetPlan item) {
+            return item.source() == null ? defaultAccount : item.source();
+        }
+
+        AccountNumber target(BudgetPlan item) {
+            return item.target() == null ? defaultAccount : item.target();
+        }
+
+        private void account(AccountNumber account, Currency currency) {
+            if (!index.containsKey(account)) {
+                index.put(account, accounts.size());
+                accounts.add(account);
+                currencies.add(currency);
+            }
+        }
+
+        private class Item {
+            final int period;
+            final LocalDate date;
+            final long value;
+            final BudgetDirection direction;
+            final int source;
+            final int target;
+            final Perturbation perturbation;
+
+            Item(int period, BudgetPlan plan, Perturbation perturbation) {
+                this.period = period;
+                this.date = plan.occurrence() == null ? forecast.get(period).from() : plan.occurrence();
+                this.value = plan.value().rawAmount();
+                this.direction = plan.direction();
+                this.source = index.get(source(plan));
+                this.target = index.get(target(plan));
+                this.perturbation = perturbation;
+            }
+
+            void apply(long[] deltas, long value) {
+                switch (direction) {
+                    case INCOME -> deltas[target] += value;
+                    case EXPENSE -> deltas[source] -= value;
+                    case MOVE -> {
+                        deltas[source] -= value;
+                        deltas[target] += value;
+                    }
+                    default -> throw new IllegalArgumentException();
+                }
+            }
+        }
+    }
+}
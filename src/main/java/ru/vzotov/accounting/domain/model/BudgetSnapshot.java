@@ -0,0 +1,582 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.BankRecord;
+import ru.vzotov.calendar.domain.model.WorkCalendar;
+import ru.vzotov.ddd.shared.ValueObject;
+import ru.vzotov.domain.model.Money;
+
+import javax.script.ScriptException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.WeekFields;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable view of a {@link Budget} taken at some point in time.
+ * <p>
+ * Snapshots are safe to share between threads: any number of forecasts can be calculated
+ * against the same snapshot while the budget itself is being modified.
+ */
+public final class BudgetSnapshot implements ValueObject<BudgetSnapshot> {
+
+    private final BudgetId budgetId;
+
+    /**
+     * Budget rules at the moment of snapshot
+     */
+    private final Set<BudgetRule> rules;
+
+    /**
+     * Locale to detect first day of week and other location-specific things
+     */
+    private final String locale;
+
+    /**
+     * Default currency
+     */
+    private final Currency currency;
+
+    BudgetSnapshot(BudgetId budgetId, Collection<BudgetRule> rules, Currency currency, String locale) {
+        Validate.notNull(budgetId);
+        Validate.notNull(rules);
+        Validate.notNull(currency);
+        Validate.notNull(locale);
+
+        this.budgetId = budgetId;
+        this.rules = Collections.unmodifiableSet(new LinkedHashSet<>(rules));
+        this.currency = currency;
+        this.locale = locale;
+    }
+
+    public BudgetId budgetId() {
+        return budgetId;
+    }
+
+    public Set<BudgetRule> rules() {
+        return rules;
+    }
+
+    public String locale() {
+        return locale;
+    }
+
+    public Currency currency() {
+        return currency;
+    }
+
+    /**
+     * Calculate budget within specified time range according to budget rules.
+     *
+     * @see Budget#calculate(WorkCalendar, List, AccountNumber, LocalDate, LocalDate, List)
+     */
+    public List<BudgetBalance> calculate(
+            WorkCalendar calendar,
+            List<Remain> actualRemains,
+            AccountNumber defaultAccount,
+            LocalDate start,
+            LocalDate finish,
+            List<BankRecord<?>> operations) throws ScriptException {
+        return calculate(calendar, actualRemains, defaultAccount, start, finish, operations, BudgetMetrics.NOOP);
+    }
+
+    /**
+     * Calculate budget within specified time range according to budget rules.
+     *
+     * @param metrics listener of calculation metrics
+     * @see Budget#calculate(WorkCalendar, List, AccountNumber, LocalDate, LocalDate, List)
+     */
+    public List<BudgetBalance> calculate(
+            WorkCalendar calendar,
+            List<Remain> actualRemains,
+            AccountNumber defaultAccount,
+            LocalDate start,
+            LocalDate finish,
+            List<BankRecord<?>> operations,
+            BudgetMetrics metrics) throws ScriptException {
+        return calculate(calendar, new RemainHistory(actualRemains), defaultAccount, start, finish, operations, metrics);
+    }
+
+    /**
+     * Calculate budget within specified time range using shared history of remains.
+     *
+     * @see Budget#calculate(WorkCalendar, RemainHistory, AccountNumber, LocalDate, LocalDate, List)
+     */
+    public List<BudgetBalance> calculate(
+            WorkCalendar calendar,
+            RemainHistory actualRemains,
+            AccountNumber defaultAccount,
+            LocalDate start,
+            LocalDate finish,
+            List<BankRecord<?>> operations) throws ScriptException {
+        return calculate(calendar, actualRemains, defaultAccount, start, finish, operations, BudgetMetrics.NOOP);
+    }
+
+    /**
+     * Calculate budget within specified time range using shared history of remains.
+     *
+     * @param metrics listener of calculation metrics
+     * @see Budget#calculate(WorkCalendar, RemainHistory, AccountNumber, LocalDate, LocalDate, List)
+     */
+    public List<BudgetBalance> calculate(
+            WorkCalendar calendar,
+            RemainHistory actualRemains,
+            AccountNumber defaultAccount,
+            LocalDate start,
+            LocalDate finish,
+            List<BankRecord<?>> operations,
+            BudgetMetrics metrics) throws ScriptException {
+        return forecast(calendar, actualRemains, defaultAccount, start, finish, operations, metrics, null);
+    }
+
+    /**
+     * Calculate budget within specified time range in summary mode.
+     * Movements of the result keep only remains, number of operations and totals;
+     * operations are fetched from the loader on demand.
+     *
+     * @param loader source of operations for movements
+     * @see Budget#calculateSummary(WorkCalendar, RemainHistory, AccountNumber, LocalDate, LocalDate, List, OperationLoader)
+     */
+    public List<BudgetBalance> calculateSummary(
+            WorkCalendar calendar,
+            RemainHistory actualRemains,
+            AccountNumber defaultAccount,
+            LocalDate start,
+            LocalDate finish,
+            List<BankRecord<?>> operations,
+            OperationLoader loader) throws ScriptException {
+        Validate.notNull(loader);
+        return forecast(calendar, actualRemains, defaultAccount, start, finish, operations, BudgetMetrics.NOOP, loader);
+    }
+
+    private List<BudgetBalance> forecast(
+            WorkCalendar calendar,
+            RemainHistory actualRemains,
+            AccountNumber defaultAccount,
+            LocalDate start,
+            LocalDate finish,
+            List<BankRecord<?>> operations,
+            BudgetMetrics metrics,
+            OperationLoader loader) throws ScriptException {
+        Validate.notNull(actualRemains);
+        Validate.isTrue(!calendar.from().isAfter(start) && !calendar.to().isBefore(finish), "Calendar must include the calculated time range");
+        Validate.notNull(metrics);
+
+        final BudgetCalculationEvent event = BudgetCalculationEvent.TYPE.isEnabled() ? new BudgetCalculationEvent() : null;
+        if (event != null) event.begin();
+
+        final boolean measured = metrics.isEnabled();
+        final long started = measured ? System.nanoTime() : 0L;
+
+        final List<Period> periods = periods(start, finish);
+        final long[] ruleNanos = new long[periods.size()];
+        final List<List<Occurrence>> occurrences = new ArrayList<>(periods.size());
+        for (Period period : periods) {
+            occurrences.add(new ArrayList<>());
+        }
+        int order = 0;
+        for (BudgetRule rule : rules) {
+            final List<Occurrence> ruleOccurrences = evaluate(rule, order++, calendar, periods, metrics, ruleNanos);
+            for (int i = 0; i < periods.size(); i++) {
+                final Occurrence occurrence = ruleOccurrences.get(i);
+                if (occurrence != null) occurrences.get(i).add(occurrence);
+            }
+        }
+        if (measured) {
+            for (int i = 0; i < periods.size(); i++) {
+                metrics.onPhase(BudgetMetrics.Phase.RULES, periods.get(i).from, periods.get(i).to, ruleNanos[i]);
+            }
+        }
+
+        final long bucketing = measured ? System.nanoTime() : 0L;
+        final List<Map<AccountNumber, List<BankRecord<?>>>> buckets = bucket(periods, operations);
+        if (measured) metrics.onPhase(BudgetMetrics.Phase.BUCKETING, start, finish, System.nanoTime() - bucketing);
+
+        final List<BudgetBalance> result = assemble(periods, occurrences, actualRemains, defaultAccount, buckets, metrics, loader);
+        if (measured) metrics.onForecast(this, start, finish, operations.size(), System.nanoTime() - started);
+
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.budgetId = budgetId.value();
+                event.start = start.toString();
+                event.finish = finish.toString();
+                event.rules = rules.size();
+                event.operations = operations.size();
+                event.commit();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Split time range into periods. First and last periods may be shorter than a week.
+     */
+    List<Period> periods(LocalDate start, LocalDate finish) {
+        final WeekFields weekFields = WeekFields.of(new Locale(this.locale));
+        final List<Period> result = new ArrayList<>();
+        for (LocalDate date = start; !date.isAfter(finish); date = date.plusWeeks(1)) {
+            final LocalDate weekStart = date.isEqual(start) ? start : date.with(weekFields.dayOfWeek(), 1L);
+            final LocalDate weekLastDay = date.with(weekFields.dayOfWeek(), 7L);
+            final LocalDate weekEnd = weekLastDay.isAfter(finish) ? finish : weekLastDay;
+            result.add(new Period(date, weekStart, weekEnd));
+        }
+        return result;
+    }
+
+    /**
+     * Evaluate the rule in every period.
+     * Rule produces single plan item per period. If the rule matches several days of the period,
+     * the item is placed in the order of the first match and gets the value calculated for the last match.
+     *
+     * @param rule     budget rule
+     * @param order    position of the rule in the rule set
+     * @param calendar work calendar
+     * @param periods  periods of the forecast
+     * @return occurrence of the rule for every period, or <code>null</code> for periods where the rule does not match
+     * @throws ScriptException in case of calculation error
+     */
+    static List<Occurrence> evaluate(BudgetRule rule, int order, WorkCalendar calendar, List<Period> periods) throws ScriptException {
+        return evaluate(rule, order, calendar, periods, BudgetMetrics.NOOP, null);
+    }
+
+    /**
+     * Evaluate the rule in every period and report metrics.
+     *
+     * @param metrics listener of calculation metrics
+     * @param nanos   time spent on the rule is added to this array, by period. Used only when metrics are enabled.
+     * @see #evaluate(BudgetRule, int, WorkCalendar, List)
+     */
+    static List<Occurrence> evaluate(BudgetRule rule, int order, WorkCalendar calendar, List<Period> periods,
+                                     BudgetMetrics metrics, long[] nanos) throws ScriptException {
+        final boolean measured = metrics.isEnabled();
+        final List<Occurrence> result = new ArrayList<>(periods.size());
+        for (int i = 0; i < periods.size(); i++) {
+            final Period period = periods.get(i);
+            final long started = measured ? System.nanoTime() : 0L;
+            int checks = 0;
+            int matches = 0;
+            LocalDate first = null;
+            LocalDate last = null;
+            for (LocalDate date = period.from; !date.isAfter(period.to); date = date.plusDays(1)) {
+                checks++;
+                if (rule.matches(date, calendar)) {
+                    matches++;
+                    if (first == null) first = date;
+                    last = date;
+                }
+            }
+            int scripts = 0;
+            long scriptNanos = 0L;
+            if (first == null) {
+                result.add(null);
+            } else {
+                final long scriptStarted = measured ? System.nanoTime() : 0L;
+                result.add(new Occurrence(rule, order, first, calculate(rule, last, calendar, metrics)));
+                if (rule.calculation() != null) {
+                    scripts = 1;
+                    if (measured) scriptNanos = System.nanoTime() - scriptStarted;
+                }
+            }
+            if (measured) {
+                metrics.onRule(rule, period.from, period.to, checks, matches, scripts, scriptNanos);
+                if (nanos != null) nanos[i] += System.nanoTime() - started;
+            }
+        }
+        return result;
+    }
+
+    private static Money calculate(BudgetRule rule, LocalDate date, WorkCalendar calendar, BudgetMetrics metrics) throws ScriptException {
+        if (rule.calculation() == null) {
+            return rule.value();
+        }
+        Map<String, Object> arguments = new HashMap<>();
+        arguments.put("date", date);
+        arguments.put("month", YearMonth.from(date));
+        arguments.put("prevMonth", YearMonth.from(date).minusMonths(1));
+        arguments.put("nextMonth", YearMonth.from(date).plusMonths(1));
+        arguments.put("value", rule.value());
+        arguments.put("currency", rule.value().currency().getCurrencyCode());
+        arguments.put("calendar", calendar);
+
+        final ScriptEvaluationEvent event = ScriptEvaluationEvent.TYPE.isEnabled() ? new ScriptEvaluationEvent() : null;
+        if (event != null) event.begin();
+        final Money result = rule.calculation().calculate(arguments, metrics);
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.ruleId = rule.ruleId().value();
+                event.ruleName = rule.name();
+                event.date = date.toString();
+                event.expression = rule.calculation().expression();
+                event.commit();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Group operations by period and account.
+     *
+     * @return operations of each period grouped by account, in the original order
+     */
+    static List<Map<AccountNumber, List<BankRecord<?>>>> bucket(List<Period> periods, List<BankRecord<?>> operations) {
+        final List<Map<AccountNumber, List<BankRecord<?>>>> result = new ArrayList<>(periods.size());
+        final LocalDate[] starts = new LocalDate[periods.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = periods.get(i).from;
+            result.add(new HashMap<>());
+        }
+        if (periods.isEmpty()) return result;
+
+        final LocalDate finish = periods.get(periods.size() - 1).to;
+        for (BankRecord<?> op : operations) {
+            final LocalDate recorded = op.recorded();
+            if (recorded.isBefore(starts[0]) || recorded.isAfter(finish)) continue;
+            int i = Arrays.binarySearch(starts, recorded);
+            if (i < 0) i = -i - 2;
+            result.get(i).computeIfAbsent(op.account(), k -> new ArrayList<>()).add(op);
+        }
+        return result;
+    }
+
+    /**
+     * Build budget balances from evaluated rules and operations.
+     *
+     * @param periods        periods of the forecast
+     * @param occurrences    evaluated rules for each period
+     * @param actualRemains  known remains for accounts
+     * @param defaultAccount default account number
+     * @param operations     operations for each period grouped by account
+     * @return list of budget balance entries for each period
+     */
+    static List<BudgetBalance> assemble(
+            List<Period> periods,
+            List<List<Occurrence>> occurrences,
+            RemainHistory actualRemains,
+            AccountNumber defaultAccount,
+            List<Map<AccountNumber, List<BankRecord<?>>>> operations) {
+        return assemble(periods, occurrences, actualRemains, defaultAccount, operations, BudgetMetrics.NOOP);
+    }
+
+    /**
+     * Build budget balances from evaluated rules and operations and report metrics.
+     *
+     * @param metrics listener of calculation metrics
+     * @see #assemble(List, List, RemainHistory, AccountNumber, List)
+     */
+    static List<BudgetBalance> assemble(
+            List<Period> periods,
+            List<List<Occurrence>> occurrences,
+            RemainHistory actualRemains,
+            AccountNumber defaultAccount,
+            List<Map<AccountNumber, List<BankRecord<?>>>> operations,
+            BudgetMetrics metrics) {
+        return assemble(periods, occurrences, actualRemains, defaultAccount, operations, metrics, null);
+    }
+
+    /**
+     * Build budget balances from evaluated rules and operations.
+     *
+     * @param metrics listener of calculation metrics
+     * @param loader  source of operations for movements in summary mode, or null to keep operations in movements
+     * @see #assemble(List, List, RemainHistory, AccountNumber, List)
+     */
+    static List<BudgetBalance> assemble(
+            List<Period> periods,
+            List<List<Occurrence>> occurrences,
+            RemainHistory actualRemains,
+            AccountNumber defaultAccount,
+            List<Map<AccountNumber, List<BankRecord<?>>>> operations,
+            BudgetMetrics metrics,
+            OperationLoader loader) {
+        final boolean measured = metrics.isEnabled();
+        final List<BudgetBalance> result = new ArrayList<>();
+        final Map<AccountNumber, Remain> currentRemains = new HashMap<>();
+
+        for (int p = 0; p < periods.size(); p++) {
+            final Period period = periods.get(p);
+            final LocalDate weekStart = period.from;
+            final LocalDate weekEnd = period.to;
+            final long remainsStarted = measured ? System.nanoTime() : 0L;
+
+            // calculate remains for current period
+            actualRemains.floor(weekStart) // use remains with date before start of period
+                    .forEach((account, remain) -> currentRemains.merge(account, remain, (a, b) -> a.date().isAfter(b.date()) ? a : b)); // use most actual remains
+
+            // currentRemains contain remains for start of period
+            // put them into startRemains
+            final Map<AccountNumber, Remain> startRemains = new HashMap<>(currentRemains);
+
+            final List<Occurrence> calculation = new ArrayList<>(occurrences.get(p));
+            calculation.sort(Occurrence.ORDER);
+
+            final List<BudgetPlan> items = new ArrayList<>(calculation.size());
+            for (Occurrence occurrence : calculation) {
+                final BudgetRule rule = occurrence.rule;
+                final BudgetPlan item = new BudgetPlan(
+                        BudgetPlanId.nextId(),
+                        rule,
+                        period.date,
+                        BudgetDirection.of(rule.type().symbol()),
+                        occurrence.value,
+                        rule.sourceAccount(),
+                        rule.targetAccount(),
+                        rule.categoryId(),
+                        rule.purchaseCategoryId()
+                ).occursOn(occurrence.first);
+                items.add(item);
+
+                // calculate remains for end of period
+                final AccountNumber source = item.source() == null ? defaultAccount : item.source();
+                final AccountNumber target = item.target() == null ? defaultAccount : item.target();
+                Remain sourceRemain = currentRemains.get(source);
+                if (sourceRemain == null) {
+                    sourceRemain = new Remain(source, weekEnd, Money.ofRaw(0, item.value().currency()));
+                }
+                Remain targetRemain = currentRemains.get(target);
+                if (targetRemain == null) {
+                    targetRemain = new Remain(target, weekEnd, Money.ofRaw(0, item.value().currency()));
+                }
+                switch (item.direction()) {
+                    case INCOME -> {
+                        targetRemain = new Remain(target, weekEnd, targetRemain.value().add(item.value()));
+                        currentRemains.put(target, targetRemain);
+                    }
+                    case EXPENSE -> {
+                        sourceRemain = new Remain(source, weekEnd, sourceRemain.value().subtract(item.value()));
+                        currentRemains.put(source, sourceRemain);
+                    }
+                    case MOVE -> {
+                        sourceRemain = new Remain(source, weekEnd, sourceRemain.value().subtract(item.value()));
+                        currentRemains.put(source, sourceRemain);
+                        targetRemain = new Remain(target, weekEnd, targetRemain.value().add(item.value()));
+                        currentRemains.put(target, targetRemain);
+                    }
+                    default -> throw new IllegalArgumentException();
+                }
+            }
+
+            final long movementsStarted = measured ? System.nanoTime() : 0L;
+            if (measured) metrics.onPhase(BudgetMetrics.Phase.REMAINS, weekStart, weekEnd, movementsStarted - remainsStarted);
+
+            // calculate flow of funds for all accounts
+            final Map<AccountNumber, AccountMovement> movements = new HashMap<>();
+            operations.get(p).forEach((k, v) -> {
+                final Remain startRemain = startRemains.computeIfAbsent(k, n -> new Remain(n, weekStart, Money.kopecks(0L)));
+                Money finishRemainValue = startRemain.value();
+                for (BankRecord<?> op : v) {
+                    finishRemainValue = switch (op.type()) {
+                        case DEPOSIT -> finishRemainValue.add(op.amount());
+                        case WITHDRAW -> finishRemainValue.subtract(op.amount());
+                        //noinspection UnnecessaryDefault
+                        default -> throw new IllegalArgumentException();
+                    };
+                }
+                final Remain finishRemain = new Remain(k, weekEnd, finishRemainValue);
+                AccountMovement movement = new AccountMovement(startRemain, finishRemain, v);
+                if (loader != null) movement = movement.summary(loader);
+                movements.put(k, movement);
+            });
+
+            if (measured) metrics.onPhase(BudgetMetrics.Phase.MOVEMENTS, weekStart, weekEnd, System.nanoTime() - movementsStarted);
+
+            final BudgetBalance budgetBalance = new BudgetBalance(
+                    weekStart, weekEnd, items,
+                    new ArrayList<>(currentRemains.values()),
+                    new ArrayList<>(movements.values())
+            );
+            result.add(budgetBalance);
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean sameValueAs(BudgetSnapshot that) {
+        return that != null &&
+                Objects.equals(budgetId, that.budgetId) &&
+                Objects.equals(rules, that.rules) &&
+                Objects.equals(locale, that.locale) &&
+                Objects.equals(currency, that.currency);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BudgetSnapshot that = (BudgetSnapshot) o;
+        return sameValueAs(that);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(budgetId, rules, locale, currency);
+    }
+
+    @Override
+    public String toString() {
+        return "BudgetSnapshot{" +
+                "budgetId=" + budgetId +
+                ", rules=" + rules.size() +
+                ", locale=" + locale +
+                ", currency=" + currency +
+                '}';
+    }
+
+    /**
+     * Time range of single forecast period
+     */
+    static final class Period {
+        /**
+         * Date of plan items of the period
+         */
+        final LocalDate date;
+        final LocalDate from;
+        final LocalDate to;
+
+        Period(LocalDate date, LocalDate from, LocalDate to) {
+            this.date = date;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * Evaluated rule in a period
+     */
+    static final class Occurrence {
+        static final Comparator<Occurrence> ORDER = Comparator
+                .comparing((Occurrence o) -> o.first)
+                .thenComparingInt(o -> o.order);
+
+        final BudgetRule rule;
+        final int order;
+        final LocalDate first;
+        final Money value;
+
+        Occurrence(BudgetRule rule, int order, LocalDate first, Money value) {
+            this.rule = rule;
+            this.order = order;
+            this.first = first;
+            this.value = value;
+        }
+
+        Occurrence withOrder(int order) {
+            return order == this.order ? this : new Occurrence(rule, order, first, value);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.BankRecord;
+import ru.vzotov.banking.domain.model.BudgetCategoryId;
+import ru.vzotov.banking.domain.model.OperationType;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Plan-versus-actual reconciliation of a budget forecast.
+ * <p>
+ * Plan items of every period are indexed by account, side (withdraw or deposit) and amount.
+ * An actual operation is matched to the unmatched plan item of the same period and account
+ * whose amount is the closest to the amount of the operation, if the difference is within the tolerance
+ * and the categories (when known) are the same. Each plan item is matched at most once.
+ * <p>
+ * Amounts in different currencies are never summed, unplanned operations and categories are reported
+ * per currency.
+ * <p>
+ * Operations can be added one by one as they arrive, each addition costs <code>O(log n)</code>
+ * plus the number of amounts within the tolerance whose plan items are rejected by category or currency.
+ * Instances are not thread-safe.
+ */
+public class BudgetVariance {
+
+    private final List<PeriodState> periods = new ArrayList<>();
+
+    private final LocalDate[] starts;
+
+    private final AccountNumber defaultAccount;
+
+    /**
+     * Tolerance in minor currency units
+     */
+    private final long absoluteTolerance;
+
+    /**
+     * Tolerance relative to the planned amount
+     */
+    private final double relativeTolerance;
+
+    /**
+     * Category of the actual operation, if known
+     */
+    private final Function<BankRecord<?>, BudgetCategoryId> categories;
+
+    /**
+     * @param forecast          forecast with plan items
+     * @param defaultAccount    default account number that was used for the forecast
+     * @param absoluteTolerance allowed difference between planned and actual amounts
+     * @param relativeTolerance allowed difference relative to the planned amount, e.g. <code>0.1</code>
+     * @param categories        resolves category of the operation. May return <code>null</code> if category is unknown.
+     */
+    public BudgetVariance(List<BudgetBalance> forecast,
+                          AccountNumber defaultAccount,
+                          Money absoluteTolerance,
+                          double relativeTolerance,
+                          Function<BankRecord<?>, BudgetCategoryId> categories) {
+        Validate.notNull(forecast);
+        Validate.notNull(defaultAccount);
+        Validate.notNull(absoluteTolerance);
+        Validate.isTrue(relativeTolerance >= 0d);
+        Validate.notNull(categories);
+
+        this.defaultAccount = defaultAccount;
+        this.absoluteTolerance = absoluteTolerance.rawAmount();
+        this.relativeTolerance = relativeTolerance;
+        this.categories = categories;
+        this.starts = new LocalDate[forecast.size()];
+        for (int i = 0; i < forecast.size(); i++) {
+            final BudgetBalance balance = forecast.get(i);
+            starts[i] = balance.from();
+            periods.add(new PeriodState(balance));
+        }
+    }
+
+    /**
+     * Reconcile the forecast with all operations of its movements.
+     */
+    public static BudgetVariance of(List<BudgetBalance> forecast,
+                                    AccountNumber defaultAccount,
+                                    Money absoluteTolerance,
+                                    double relativeTolerance,
+                                    Function<BankRecord<?>, BudgetCategoryId> categories) {
+        final BudgetVariance result = new BudgetVariance(forecast, defaultAccount, absoluteTolerance, relativeTolerance, categories);
+        final List<BankRecord<?>> operations = new ArrayList<>();
+        for (BudgetBalance balance : forecast) {
+            for (AccountMovement movement : balance.movements()) {
+                operations.addAll(movement.operations());
+            }
+        }
+        result.addAll(operations);
+        return result;
+    }
+
+    /**
+     * Add actual operations. Operations are matched in order of their dates.
+     */
+    public void addAll(List<BankRecord<?>> operations) {
+        final List<BankRecord<?>> sorted = new ArrayList<>(operations);
+        sorted.sort(Comparator.comparing(BankRecord::recorded));
+        sorted.forEach(this::add);
+    }
+
+    /**
+     * Add actual operation.
+     *
+     * @param operation operation
+     * @return true if the operation belongs to the time range of the forecast
+     */
+    public boolean add(BankRecord<?> operation) {
+        Validate.notNull(operation);
+        final LocalDate recorded = operation.recorded();
+        if (starts.length == 0 || recorded.isBefore(starts[0])) return false;
+        int i = Arrays.binarySearch(starts, recorded);
+        if (i < 0) i = -i - 2;
+        final PeriodState period = periods.get(i);
+        if (recorded.isAfter(period.to)) return false;
+        period.add(operation);
+        return true;
+    }
+
+    /**
+     * @return planned and actual amounts for each period and rule.
+     * Operations that were not matched to any plan item are reported with no rule, grouped by category and currency.
+     */
+    public List<Variance> byRule() {
+        final List<Variance> result = new ArrayList<>();
+        for (PeriodState period : periods) {
+            period.rules.forEach((rule, totals) -> result.add(totals.toVariance(period, rule, rule.categoryId())));
+            period.unplanned.forEach((key, totals) -> result.add(totals.toVariance(period, null, key.category())));
+        }
+        return result;
+    }
+
+    /**
+     * @return planned and actual amounts for each period, category and currency
+     */
+    public List<Variance> byCategory() {
+        final List<Variance> result = new ArrayList<>();
+        for (PeriodState period : periods) {
+            final Map<CategoryKey, Totals> categories = new LinkedHashMap<>();
+            period.rules.forEach((rule, totals) -> categories.computeIfAbsent(new CategoryKey(rule.categoryId(), totals.currency), k -> new Totals(k.currency())).add(totals));
+            period.unplanned.forEach((key, totals) -> categories.computeIfAbsent(key, k -> new Totals(k.currency())).add(totals));
+            categories.forEach((key, totals) -> result.add(totals.toVariance(period, null, key.category())));
+        }
+        return result;
+    }
+
+    private boolean withinTolerance(long planned, long actual) {
+        final long tolerance = Math.max(absoluteTolerance, Math.round(Math.abs(planned) * relativeTolerance));
+        return Math.abs(planned - actual) <= tolerance;
+    }
+
+    /**
+     * @return the largest difference between the actual amount and a planned amount that can be within the tolerance
+     */
+    private long searchLimit(long actual) {
+        if (relativeTolerance >= 1d) return Long.MAX_VALUE;
+        // |planned| <= |actual| + d, so d <= |planned| * r + 1/2 (rounded) implies d <= (|actual| * r + 1/2) / (1 - r)
+        final double relative = Math.ceil((Math.abs((double) actual) * relativeTolerance + 1d) / (1d - relativeTolerance));
+        return Math.max(absoluteTolerance, relative >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) relative);
+    }
+
+    private class PeriodState {
+        final LocalDate from;
+        final LocalDate to;
+
+        /**
+         * Unmatched plan items by account and side, ordered by amount
+         */
+        final Map<Key, NavigableMap<Long, Deque<BudgetPlan>>> unmatched = new HashMap<>();
+
+        final Map<BudgetRule, Totals> rules = new LinkedHashMap<>();
+
+        final Map<CategoryKey, Totals> unplanned = new LinkedHashMap<>();
+
+        PeriodState(BudgetBalance balance) {
+            this.from = balance.from();
+            this.to = balance.to();
+            for (BudgetPlan item : balance.items()) {
+                rules.computeIfAbsent(item.rule(), k -> new Totals(item.value().currency())).planned += item.value().rawAmount();
+                for (Key key : keys(item)) {
+                    unmatched.computeIfAbsent(key, k -> new TreeMap<>())
+                            .computeIfAbsent(item.value().rawAmount(), k -> new ArrayDeque<>())
+                            .add(item);
+                }
+            }
+        }
+
+        /**
+         * @return keys of the plan item in the index of unmatched items
+         */
+        private List<Key> keys(BudgetPlan item) {
+            final AccountNumber source = item.source() == null ? defaultAccount : item.source();
+            final AccountNumber target = item.target() == null ? defaultAccount : item.target();
+            return switch (item.direction()) {
+                case INCOME -> List.of(new Key(target, OperationType.DEPOSIT));
+                case EXPENSE -> List.of(new Key(source, OperationType.WITHDRAW));
+                case MOVE -> List.of(new Key(source, OperationType.WITHDRAW), new Key(target, OperationType.DEPOSIT));
+            };
+        }
+
+        void add(BankRecord<?> operation) {
+            final long amount = operation.amount().rawAmount();
+            final BudgetCategoryId category = categories.apply(operation);
+            final NavigableMap<Long, Deque<BudgetPlan>> candidates = unmatched.get(new Key(operation.account(), operation.type()));
+            if (candidates != null) {
+                final BudgetPlan item = closest(candidates, amount, category, operation.amount().currency());
+                if (item != null) {
+                    // plan item of MOVE rule is matched by either withdraw or deposit, not by both
+                    for (Key key : keys(item)) {
+                        remove(unmatched.get(key), item);
+                    }
+                    rules.get(item.rule()).actual += amount;
+                    return;
+                }
+            }
+            unplanned.computeIfAbsent(new CategoryKey(category, operation.amount().currency()), k -> new Totals(k.currency())).actual += amount;
+        }
+
+        /**
+         * Find the unmatched plan item with the closest amount that is accepted by category and currency.
+         * Amounts are visited in order of their distance from the actual amount, both below and above it,
+         * until no amount at that distance can be within the tolerance.
+         */
+        private BudgetPlan closest(NavigableMap<Long, Deque<BudgetPlan>> candidates, long amount, BudgetCategoryId category, Currency currency) {
+            final long limit = searchLimit(amount);
+            final Iterator<Map.Entry<Long, Deque<BudgetPlan>>> below = candidates.headMap(amount, true).descendingMap().entrySet().iterator();
+            final Iterator<Map.Entry<Long, Deque<BudgetPlan>>> above = candidates.tailMap(amount, false).entrySet().iterator();
+            Map.Entry<Long, Deque<BudgetPlan>> lower = below.hasNext() ? below.next() : null;
+            Map.Entry<Long, Deque<BudgetPlan>> upper = above.hasNext() ? above.next() : null;
+            while (lower != null || upper != null) {
+                final Map.Entry<Long, Deque<BudgetPlan>> entry;
+                if (upper == null || (lower != null && amount - lower.getKey() <= upper.getKey() - amount)) {
+                    entry = lower;
+                    lower = below.hasNext() ? below.next() : null;
+                } else {
+                    entry = upper;
+                    upper = above.hasNext() ? above.next() : null;
+                }
+                if (Math.abs(entry.getKey() - amount) > limit) break;
+                if (!withinTolerance(entry.getKey(), amount)) continue;
+                for (BudgetPlan item : entry.getValue()) {
+                    if (!item.value().currency().equals(currency)) continue;
+                    if (category != null && item.category() != null && !category.equals(item.category())) continue;
+                    return item;
+                }
+            }
+            return null;
+        }
+
+        private void remove(NavigableMap<Long, Deque<BudgetPlan>> index, BudgetPlan item) {
+            final long amount = item.value().rawAmount();
+            final Deque<BudgetPlan> items = index.get(amount);
+            if (items != null && items.remove(item) && items.isEmpty()) {
+                index.remove(amount);
+            }
+        }
+    }
+
+    private static final class Key {
+        final AccountNumber account;
+        final OperationType side;
+
+        Key(AccountNumber account, OperationType side) {
+            this.account = account;
+            this.side = side;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(account, key.account) && side == key.side;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(account, side);
+        }
+    }
+
+    /**
+     * Category, possibly unknown, and currency of amounts
+     */
+    private record CategoryKey(BudgetCategoryId category, Currency currency) {
+    }
+
+    private static final class Totals {
+        final Currency currency;
+        long planned;
+        long actual;
+
+        Totals(Currency currency) {
+            this.currency = currency;
+        }
+
+        void add(Totals other) {
+            planned += other.planned;
+            actual += other.actual;
+        }
+
+        Variance toVariance(PeriodState period, BudgetRule rule, BudgetCategoryId category) {
+            return new Variance(period.from, period.to, rule, category,
+                    Money.ofRaw(planned, currency), Money.ofRaw(actual, currency));
+        }
+    }
+}
@@ -27,6 +27,27 @@ public class Calculation implements ValueObject<Calculation> {
     }
 
     public Money calculate(Map<String, Object> arguments) throws ScriptException {
+        return calculate(arguments, BudgetMetrics.NOOP);
+    }
+
+    /**
+     * Evaluate the expression.
+     *
+     * @param arguments variables of the script
+     * @param metrics   metrics listener
+     * @return calculated value
+     * @throws ScriptException in case of script error
+     */
+    public Money calculate(Map<String, Object> arguments, BudgetMetrics metrics) throws ScriptException {
+        final long started = metrics.isEnabled() ? System.nanoTime() : 0L;
+        try {
+            return evaluate(arguments);
+        } finally {
+            if (metrics.isEnabled()) metrics.onScript(this, System.nanoTime() - started);
+        }
+    }
+
+    private Money evaluate(Map<String, Object> arguments) throws ScriptException {
         ScriptEngineManager manager = new ScriptEngineManager();
         ScriptEngine engine = manager.getEngineByName("JavaScript");
         Bindings bindings = engine.createBindings();
@@ -0,0 +1,204 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Append-only journal of changes of deals and budgets.
+ * <p>
+ * The journal listens to aggregates (see {@link Deal#setListener(DealListener)} and
+ * {@link Budget#setListener(BudgetListener)}) and numbers every change with a sequence number.
+ * Consumers either read changes after the last sequence they have seen, or subscribe to batches of changes
+ * and maintain indexes and forecast caches incrementally.
+ * <p>
+ * Changes of a unit of work can be collected in a {@link Batch} without locking and appended at once,
+ * with contiguous sequence numbers and a single notification of subscribers.
+ * <p>
+ * The journal is thread-safe. Subscribers are notified in the order of sequence numbers by one thread at a time,
+ * outside the lock of the journal and after the thread that made a change has released the locks of deals
+ * (see {@link DealLocks#afterUnlock(Runnable)}), so a subscriber may read and change deals.
+ * Changes made by a subscriber are delivered after the current batch.
+ */
+public class ChangeJournal extends ChangeRecorder {
+
+    private final List<DomainChange> changes = new ArrayList<>();
+
+    private final List<Consumer<List<DomainChange>>> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Batches waiting for delivery to subscribers, in the order of sequence numbers
+     */
+    private final Queue<List<DomainChange>> published = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean publishing = new AtomicBoolean();
+
+    private final Runnable publisher = this::publish;
+
+    /**
+     * Sequence number of the first kept change
+     */
+    private long first = 1L;
+
+    @Override
+    void record(DomainChange.Type type, Object aggregate, Object subject) {
+        append(type, aggregate, subject);
+    }
+
+    /**
+     * Append a single change.
+     *
+     * @return sequence number of the change
+     */
+    public long append(DomainChange.Type type, Object aggregate, Object subject) {
+        Validate.notNull(type);
+        Validate.notNull(aggregate);
+        final DomainChange change;
+        synchronized (this) {
+            change = new DomainChange(next(), type, aggregate, subject);
+            changes.add(change);
+            published.add(Collections.singletonList(change));
+        }
+        DealLocks.afterUnlock(publisher);
+        return change.sequence();
+    }
+
+    /**
+     * @return new empty batch of changes
+     */
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /**
+     * @return sequence number of the last change, or 0 if the journal is empty
+     */
+    public synchronized long lastSequence() {
+        return next() - 1;
+    }
+
+    /**
+     * Read changes starting from the sequence number.
+     *
+     * @param sequence first sequence number to read
+     * @param max      maximum number of changes
+     * @return changes in the order of sequence numbers
+     * @throws IllegalStateException if changes starting from the sequence number were truncated
+     */
+    public synchronized List<DomainChange> read(long sequence, int max) {
+        Validate.isTrue(sequence > 0);
+        Validate.isTrue(max >= 0);
+        Validate.validState(sequence >= first, "Changes before %d were truncated", first);
+        final int from = (int) Math.min(sequence - first, changes.size());
+        final int to = (int) Math.min((long) from + max, changes.size());
+        return List.copyOf(changes.subList(from, to));
+    }
+
+    /**
+     * Discard changes that all consumers have already read.
+     *
+     * @param sequence first sequence number to keep
+     */
+    public synchronized void truncate(long sequence) {
+        final int n = (int) Math.min(Math.max(sequence - first, 0), changes.size());
+        changes.subList(0, n).clear();
+        first += n;
+    }
+
+    public void subscribe(Consumer<List<DomainChange>> subscriber) {
+        Validate.notNull(subscriber);
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(Consumer<List<DomainChange>> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    private long next() {
+        return first + changes.size();
+    }
+
+    /**
+     * Deliver published batches. A thread that finds another one delivering leaves its batches to that thread.
+     */
+    private void publish() {
+        while (!published.isEmpty() && publishing.compareAndSet(false, true)) {
+            try {
+                List<DomainChange> batch;
+                while ((batch = published.poll()) != null) {
+                    for (Consumer<List<DomainChange>> subscriber : subscribers) {
+                        subscriber.accept(batch);
+                    }
+                }
+            } finally {
+                publishing.set(false);
+            }
+        }
+    }
+
+    private void commit(Object[] pending, int size) {
+        final List<DomainChange> batch = new ArrayList<>(size);
+        synchronized (this) {
+            for (int i = 0; i < size; i++) {
+                batch.add(new DomainChange(next(), (DomainChange.Type) pending[3 * i], pending[3 * i + 1], pending[3 * i + 2]));
+                changes.add(batch.get(i));
+            }
+            published.add(Collections.unmodifiableList(batch));
+        }
+        DealLocks.afterUnlock(publisher);
+    }
+
+    /**
+     * Changes collected by a single thread and appended to the journal at once.
+     * Sequence numbers are assigned on commit. The batch is not thread-safe.
+     */
+    public final class Batch extends ChangeRecorder {
+
+        /**
+         * Type, aggregate and subject of every pending change
+         */
+        private Object[] pending = new Object[3 * 8];
+
+        private int size;
+
+        private Batch() {
+        }
+
+        @Override
+        void record(DomainChange.Type type, Object aggregate, Object subject) {
+            add(type, aggregate, subject);
+        }
+
+        public void add(DomainChange.Type type, Object aggregate, Object subject) {
+            Validate.notNull(type);
+            Validate.notNull(aggregate);
+            if (3 * size == pending.length) pending = Arrays.copyOf(pending, pending.length * 2);
+            pending[3 * size] = type;
+            pending[3 * size + 1] = aggregate;
+            pending[3 * size + 2] = subject;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Append pending changes to the journal and clear the batch.
+         */
+        public void commit() {
+            if (size == 0) return;
+            ChangeJournal.this.commit(pending, size);
+            Arrays.fill(pending, 0, 3 * size, null);
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ru.vzotov.accounting.domain.model;
+
+import ru.vzotov.banking.domain.model.BudgetCategoryId;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.cashreceipt.domain.model.ReceiptId;
+import ru.vzotov.purchase.domain.model.PurchaseId;
+
+/**
+ * Translates notifications of deals and budgets into typed change records.
+ */
+abstract class ChangeRecorder implements DealListener, BudgetListener {
+
+    abstract void record(DomainChange.Type type, Object aggregate, Object subject);
+
+    @Override
+    public void operationAdded(Deal deal, OperationId operation) {
+        record(DomainChange.Type.DEAL_OPERATION_ADDED, deal.dealId(), operation);
+    }
+
+    @Override
+    public void operationRemoved(Deal deal, OperationId operation) {
+        record(DomainChange.Type.DEAL_OPERATION_REMOVED, deal.dealId(), operation);
+    }
+
+    @Override
+    public void receiptAdded(Deal deal, ReceiptId receipt) {
+        record(DomainChange.Type.DEAL_RECEIPT_ADDED, deal.dealId(), receipt);
+    }
+
+    @Override
+    public void receiptRemoved(Deal deal, ReceiptId receipt) {
+        record(DomainChange.Type.DEAL_RECEIPT_REMOVED, deal.dealId(), receipt);
+    }
+
+    @Override
+    public void purchaseAdded(Deal deal, PurchaseId purchase) {
+        record(DomainChange.Type.DEAL_PURCHASE_ADDED, deal.dealId(), purchase);
+    }
+
+    @Override
+    public void purchaseRemoved(Deal deal, PurchaseId purchase) {
+        record(DomainChange.Type.DEAL_PURCHASE_REMOVED, deal.dealId(), purchase);
+    }
+
+    @Override
+    public void joined(Deal deal, Deal other) {
+        record(DomainChange.Type.DEAL_JOINED, deal.dealId(), other.dealId());
+    }
+
+    @Override
+    public void categoryAssigned(Deal deal, BudgetCategoryId category) {
+        record(DomainChange.Type.DEAL_CATEGORY_ASSIGNED, deal.dealId(), category);
+    }
+
+    @Override
+    public void ruleAdded(Budget budget, BudgetRule rule) {
+        record(DomainChange.Type.BUDGET_RULE_ADDED, budget.budgetId(), rule.ruleId());
+    }
+
+    @Override
+    public void ruleDeleted(Budget budget, BudgetRule rule) {
+        record(DomainChange.Type.BUDGET_RULE_DELETED, budget.budgetId(), rule.ruleId());
+    }
+}
@@ -0,0 +1,142 @@
+package ru.vzotov.accounting.domain.model;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Mutable set for a few elements.
+ * <p>
+ * Elements are kept in a small array in insertion order until the set grows past {@link #THRESHOLD},
+ * then they move to a {@link HashSet}. An empty set shares the empty array and allocates nothing else.
+ * Lookups in the array are linear, which is faster than hashing for a handful of elements.
+ */
+final class CompactSet<E> extends AbstractSet<E> {
+
+    static final int THRESHOLD = 8;
+
+    private static final Object[] EMPTY = new Object[0];
+
+    private Object[] elements = EMPTY;
+
+    private int size;
+
+    /**
+     * Elements after the set grew past the threshold
+     */
+    private Set<E> large;
+
+    private int modifications;
+
+    CompactSet() {
+    }
+
+    CompactSet(Collection<? extends E> elements) {
+        if (elements.size() > THRESHOLD) {
+            large = new HashSet<>(elements);
+        } else {
+            addAll(elements);
+        }
+    }
+
+    @Override
+    public int size() {
+        return large != null ? large.size() : size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (large != null) return large.contains(o);
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public boolean add(E e) {
+        if (large != null) return large.add(e);
+        if (indexOf(e) >= 0) return false;
+        if (size == THRESHOLD) {
+            large = new HashSet<>(this);
+            elements = EMPTY;
+            size = 0;
+            modifications++;
+            return large.add(e);
+        }
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size == 0 ? 1 : Math.min(size * 2, THRESHOLD));
+        }
+        elements[size++] = e;
+        modifications++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (large != null) return large.remove(o);
+        final int i = indexOf(o);
+        if (i < 0) return false;
+        removeAt(i);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        large = null;
+        elements = EMPTY;
+        size = 0;
+        modifications++;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        if (large != null) return large.iterator();
+        return new Iterator<>() {
+            int next;
+            int last = -1;
+            int expected = modifications;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if (expected != modifications) throw new ConcurrentModificationException();
+                if (next >= size) throw new NoSuchElementException();
+                last = next++;
+                return (E) elements[last];
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) throw new IllegalStateException();
+                if (expected != modifications) throw new ConcurrentModificationException();
+                removeAt(last);
+                next = last;
+                last = -1;
+                expected = modifications;
+            }
+        };
+    }
+
+    private int indexOf(Object o) {
+        for (int i = 0; i < size; i++) {
+            if (Objects.equals(elements[i], o)) return i;
+        }
+        return -1;
+    }
+
+    private void removeAt(int i) {
+        System.arraycopy(elements, i + 1, elements, i, size - i - 1);
+        elements[--size] = null;
+        if (size == 0) elements = EMPTY;
+        modifications++;
+    }
+}
@@ -0,0 +1,105 @@
+package ru.vzotov.accounting.domain.model;
+
+import ru.vzotov.banking.domain.model.BudgetCategoryId;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.cashreceipt.domain.model.ReceiptId;
+import ru.vzotov.purchase.domain.model.PurchaseId;
+
+/**
+ * Listener that reports changes to two listeners, first to the first one.
+ *
+ * @see DealListener#compose(DealListener, DealListener)
+ */
+final class CompositeDealListener implements DealListener {
+
+    private final DealListener first;
+
+    private final DealListener second;
+
+    CompositeDealListener(DealListener first, DealListener second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * @param listener listener, possibly composite, or null
+     * @param removed  listener to remove
+     * @return listener that reports changes to all listeners of the given one except the removed, or null
+     */
+    static DealListener remove(DealListener listener, DealListener removed) {
+        if (listener == removed) return null;
+        if (!(listener instanceof CompositeDealListener composite)) return listener;
+        final DealListener first = remove(composite.first, removed);
+        final DealListener second = remove(composite.second, removed);
+        if (first == composite.first && second == composite.second) return listener;
+        if (first == null) return second;
+        if (second == null) return first;
+        return new CompositeDealListener(first, second);
+    }
+
+    @Override
+    public void addingOperation(Deal deal, OperationId operation) {
+        first.addingOperation(deal, operation);
+        second.addingOperation(deal, operation);
+    }
+
+    @Override
+    public void operationAdded(Deal deal, OperationId operation) {
+        first.operationAdded(deal, operation);
+        second.operationAdded(deal, operation);
+    }
+
+    @Override
+    public void operationRemoved(Deal deal, OperationId operation) {
+        first.operationRemoved(deal, operation);
+        second.operationRemoved(deal, operation);
+    }
+
+    @Override
+    public void addingReceipt(Deal deal, ReceiptId receipt) {
+        first.addingReceipt(deal, receipt);
+        second.addingReceipt(deal, receipt);
+    }
+
+    @Override
+    public void receiptAdded(Deal deal, ReceiptId receipt) {
+        first.receiptAdded(deal, receipt);
+        second.receiptAdded(deal, receipt);
+    }
+
+    @Override
+    public void receiptRemoved(Deal deal, ReceiptId receipt) {
+        first.receiptRemoved(deal, receipt);
+        second.receiptRemoved(deal, receipt);
+    }
+
+    @Override
+    public void addingPurchase(Deal deal, PurchaseId purchase) {
+        first.addingPurchase(deal, purchase);
+        second.addingPurchase(deal, purchase);
+    }
+
+    @Override
+    public void purchaseAdded(Deal deal, PurchaseId purchase) {
+        first.purchaseAdded(deal, purchase);
+        second.purchaseAdded(deal, purchase);
+    }
+
+    @Override
+    public void purchaseRemoved(Deal deal, PurchaseId purchase) {
+        first.purchaseRemoved(deal, purchase);
+        second.purchaseRemoved(deal, purchase);
+    }
+
+    @Override
+    public void joined(Deal deal, Deal other) {
+        first.joined(deal, other);
+        second.joined(deal, other);
+    }
+
+    @Override
+    public void categoryAssigned(Deal deal, BudgetCategoryId category) {
+        first.categoryAssigned(deal, category);
+        second.categoryAssigned(deal, category);
+    }
+}
@@ -0,0 +1,237 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.BankRecord;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dense series of end-of-day balances of several accounts.
+ * <p>
+ * The series is calculated in a single pass: signed amounts of operations and plan items are added
+ * to per-account daily arrays, then every array is turned into balances by a running sum.
+ * Balances are stored as primitive <code>long</code> values in minor currency units,
+ * so a year of daily points takes about 3 KiB per account.
+ */
+public class DailyBalanceSeries {
+
+    private final LocalDate from;
+
+    private final LocalDate to;
+
+    private final List<AccountNumber> accounts;
+
+    private final Map<AccountNumber, Integer> index;
+
+    private final Currency[] currencies;
+
+    /**
+     * End-of-day balances by account and day
+     */
+    private final long[][] values;
+
+    private DailyBalanceSeries(LocalDate from, LocalDate to, List<AccountNumber> accounts, Map<AccountNumber, Integer> index,
+                               Currency[] currencies, long[][] values) {
+        this.from = from;
+        this.to = to;
+        this.accounts = Collections.unmodifiableList(accounts);
+        this.index = index;
+        this.currencies = currencies;
+        this.values = values;
+    }
+
+    /**
+     * Calculate daily balances.
+     * <p>
+     * The opening balance of an account is the latest of its remains, plus operations and plan items made
+     * from the remain date up to the first day of the series. Accounts without remains start with zero balance.
+     *
+     * @param from           first day of the series (inclusive)
+     * @param to             last day of the series (inclusive)
+     * @param remains        known remains. Remains dated after the first day of the series are not allowed.
+     * @param operations     actual operations
+     * @param plan           planned items, applied on their dates
+     * @param defaultAccount account of plan items without source or target account
+     * @return daily balances
+     */
+    public static DailyBalanceSeries of(LocalDate from, LocalDate to,
+                                        Collection<Remain> remains,
+                                        Collection<? extends BankRecord<?>> operations,
+                                        Collection<BudgetPlan> plan,
+                                        AccountNumber defaultAccount) {
+        Validate.notNull(from);
+        Validate.notNull(to);
+        Validate.isTrue(!from.isAfter(to));
+        Validate.notNull(remains);
+        Validate.notNull(operations);
+        Validate.notNull(plan);
+
+        final Map<AccountNumber, Remain> opening = new HashMap<>();
+        for (Remain remain : remains) {
+            Validate.isTrue(!remain.date().isAfter(from), "Remain must not be after the first day of the series");
+            opening.merge(remain.account(), remain, (a, b) -> a.date().isAfter(b.date()) ? a : b);
+        }
+
+        final Builder builder = new Builder(from, to);
+        opening.values().forEach(remain -> builder.account(remain.account(), remain.value().currency()));
+        for (BankRecord<?> op : operations) {
+            final long amount = op.amount().rawAmount();
+            final long signed = switch (op.type()) {
+                case DEPOSIT -> amount;
+                case WITHDRAW -> -amount;
+                //noinspection UnnecessaryDefault
+                default -> throw new IllegalArgumentException("Unknown operation type");
+            };
+            builder.add(op.account(), op.recorded(), signed, op.amount().currency(), opening);
+        }
+        for (BudgetPlan item : plan) {
+            if (item.date() == null) continue;
+            final AccountNumber source = item.source() == null ? defaultAccount : item.source();
+            final AccountNumber target = item.target() == null ? defaultAccount : item.target();
+            final long amount = item.value().rawAmount();
+            final Currency currency = item.value().currency();
+            switch (item.direction()) {
+                case INCOME -> builder.add(target, item.date(), amount, currency, opening);
+                case EXPENSE -> builder.add(source, item.date(), -amount, currency, opening);
+                case MOVE -> {
+                    builder.add(source, item.date(), -amount, currency, opening);
+                    builder.add(target, item.date(), amount, currency, opening);
+                }
+                default -> throw new IllegalArgumentException();
+            }
+        }
+        return builder.build(opening);
+    }
+
+    public LocalDate from() {
+        return from;
+    }
+
+    public LocalDate to() {
+        return to;
+    }
+
+    /**
+     * @return number of days in the series
+     */
+    public int days() {
+        return (int) ChronoUnit.DAYS.between(from, to) + 1;
+    }
+
+    public List<AccountNumber> accounts() {
+        return accounts;
+    }
+
+    /**
+     * @param account account
+     * @param date    day of the series
+     * @return balance at the end of the day
+     */
+    public Money value(AccountNumber account, LocalDate date) {
+        final int a = indexOf(account);
+        return Money.ofRaw(values[a][dayOf(date)], currencies[a]);
+    }
+
+    /**
+     * @param account account
+     * @param date    day of the series
+     * @return remain at the end of the day
+     */
+    public Remain remain(AccountNumber account, LocalDate date) {
+        return new Remain(account, date, value(account, date));
+    }
+
+    /**
+     * @param account account
+     * @return copy of end-of-day balances of the account in minor currency units, one value per day
+     */
+    public long[] rawValues(AccountNumber account) {
+        return values[indexOf(account)].clone();
+    }
+
+    public Currency currency(AccountNumber account) {
+        return currencies[indexOf(account)];
+    }
+
+    private int indexOf(AccountNumber account) {
+        final Integer a = index.get(account);
+        Validate.notNull(a, "Unknown account %s", account);
+        return a;
+    }
+
+    private int dayOf(LocalDate date) {
+        Validate.isTrue(!date.isBefore(from) && !date.isAfter(to), "Date is out of the series");
+        return (int) ChronoUnit.DAYS.between(from, date);
+    }
+
+    private static class Builder {
+        final LocalDate from;
+        final LocalDate to;
+        final int days;
+        final List<AccountNumber> accounts = new ArrayList<>();
+        final Map<AccountNumber, Integer> index = new HashMap<>();
+        final List<Currency> currencies = new ArrayList<>();
+        final List<long[]> deltas = new ArrayList<>();
+        final List<long[]> openings = new ArrayList<>();
+
+        Builder(LocalDate from, LocalDate to) {
+            this.from = from;
+            this.to = to;
+            this.days = (int) ChronoUnit.DAYS.between(from, to) + 1;
+        }
+
+        int account(AccountNumber account, Currency currency) {
+            Integer a = index.get(account);
+            if (a == null) {
+                a = accounts.size();
+                index.put(account, a);
+                accounts.add(account);
+                currencies.add(currency);
+                deltas.add(new long[days]);
+                openings.add(new long[1]);
+            }
+            return a;
+        }
+
+        void add(AccountNumber account, LocalDate date, long amount, Currency currency, Map<AccountNumber, Remain> opening) {
+            if (date.isAfter(to)) return;
+            final Remain remain = opening.get(account);
+            if (remain != null && date.isBefore(remain.date())) return;
+
+            final int a = account(account, currency);
+            Validate.isTrue(currencies.get(a).equals(currency), "Currency of account %s does not match", account);
+            if (date.isBefore(from)) {
+                // made after the remain but before the series
+                if (remain != null) openings.get(a)[0] += amount;
+            } else {
+                deltas.get(a)[(int) ChronoUnit.DAYS.between(from, date)] += amount;
+            }
+        }
+
+        DailyBalanceSeries build(Map<AccountNumber, Remain> opening) {
+            final long[][] values = new long[accounts.size()][];
+            for (int a = 0; a < values.length; a++) {
+                final Remain remain = opening.get(accounts.get(a));
+                long balance = (remain == null ? 0L : remain.value().rawAmount()) + openings.get(a)[0];
+                // running sum turns daily deltas into end-of-day balances in place
+                final long[] series = deltas.get(a);
+                for (int d = 0; d < days; d++) {
+                    balance += series[d];
+                    series[d] = balance;
+                }
+                values[a] = series;
+            }
+            return new DailyBalanceSeries(from, to, accounts, index, currencies.toArray(new Currency[0]), values);
+        }
+    }
+}
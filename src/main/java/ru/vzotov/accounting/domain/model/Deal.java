@@ -15,9 +15,11 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptySet;
@@ -28,6 +30,17 @@ import static java.util.Collections.emptySet;
  *     A deal is a financially significant action that is accompanied by one or more financial operations
  *     and can be confirmed by one or more cash receipts.
  * </p>
+ * <p>
+ *     Mutations are atomic and may be called from several threads.
+ *     If a listener rejects a link, the mutation restores the links the deal had before and rethrows.
+ *     Moves and joins lock both deals in a consistent order, so they never deadlock.
+ *     Operations, receipts and purchases are returned as unmodifiable live views, not copies.
+ *     A view may be iterated by the thread that changes the deal, for example by a listener,
+ *     or when no other thread changes the deal at the same time.
+ *     Readers that run concurrently with mutations use {@link #operationCount()} and {@link #hasPurchases()},
+ *     which read under the lock of the deal, or coordinate with the writers themselves.
+ *     Listener callbacks are called while the locks of the changed deals are held.
+ * </p>
  */
 @AggregateRoot
 public class Deal implements Entity<Deal>, Owned {
@@ -37,27 +50,27 @@ public class Deal implements Entity<Deal>, Owned {
     /**
      * Date of the deal. Usually this is the earliest date of operations that belong to the deal.
      */
-    private LocalDate date;
+    private volatile LocalDate date;
 
     /**
      * Financial result of the deal
      */
-    private Money amount;
+    private volatile Money amount;
 
     /**
      * Budget category
      */
-    private BudgetCategoryId category;
+    private volatile BudgetCategoryId category;
 
     /**
      * Description of the deal
      */
-    private String description;
+    private volatile String description;
 
     /**
      * Comment to the deal
      */
-    private String comment;
+    private volatile String comment;
 
     /**
      * Cash receipts
@@ -84,6 +97,11 @@ public class Deal implements Entity<Deal>, Owned {
      */
     private PersonId owner;
 
+    /**
+     * Listener of link changes, not persisted
+     */
+    private transient volatile DealListener listener;
+
     public Deal(DealId dealId, PersonId owner, LocalDate date, Money amount) {
         this(dealId, owner, date, amount, null, null, null, emptySet(), emptySet(), emptySet(), emptyList());
     }
@@ -112,9 +130,10 @@ public class Deal implements Entity<Deal>, Owned {
         this.comment = comment;
         this.category = category;
 
-        this.receipts = new HashSet<>(receipts);
-        this.operations = new HashSet<>(operations);
-        this.cardOperations = new HashSet<>(cardOperations);
+        // most deals have one operation and no receipts or purchases, so collections are kept compact
+        this.receipts = new CompactSet<>(receipts);
+        this.operations = new CompactSet<>(operations);
+        this.cardOperations = cardOperations.isEmpty() ? emptySet() : new CompactSet<>(cardOperations);
         this.purchases = new ArrayList<>(purchases);
     }
 
@@ -127,7 +146,7 @@ public class Deal implements Entity<Deal>, Owned {
     }
 
     public void setDate(LocalDate date) {
-        this.date = date;
+        DealLocks.withLock(dealId, () -> this.date = date);
     }
 
     public Money amount() {
@@ -135,7 +154,7 @@ public class Deal implements Entity<Deal>, Owned {
     }
 
     public void setAmount(Money amount) {
-        this.amount = amount;
+        DealLocks.withLock(dealId, () -> this.amount = amount);
     }
 
     public DealId dealId() {
@@ -158,6 +177,19 @@ public class Deal implements Entity<Deal>, Owned {
         return Collections.unmodifiableSet(operations);
     }
 
+    /**
+     * @return number of operations of the deal, read under the lock of the deal
+     */
+    public int operationCount() {
+        final Lock lock = DealLocks.lock(dealId);
+        lock.lock();
+        try {
+            return operations.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     public Set<OperationId> cardOperations() {
         return Collections.unmodifiableSet(cardOperations);
     }
@@ -166,66 +198,197 @@ public class Deal implements Entity<Deal>, Owned {
         return Collections.unmodifiableList(purchases);
     }
 
+    /**
+     * @return true if the deal has purchases, read under the lock of the deal
+     */
+    public boolean hasPurchases() {
+        final Lock lock = DealLocks.lock(dealId);
+        lock.lock();
+        try {
+            return !purchases.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     public Set<ReceiptId> receipts() {
         return Collections.unmodifiableSet(receipts);
     }
 
     public void moveReceipt(ReceiptId receipt, Deal target) {
-        this.receipts.remove(receipt);
-        target.receipts.add(receipt);
+        DealLocks.withLocks(dealId, target.dealId, () -> {
+            final boolean removed = this.receipts.remove(receipt);
+            if (removed && listener != null) listener.receiptRemoved(this, receipt);
+            try {
+                target.addReceipt(receipt);
+            } catch (RuntimeException e) {
+                if (removed) restore(e, () -> addReceipt(receipt));
+                throw e;
+            }
+        });
     }
 
     public void moveOperation(OperationId operation, Deal target) {
-        this.operations.remove(operation);
-        target.operations.add(operation);
+        DealLocks.withLocks(dealId, target.dealId, () -> {
+            final boolean removed = this.operations.remove(operation);
+            if (removed && listener != null) listener.operationRemoved(this, operation);
+            try {
+                target.addOperation(operation);
+            } catch (RuntimeException e) {
+                if (removed) restore(e, () -> addOperation(operation));
+                throw e;
+            }
+        });
     }
 
     public void movePurchase(PurchaseId purchase, Deal target) {
-        this.purchases.remove(purchase);
-        target.purchases.add(purchase);
+        DealLocks.withLocks(dealId, target.dealId, () -> {
+            final List<PurchaseId> previous = new ArrayList<>(this.purchases);
+            removePurchase(purchase);
+            try {
+                target.addPurchase(purchase);
+            } catch (RuntimeException e) {
+                if (previous.size() != this.purchases.size()) restore(e, () -> replacePurchases(previous));
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Run the action that restores the deal after a rejected mutation, its failure is added to the rejection
+     */
+    private static void restore(RuntimeException rejection, Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            rejection.addSuppressed(e);
+        }
     }
 
+    /**
+     * Replace operations of the deal.
+     * If a listener rejects an operation, the previous operations are restored and the exception is rethrown.
+     */
     public void setOperations(Set<OperationId> operations) {
-        this.operations.retainAll(operations);
-        this.operations.addAll(operations);
+        DealLocks.withLock(dealId, () -> {
+            final Set<OperationId> previous = new HashSet<>(this.operations);
+            try {
+                replaceOperations(operations);
+            } catch (RuntimeException e) {
+                restore(e, () -> replaceOperations(previous));
+                throw e;
+            }
+        });
+    }
+
+    private void replaceOperations(Set<OperationId> operations) {
+        for (Iterator<OperationId> it = this.operations.iterator(); it.hasNext(); ) {
+            final OperationId operation = it.next();
+            if (!operations.contains(operation)) {
+                it.remove();
+                if (listener != null) listener.operationRemoved(this, operation);
+            }
+        }
+        operations.forEach(this::addOperation);
     }
 
     public void addOperation(OperationId operation) {
-        this.operations.add(operation);
+        DealLocks.withLock(dealId, () -> {
+            if (this.operations.contains(operation)) return;
+            if (listener != null) listener.addingOperation(this, operation);
+            this.operations.add(operation);
+            if (listener != null) listener.operationAdded(this, operation);
+        });
     }
 
+    /**
+     * Replace receipts of the deal.
+     * If a listener rejects a receipt, the previous receipts are restored and the exception is rethrown.
+     */
     public void setReceipts(Set<ReceiptId> receipts) {
-        this.receipts.retainAll(receipts);
-        this.receipts.addAll(receipts);
+        DealLocks.withLock(dealId, () -> {
+            final Set<ReceiptId> previous = new HashSet<>(this.receipts);
+            try {
+                replaceReceipts(receipts);
+            } catch (RuntimeException e) {
+                restore(e, () -> replaceReceipts(previous));
+                throw e;
+            }
+        });
+    }
+
+    private void replaceReceipts(Set<ReceiptId> receipts) {
+        for (Iterator<ReceiptId> it = this.receipts.iterator(); it.hasNext(); ) {
+            final ReceiptId receipt = it.next();
+            if (!receipts.contains(receipt)) {
+                it.remove();
+                if (listener != null) listener.receiptRemoved(this, receipt);
+            }
+        }
+        receipts.forEach(this::addReceipt);
     }
 
     public void addReceipt(ReceiptId receipt) {
-        this.receipts.add(receipt);
+        DealLocks.withLock(dealId, () -> {
+            if (this.receipts.contains(receipt)) return;
+            if (listener != null) listener.addingReceipt(this, receipt);
+            this.receipts.add(receipt);
+            if (listener != null) listener.receiptAdded(this, receipt);
+        });
     }
 
+    /**
+     * Replace purchases of the deal.
+     * If a listener rejects a purchase, the previous purchases are restored and the exception is rethrown.
+     */
     public void setPurchases(List<PurchaseId> purchases) {
+        DealLocks.withLock(dealId, () -> {
+            final List<PurchaseId> previous = new ArrayList<>(this.purchases);
+            try {
+                replacePurchases(purchases);
+            } catch (RuntimeException e) {
+                restore(e, () -> replacePurchases(previous));
+                throw e;
+            }
+        });
+    }
+
+    private void replacePurchases(List<PurchaseId> purchases) {
+        final List<PurchaseId> removed = new ArrayList<>(this.purchases);
         this.purchases.clear();
-        this.purchases.addAll(purchases);
+        if (listener != null) removed.forEach(purchase -> listener.purchaseRemoved(this, purchase));
+        purchases.forEach(this::addPurchase);
     }
 
     public void addPurchase(PurchaseId purchase) {
-        this.purchases.add(purchase);
+        DealLocks.withLock(dealId, () -> {
+            if (listener != null) listener.addingPurchase(this, purchase);
+            this.purchases.add(purchase);
+            if (listener != null) listener.purchaseAdded(this, purchase);
+        });
     }
 
     public void removePurchase(PurchaseId purchase) {
-        this.purchases.remove(purchase);
+        DealLocks.withLock(dealId, () -> {
+            if (this.purchases.remove(purchase) && listener != null && !this.purchases.contains(purchase)) {
+                listener.purchaseRemoved(this, purchase);
+            }
+        });
     }
 
     public void assignCategory(BudgetCategoryId category) {
-        this.category = category;
+        DealLocks.withLock(dealId, () -> {
+            this.category = category;
+            if (listener != null) listener.categoryAssigned(this, category);
+        });
     }
 
     public void setComment(String comment) {
-        this.comment = comment;
+        DealLocks.withLock(dealId, () -> this.comment = comment);
     }
 
     public void setDescription(String description) {
-        this.description = description;
+        DealLocks.withLock(dealId, () -> this.description = description);
     }
 
     public void join(Deal other) {
@@ -234,14 +397,56 @@ public class Deal implements Entity<Deal>, Owned {
         // This condition makes it impossible creation of transactions between family accounts.
         // Validate.isTrue(owner.equals(other.owner));
 
-        this.receipts.addAll(other.receipts);
-        other.receipts.clear();
+        DealLocks.withLocks(dealId, other.dealId, () -> {
+            final Set<ReceiptId> receipts = new HashSet<>(other.receipts);
+            final Set<OperationId> operations = new HashSet<>(other.operations);
+            final List<PurchaseId> purchases = new ArrayList<>(other.purchases);
+            final Set<ReceiptId> ownReceipts = new HashSet<>(this.receipts);
+            final Set<OperationId> ownOperations = new HashSet<>(this.operations);
+            final int ownPurchases = this.purchases.size();
+
+            // links are removed from the other deal first, so that listeners never see them in two deals
+            other.setReceipts(emptySet());
+            other.setOperations(emptySet());
+            other.setPurchases(emptyList());
+            try {
+                receipts.forEach(this::addReceipt);
+                operations.forEach(this::addOperation);
+                purchases.forEach(this::addPurchase);
+            } catch (RuntimeException e) {
+                // a listener rejected a link, so both deals are restored
+                try {
+                    setReceipts(ownReceipts);
+                    setOperations(ownOperations);
+                    for (int i = this.purchases.size() - 1; i >= ownPurchases; i--) {
+                        removePurchase(this.purchases.get(i));
+                    }
+                    other.setReceipts(receipts);
+                    other.setOperations(operations);
+                    other.setPurchases(purchases);
+                } catch (RuntimeException restore) {
+                    e.addSuppressed(restore);
+                }
+                throw e;
+            }
+
+            if (listener != null) listener.joined(this, other);
+        });
+    }
 
-        this.operations.addAll(other.operations);
-        other.operations.clear();
+    /**
+     * Set listener of link changes. Listener is not persisted.
+     * The listener is called while the locks of the changed deals are held, so it must be fast
+     * and must not wait for other threads that change deals.
+     *
+     * @param listener listener or null
+     */
+    public void setListener(DealListener listener) {
+        DealLocks.withLock(dealId, () -> this.listener = listener);
+    }
 
-        this.purchases.addAll(other.purchases);
-        other.purchases.clear();
+    public DealListener listener() {
+        return listener;
     }
 
     @Override
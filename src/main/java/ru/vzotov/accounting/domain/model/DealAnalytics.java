@@ -0,0 +1,254 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.BudgetCategoryId;
+import ru.vzotov.domain.model.Money;
+import ru.vzotov.person.domain.model.PersonId;
+
+import java.time.YearMonth;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collector;
+
+/**
+ * Sums and counts of deal amounts by category, month, owner and purchase association.
+ * <p>
+ * Deals are aggregated in parallel: every thread accumulates <code>long</code> sums in minor currency units
+ * in its own maps, then partial results are merged. New deals can be merged into already computed
+ * aggregates with {@link #addAll(Collection)} without rescanning the old ones.
+ * Deals without category are aggregated under the <code>null</code> category.
+ * <p>
+ * Aggregates are not thread-safe: do not query them while deals are being added.
+ */
+public class DealAnalytics {
+
+    private final Currency currency;
+
+    private final Cell total = new Cell();
+
+    private final Cell withPurchases = new Cell();
+
+    private final Map<BudgetCategoryId, Cell> categories = new HashMap<>();
+
+    private final Map<YearMonth, Cell> months = new HashMap<>();
+
+    private final Map<PersonId, Cell> owners = new HashMap<>();
+
+    private final Map<YearMonth, Map<BudgetCategoryId, Cell>> monthCategories = new HashMap<>();
+
+    /**
+     * @param currency currency of deals
+     */
+    public DealAnalytics(Currency currency) {
+        Validate.notNull(currency);
+        this.currency = currency;
+    }
+
+    public static DealAnalytics of(Currency currency, Collection<Deal> deals) {
+        final DealAnalytics result = new DealAnalytics(currency);
+        result.addAll(deals);
+        return result;
+    }
+
+    /**
+     * Aggregate new deals in parallel and merge them into these aggregates.
+     *
+     * @param deals deals in the currency of aggregates
+     */
+    public void addAll(Collection<Deal> deals) {
+        Validate.notNull(deals);
+        merge(deals.parallelStream().collect(Collector.of(
+                () -> new DealAnalytics(currency),
+                DealAnalytics::add,
+                DealAnalytics::merge)));
+    }
+
+    public void add(Deal deal) {
+        Validate.isTrue(currency.equals(deal.amount().currency()), "Currency of deal %s does not match", deal.dealId());
+        final long amount = deal.amount().rawAmount();
+        final YearMonth month = YearMonth.from(deal.date());
+        total.add(amount);
+        if (deal.hasPurchases()) withPurchases.add(amount);
+        categories.computeIfAbsent(deal.category(), k -> new Cell()).add(amount);
+        months.computeIfAbsent(month, k -> new Cell()).add(amount);
+        owners.computeIfAbsent(deal.owner(), k -> new Cell()).add(amount);
+        monthCategories.computeIfAbsent(month, k -> new HashMap<>())
+                .computeIfAbsent(deal.category(), k -> new Cell()).add(amount);
+    }
+
+    /**
+     * Merge other aggregates into these ones.
+     *
+     * @param other aggregates in the same currency
+     * @return these aggregates
+     */
+    public DealAnalytics merge(DealAnalytics other) {
+        Validate.isTrue(currency.equals(other.currency));
+        total.add(other.total);
+        withPurchases.add(other.withPurchases);
+        merge(categories, other.categories);
+        merge(months, other.months);
+        merge(owners, other.owners);
+        other.monthCategories.forEach((month, cells) -> merge(monthCategories.computeIfAbsent(month, k -> new HashMap<>()), cells));
+        return this;
+    }
+
+    public Totals total() {
+        return total.totals(currency);
+    }
+
+    /**
+     * @return totals of deals with at least one purchase
+     */
+    public Totals withPurchases() {
+        return withPurchases.totals(currency);
+    }
+
+    /**
+     * @return totals of deals without purchases
+     */
+    public Totals withoutPurchases() {
+        final Cell cell = new Cell();
+        cell.sum = total.sum - withPurchases.sum;
+        cell.count = total.count - withPurchases.count;
+        return cell.totals(currency);
+    }
+
+    public Map<BudgetCategoryId, Totals> byCategory() {
+        return totals(categories);
+    }
+
+    public Map<YearMonth, Totals> byMonth() {
+        return totals(months);
+    }
+
+    public Map<PersonId, Totals> byOwner() {
+        return totals(owners);
+    }
+
+    /**
+     * @param month month
+     * @return totals of the month by category
+     */
+    public Map<BudgetCategoryId, Totals> byCategory(YearMonth month) {
+        return totals(monthCategories.getOrDefault(month, Collections.emptyMap()));
+    }
+
+    /**
+     * @param n number of categories
+     * @return categories with the largest sums, in descending order of sums
+     */
+    public List<Map.Entry<BudgetCategoryId, Totals>> topCategories(int n) {
+        return top(categories, n);
+    }
+
+    /**
+     * @param month month
+     * @param n     number of categories
+     * @return categories with the largest sums within the month, in descending order of sums
+     */
+    public List<Map.Entry<BudgetCategoryId, Totals>> topCategories(YearMonth month, int n) {
+        return top(monthCategories.getOrDefault(month, Collections.emptyMap()), n);
+    }
+
+    /**
+     * @param n number of owners
+     * @return owners with the largest sums, in descending order of sums
+     */
+    public List<Map.Entry<PersonId, Totals>> topOwners(int n) {
+        return top(owners, n);
+    }
+
+    private <K> Map<K, Totals> totals(Map<K, Cell> cells) {
+        final Map<K, Totals> result = new HashMap<>(cells.size() * 2);
+        cells.forEach((k, cell) -> result.put(k, cell.totals(currency)));
+        return Collections.unmodifiableMap(result);
+    }
+
+    private <K> List<Map.Entry<K, Totals>> top(Map<K, Cell> cells, int n) {
+        Validate.isTrue(n >= 0);
+        final List<Map.Entry<K, Cell>> entries = new ArrayList<>(cells.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<K, Cell> e) -> e.getValue().sum).reversed());
+        return entries.stream()
+                .limit(n)
+                .<Map.Entry<K, Totals>>map(e -> new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue().totals(currency)))
+                .toList();
+    }
+
+    private static <K> void merge(Map<K, Cell> target, Map<K, Cell> source) {
+        source.forEach((k, cell) -> target.computeIfAbsent(k, key -> new Cell()).add(cell));
+    }
+
+    /**
+     * Sum and count of deal amounts
+     */
+    public static final class Totals {
+
+        private final Money sum;
+
+        private final long count;
+
+        Totals(Money sum, long count) {
+            this.sum = sum;
+            this.count = count;
+        }
+
+        public Money sum() {
+            return sum;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Totals that = (Totals) o;
+            return count == that.count && Objects.equals(sum, that.sum);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sum, count);
+        }
+
+        @Override
+        public String toString() {
+            return "Totals{" +
+                    "sum=" + sum +
+                    ", count=" + count +
+                    '}';
+        }
+    }
+
+    private static final class Cell {
+
+        long sum;
+
+        long count;
+
+        void add(long amount) {
+            sum += amount;
+            count++;
+        }
+
+        void add(Cell other) {
+            sum += other.sum;
+            count += other.count;
+        }
+
+        Totals totals(Currency currency) {
+            return new Totals(Money.ofRaw(sum, currency), count);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.cashreceipt.domain.model.ReceiptId;
+import ru.vzotov.purchase.domain.model.PurchaseId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reverse index from operations, receipts and purchases to the deals that own them.
+ * <p>
+ * Registered deals report changes of their links to the index, so owner lookups stay consistent
+ * with {@link Deal#addOperation}, {@link Deal#moveOperation}, {@link Deal#join} and other mutations.
+ * An attempt to link an operation, a receipt or a purchase that already belongs to another registered deal
+ * is rejected with {@link IllegalStateException} before the deal is changed.
+ * The index reserves a link when it accepts it, so it should be the last listener that may reject additions,
+ * see {@link DealListener#compose(DealListener, DealListener)}.
+ * <p>
+ * The index is thread-safe.
+ */
+public class DealIndex implements DealListener {
+
+    private final Map<OperationId, DealId> operations = new ConcurrentHashMap<>();
+
+    private final Map<ReceiptId, DealId> receipts = new ConcurrentHashMap<>();
+
+    private final Map<PurchaseId, DealId> purchases = new ConcurrentHashMap<>();
+
+    /**
+     * Index links of the deal and start listening to its changes.
+     * The index is added after the listener the deal already has, if any.
+     *
+     * @param deal deal
+     * @throws IllegalStateException if any link of the deal belongs to another deal.
+     *                               The index and the deal are left unchanged in this case.
+     */
+    public void register(Deal deal) {
+        Validate.notNull(deal);
+        DealLocks.withLock(deal.dealId(), () -> {
+            final List<Runnable> linked = new ArrayList<>();
+            try {
+                for (OperationId operation : deal.operations()) {
+                    if (link(operations, operation, deal)) linked.add(() -> operations.remove(operation, deal.dealId()));
+                }
+                for (ReceiptId receipt : deal.receipts()) {
+                    if (link(receipts, receipt, deal)) linked.add(() -> receipts.remove(receipt, deal.dealId()));
+                }
+                for (PurchaseId purchase : deal.purchases()) {
+                    if (link(purchases, purchase, deal)) linked.add(() -> purchases.remove(purchase, deal.dealId()));
+                }
+            } catch (RuntimeException e) {
+                linked.forEach(Runnable::run);
+                throw e;
+            }
+            final DealListener others = CompositeDealListener.remove(deal.listener(), this);
+            deal.setListener(others == null ? this : DealListener.compose(others, this));
+        });
+    }
+
+    /**
+     * Remove links of the deal from the index and stop listening to its changes.
+     * Other listeners of the deal are kept.
+     *
+     * @param deal deal
+     */
+    public void unregister(Deal deal) {
+        Validate.notNull(deal);
+        DealLocks.withLock(deal.dealId(), () -> {
+            deal.setListener(CompositeDealListener.remove(deal.listener(), this));
+            deal.operations().forEach(operation -> operationRemoved(deal, operation));
+            deal.receipts().forEach(receipt -> receiptRemoved(deal, receipt));
+            deal.purchases().forEach(purchase -> purchaseRemoved(deal, purchase));
+        });
+    }
+
+    /**
+     * @return deal that owns the operation, or null
+     */
+    public DealId ownerOf(OperationId operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * @return deal that owns the receipt, or null
+     */
+    public DealId ownerOf(ReceiptId receipt) {
+        return receipts.get(receipt);
+    }
+
+    /**
+     * @return deal that owns the purchase, or null
+     */
+    public DealId ownerOf(PurchaseId purchase) {
+        return purchases.get(purchase);
+    }
+
+    @Override
+    public void addingOperation(Deal deal, OperationId operation) {
+        link(operations, operation, deal);
+    }
+
+    @Override
+    public void operationRemoved(Deal deal, OperationId operation) {
+        operations.remove(operation, deal.dealId());
+    }
+
+    @Override
+    public void addingReceipt(Deal deal, ReceiptId receipt) {
+        link(receipts, receipt, deal);
+    }
+
+    @Override
+    public void receiptRemoved(Deal deal, ReceiptId receipt) {
+        receipts.remove(receipt, deal.dealId());
+    }
+
+    @Override
+    public void addingPurchase(Deal deal, PurchaseId purchase) {
+        link(purchases, purchase, deal);
+    }
+
+    @Override
+    public void purchaseRemoved(Deal deal, PurchaseId purchase) {
+        purchases.remove(purchase, deal.dealId());
+    }
+
+    /**
+     * @return true if the key was not linked before
+     */
+    private static <K> boolean link(Map<K, DealId> index, K key, Deal deal) {
+        final DealId owner = index.putIfAbsent(key, deal.dealId());
+        Validate.validState(owner == null || owner.equals(deal.dealId()),
+                "%s already belongs to deal %s", key, owner);
+        return owner == null;
+    }
+}
@@ -0,0 +1,85 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.BudgetCategoryId;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.cashreceipt.domain.model.ReceiptId;
+import ru.vzotov.purchase.domain.model.PurchaseId;
+
+/**
+ * Listener of changes of deal links to operations, receipts and purchases, joins and categories.
+ * <p>
+ * All changes are reported after the deal is changed. An addition is also checked before the deal is changed
+ * (see {@link #addingOperation}, {@link #addingReceipt} and {@link #addingPurchase}), so a listener may reject it
+ * by throwing an exception. A rejected addition is not reported as added.
+ * <p>
+ * Callbacks are called while the locks of the changed deals are held: a move or a join holds the locks of both deals.
+ * Listeners must be fast and must not wait for other threads that change deals.
+ *
+ * @see Deal#setListener(DealListener)
+ */
+public interface DealListener {
+
+    /**
+     * Checked before the operation is added to the deal.
+     *
+     * @throws RuntimeException to reject the addition
+     */
+    default void addingOperation(Deal deal, OperationId operation) {
+    }
+
+    default void operationAdded(Deal deal, OperationId operation) {
+    }
+
+    default void operationRemoved(Deal deal, OperationId operation) {
+    }
+
+    /**
+     * Checked before the receipt is added to the deal.
+     *
+     * @throws RuntimeException to reject the addition
+     */
+    default void addingReceipt(Deal deal, ReceiptId receipt) {
+    }
+
+    default void receiptAdded(Deal deal, ReceiptId receipt) {
+    }
+
+    default void receiptRemoved(Deal deal, ReceiptId receipt) {
+    }
+
+    /**
+     * Checked before the purchase is added to the deal.
+     *
+     * @throws RuntimeException to reject the addition
+     */
+    default void addingPurchase(Deal deal, PurchaseId purchase) {
+    }
+
+    default void purchaseAdded(Deal deal, PurchaseId purchase) {
+    }
+
+    default void purchaseRemoved(Deal deal, PurchaseId purchase) {
+    }
+
+    /**
+     * Reported after all links of the other deal were moved to the deal.
+     */
+    default void joined(Deal deal, Deal other) {
+    }
+
+    default void categoryAssigned(Deal deal, BudgetCategoryId category) {
+    }
+
+    /**
+     * Listeners that only record changes may be composed in any order. If both listeners may reject additions,
+     * the first one is not told when the second one rejects an addition it has accepted.
+     *
+     * @return listener that reports changes to both listeners, first to the first one
+     */
+    static DealListener compose(DealListener first, DealListener second) {
+        Validate.notNull(first);
+        Validate.notNull(second);
+        return new CompositeDealListener(first, second);
+    }
+}
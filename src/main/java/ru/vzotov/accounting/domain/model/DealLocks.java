@@ -0,0 +1,136 @@
+package ru.vzotov.accounting.domain.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks for deal mutations.
+ * <p>
+ * A deal is guarded by the lock of the stripe its {@link DealId} hashes to. Mutations of two deals take
+ * both stripes in the order of stripe index, so concurrent moves in opposite directions never deadlock,
+ * and mutations of deals in different stripes proceed in parallel. Locks are reentrant, so a mutation
+ * may call other mutations of the deals it holds. Readers of mutable state may take the same lock,
+ * see {@link #lock(DealId)}. Work that must not run under the locks,
+ * such as notification of journal subscribers, is deferred until the thread releases them,
+ * see {@link #afterUnlock(Runnable)}.
+ */
+final class DealLocks {
+
+    private static final int STRIPES = 256;
+
+    private static final ReentrantLock[] LOCKS = new ReentrantLock[STRIPES];
+
+    private static final ThreadLocal<Deferred> DEFERRED = ThreadLocal.withInitial(Deferred::new);
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            LOCKS[i] = new ReentrantLock();
+        }
+    }
+
+    private DealLocks() {
+    }
+
+    static void withLock(DealId deal, Runnable action) {
+        final ReentrantLock lock = LOCKS[stripe(deal)];
+        held(() -> {
+            lock.lock();
+            try {
+                action.run();
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * @return lock of the stripe of the deal, for readers of its state
+     */
+    static Lock lock(DealId deal) {
+        return LOCKS[stripe(deal)];
+    }
+
+    static void withLocks(DealId first, DealId second, Runnable action) {
+        final int a = stripe(first);
+        final int b = stripe(second);
+        if (a == b) {
+            withLock(first, action);
+            return;
+        }
+        final ReentrantLock lower = LOCKS[Math.min(a, b)];
+        final ReentrantLock upper = LOCKS[Math.max(a, b)];
+        held(() -> {
+            lower.lock();
+            try {
+                upper.lock();
+                try {
+                    action.run();
+                } finally {
+                    upper.unlock();
+                }
+            } finally {
+                lower.unlock();
+            }
+        });
+    }
+
+    /**
+     * Run the action once the current thread holds no locks of deal mutations, or at once if it holds none.
+     * An action that is already waiting is not added again.
+     */
+    static void afterUnlock(Runnable action) {
+        final Deferred deferred = DEFERRED.get();
+        if (deferred.depth == 0) {
+            action.run();
+        } else if (!deferred.actions.contains(action)) {
+            deferred.actions.add(action);
+        }
+    }
+
+    private static void held(Runnable locked) {
+        final Deferred deferred = DEFERRED.get();
+        deferred.depth++;
+        try {
+            locked.run();
+        } catch (RuntimeException | Error e) {
+            if (--deferred.depth == 0) deferred.run(e);
+            throw e;
+        }
+        if (--deferred.depth == 0) deferred.run(null);
+    }
+
+    static int stripe(DealId deal) {
+        final int h = deal.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * Actions waiting for the current thread to release the locks of deal mutations
+     */
+    private static final class Deferred {
+
+        private final List<Runnable> actions = new ArrayList<>();
+
+        private int depth;
+
+        /**
+         * @param failure exception thrown by the mutation, failures of the actions are added to it, or null
+         */
+        void run(Throwable failure) {
+            Throwable thrown = null;
+            while (!actions.isEmpty()) {
+                try {
+                    actions.remove(0).run();
+                } catch (RuntimeException | Error e) {
+                    if (failure != null) failure.addSuppressed(e);
+                    else if (thrown == null) thrown = e;
+                    else thrown.addSuppressed(e);
+                }
+            }
+            if (thrown instanceof RuntimeException e) throw e;
+            if (thrown instanceof Error e) throw e;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.cashreceipt.domain.model.ReceiptId;
+import ru.vzotov.domain.model.Money;
+import ru.vzotov.person.domain.model.PersonId;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bulk matching of operations and cash receipts into deals.
+ * <p>
+ * An operation and a receipt match when they have the same currency, their amounts differ by no more
+ * than the amount tolerance and their dates differ by no more than the date tolerance.
+ * Records are sorted by amount bucket (of the tolerance width) and date, so candidates of a record are searched
+ * only in its own and the next bucket within the date window. Matching pairs are clustered with union-find:
+ * all records connected by matches make one deal.
+ * Matching takes <code>O(n log n)</code> time for <i>n</i> records unless many records share amount and dates.
+ */
+public class DealMatcher {
+
+    /**
+     * Date tolerance, days
+     */
+    private final int days;
+
+    /**
+     * Amount tolerance, minor currency units
+     */
+    private final long tolerance;
+
+    /**
+     * @param days      maximum difference of dates in days
+     * @param tolerance maximum difference of amounts
+     */
+    public DealMatcher(int days, Money tolerance) {
+        Validate.isTrue(days >= 0);
+        Validate.notNull(tolerance);
+        Validate.isTrue(tolerance.rawAmount() >= 0);
+        this.days = days;
+        this.tolerance = tolerance.rawAmount();
+    }
+
+    /**
+     * Match operations and receipts.
+     *
+     * @param records operations and receipts in any order
+     * @return matches sorted by date. Records without matches are not included.
+     */
+    public List<Match> match(List<Record> records) {
+        Validate.notNull(records);
+        final int n = records.size();
+        final long[] bucket = new long[n];
+        final long[] day = new long[n];
+        for (int i = 0; i < n; i++) {
+            final Record record = records.get(i);
+            bucket[i] = Math.floorDiv(record.amount.rawAmount(), tolerance + 1);
+            day[i] = record.date.toEpochDay();
+        }
+
+        final Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, Comparator.<Integer>comparingLong(i -> bucket[i]).thenComparingLong(i -> day[i]));
+        final long[] sortedBucket = new long[n];
+        final long[] sortedDay = new long[n];
+        for (int k = 0; k < n; k++) {
+            sortedBucket[k] = bucket[order[k]];
+            sortedDay[k] = day[order[k]];
+        }
+
+        final UnionFind clusters = new UnionFind(n);
+        for (int k = 0; k < n; k++) {
+            final long b = sortedBucket[k];
+            final long d = sortedDay[k];
+            // the same bucket, later dates
+            for (int m = k + 1; m < n && sortedBucket[m] == b && sortedDay[m] - d <= days; m++) {
+                if (matches(records.get(order[k]), records.get(order[m]))) clusters.union(order[k], order[m]);
+            }
+            // the next bucket, dates around
+            for (int m = lowerBound(sortedBucket, sortedDay, b + 1, d - days);
+                 m < n && sortedBucket[m] == b + 1 && sortedDay[m] - d <= days; m++) {
+                if (matches(records.get(order[k]), records.get(order[m]))) clusters.union(order[k], order[m]);
+            }
+        }
+
+        final Map<Integer, List<Record>> groups = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            if (clusters.size(i) > 1) groups.computeIfAbsent(clusters.find(i), r -> new ArrayList<>()).add(records.get(i));
+        }
+        final List<Match> result = new ArrayList<>(groups.size());
+        groups.values().forEach(group -> result.add(new Match(group)));
+        result.sort(Comparator.comparing(Match::date));
+        return result;
+    }
+
+    /**
+     * Match operations and receipts and create deals for unambiguous matches.
+     *
+     * @param owner   owner of the deals
+     * @param records operations and receipts in any order
+     * @return created deals
+     * @see Match#isAmbiguous()
+     */
+    public List<Deal> createDeals(PersonId owner, List<Record> records) {
+        Validate.notNull(owner);
+        return match(records).stream()
+                .filter(match -> !match.isAmbiguous())
+                .map(match -> match.toDeal(owner))
+                .toList();
+    }
+
+    private boolean matches(Record a, Record b) {
+        return a.isOperation() != b.isOperation() &&
+                a.amount.currency().equals(b.amount.currency()) &&
+                Math.abs(a.amount.rawAmount() - b.amount.rawAmount()) <= tolerance;
+    }
+
+    /**
+     * @return index of the first record ordered not before the bucket and the day
+     */
+    private static int lowerBound(long[] buckets, long[] days, long bucket, long day) {
+        int lo = 0, hi = buckets.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (buckets[mid] < bucket || (buckets[mid] == bucket && days[mid] < day)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Operation or receipt to match
+     */
+    public static final class Record {
+
+        private final OperationId operation;
+
+        private final ReceiptId receipt;
+
+        private final LocalDate date;
+
+        private final Money amount;
+
+        private Record(OperationId operation, ReceiptId receipt, LocalDate date, Money amount) {
+            Validate.notNull(date);
+            Validate.notNull(amount);
+            this.operation = operation;
+            this.receipt = receipt;
+            this.date = date;
+            this.amount = amount;
+        }
+
+        public static Record of(Operation operation) {
+            return operation(operation.operationId(), operation.date(), operation.amount());
+        }
+
+        public static Record operation(OperationId operation, LocalDate date, Money amount) {
+            Validate.notNull(operation);
+            return new Record(operation, null, date, amount);
+        }
+
+        public static Record receipt(ReceiptId receipt, LocalDate date, Money amount) {
+            Validate.notNull(receipt);
+            return new Record(null, receipt, date, amount);
+        }
+
+        public boolean isOperation() {
+            return operation != null;
+        }
+
+        public OperationId operation() {
+            return operation;
+        }
+
+        public ReceiptId receipt() {
+            return receipt;
+        }
+
+        public LocalDate date() {
+            return date;
+        }
+
+        public Money amount() {
+            return amount;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Record that = (Record) o;
+            return Objects.equals(operation, that.operation) &&
+                    Objects.equals(receipt, that.receipt) &&
+                    Objects.equals(date, that.date) &&
+                    Objects.equals(amount, that.amount);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(operation, receipt, date, amount);
+        }
+
+        @Override
+        public String toString() {
+            return "Record{" +
+                    (operation != null ? "operation=" + operation : "receipt=" + receipt) +
+                    ", date=" + date +
+                    ", amount=" + amount +
+                    '}';
+        }
+    }
+
+    /**
+     * Cluster of matching operations and receipts
+     */
+    public static final class Match {
+
+        private final List<OperationId> operations = new ArrayList<>();
+
+        private final List<ReceiptId> receipts = new ArrayList<>();
+
+        private final LocalDate date;
+
+        private final Money amount;
+
+        Match(List<Record> records) {
+            LocalDate date = null;
+            Money amount = null;
+            for (Record record : records) {
+                if (record.isOperation()) {
+                    operations.add(record.operation);
+                    if (amount == null) amount = record.amount;
+                } else {
+                    receipts.add(record.receipt);
+                }
+                if (date == null || record.date.isBefore(date)) date = record.date;
+            }
+            this.date = date;
+            this.amount = amount;
+        }
+
+        public List<OperationId> operations() {
+            return Collections.unmodifiableList(operations);
+        }
+
+        public List<ReceiptId> receipts() {
+            return Collections.unmodifiableList(receipts);
+        }
+
+        /**
+         * @return the earliest date of matched records
+         */
+        public LocalDate date() {
+            return date;
+        }
+
+        /**
+         * @return amount of the first matched operation
+         */
+        public Money amount() {
+            return amount;
+        }
+
+        /**
+         * @return true if the match is not a single operation with a single receipt
+         */
+        public boolean isAmbiguous() {
+            return operations.size() != 1 || receipts.size() != 1;
+        }
+
+        public Deal toDeal(PersonId owner) {
+            return new Deal(DealId.nextId(), owner, date, amount, null, null, null,
+                    new LinkedHashSet<>(receipts), new LinkedHashSet<>(operations), Collections.emptySet(), Collections.emptyList());
+        }
+
+        @Override
+        public String toString() {
+            return "Match{" +
+                    "operations=" + operations +
+                    ", receipts=" + receipts +
+                    ", date=" + date +
+                    ", amount=" + amount +
+                    '}';
+        }
+    }
+
+    /**
+     * Disjoint sets with union by size and path halving
+     */
+    private static final class UnionFind {
+
+        private final int[] parent;
+
+        private final int[] size;
+
+        UnionFind(int n) {
+            parent = new int[n];
+            size = new int[n];
+            for (int i = 0; i < n; i++) {
+                parent[i] = i;
+                size[i] = 1;
+            }
+        }
+
+        int find(int i) {
+            while (parent[i] != i) {
+                parent[i] = parent[parent[i]];
+                i = parent[i];
+            }
+            return i;
+        }
+
+        int size(int i) {
+            return size[find(i)];
+        }
+
+        void union(int a, int b) {
+            a = find(a);
+            b = find(b);
+            if (a == b) return;
+            if (size[a] < size[b]) {
+                final int t = a;
+                a = b;
+                b = t;
+            }
+            parent[b] = a;
+            size[a] += size[b];
+        }
+    }
+}
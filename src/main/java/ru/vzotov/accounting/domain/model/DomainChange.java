@@ -0,0 +1,115 @@
+package ru.vzotov.accounting.domain.model;
+
+import java.util.Objects;
+
+/**
+ * Change of an aggregate recorded in the {@link ChangeJournal}.
+ */
+public final class DomainChange {
+
+    public enum Type {
+        /**
+         * Operation added to a deal. Subject is {@link ru.vzotov.banking.domain.model.OperationId}
+         */
+        DEAL_OPERATION_ADDED,
+        /**
+         * Operation removed from a deal. Subject is {@link ru.vzotov.banking.domain.model.OperationId}
+         */
+        DEAL_OPERATION_REMOVED,
+        /**
+         * Receipt added to a deal. Subject is {@link ru.vzotov.cashreceipt.domain.model.ReceiptId}
+         */
+        DEAL_RECEIPT_ADDED,
+        /**
+         * Receipt removed from a deal. Subject is {@link ru.vzotov.cashreceipt.domain.model.ReceiptId}
+         */
+        DEAL_RECEIPT_REMOVED,
+        /**
+         * Purchase added to a deal. Subject is {@link ru.vzotov.purchase.domain.model.PurchaseId}
+         */
+        DEAL_PURCHASE_ADDED,
+        /**
+         * Purchase removed from a deal. Subject is {@link ru.vzotov.purchase.domain.model.PurchaseId}
+         */
+        DEAL_PURCHASE_REMOVED,
+        /**
+         * Other deal joined to a deal. Subject is {@link DealId} of the other deal
+         */
+        DEAL_JOINED,
+        /**
+         * Category assigned to a deal. Subject is {@link ru.vzotov.banking.domain.model.BudgetCategoryId} or null
+         */
+        DEAL_CATEGORY_ASSIGNED,
+        /**
+         * Rule added to a budget. Subject is {@link BudgetRuleId}
+         */
+        BUDGET_RULE_ADDED,
+        /**
+         * Rule deleted from a budget. Subject is {@link BudgetRuleId}
+         */
+        BUDGET_RULE_DELETED
+    }
+
+    private final long sequence;
+
+    private final Type type;
+
+    /**
+     * Identifier of the changed aggregate: {@link DealId} or {@link BudgetId}
+     */
+    private final Object aggregate;
+
+    private final Object subject;
+
+    DomainChange(long sequence, Type type, Object aggregate, Object subject) {
+        this.sequence = sequence;
+        this.type = type;
+        this.aggregate = aggregate;
+        this.subject = subject;
+    }
+
+    /**
+     * @return position of the change in the journal, starting from 1
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    public Object aggregate() {
+        return aggregate;
+    }
+
+    public Object subject() {
+        return subject;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DomainChange that = (DomainChange) o;
+        return sequence == that.sequence &&
+                type == that.type &&
+                Objects.equals(aggregate, that.aggregate) &&
+                Objects.equals(subject, that.subject);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sequence, type, aggregate, subject);
+    }
+
+    @Override
+    public String toString() {
+        return "DomainChange{" +
+                "sequence=" + sequence +
+                ", type=" + type +
+                ", aggregate=" + aggregate +
+                ", subject=" + subject +
+                '}';
+    }
+}
@@ -0,0 +1,24 @@
+package ru.vzotov.accounting.domain.model;
+
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.BankRecord;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Source of operations for movements calculated in summary mode.
+ *
+ * @see AccountMovement#summary(OperationLoader)
+ */
+@FunctionalInterface
+public interface OperationLoader {
+
+    /**
+     * @param account account
+     * @param from    first day of time range (inclusive)
+     * @param to      last day of time range (inclusive)
+     * @return operations of the account within time range
+     */
+    List<BankRecord<?>> load(AccountNumber account, LocalDate from, LocalDate to);
+}
@@ -0,0 +1,88 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.ddd.shared.ValueObject;
+
+import java.util.Objects;
+import java.util.random.RandomGenerator;
+
+/**
+ * Uncertainty of a budget rule used in {@link BudgetSimulation}.
+ * <p>
+ * The value of each rule occurrence is multiplied by a normally distributed factor with mean 1
+ * and the specified relative deviation. The date of each occurrence is shifted
+ * by a uniformly distributed number of days in range <code>[-dateJitter, dateJitter]</code>.
+ */
+public class Perturbation implements ValueObject<Perturbation> {
+
+    public static final Perturbation NONE = new Perturbation(0d, 0);
+
+    /**
+     * Relative standard deviation of the value
+     */
+    private final double valueDeviation;
+
+    /**
+     * Maximum shift of the date, in days
+     */
+    private final int dateJitter;
+
+    public Perturbation(double valueDeviation, int dateJitter) {
+        Validate.isTrue(valueDeviation >= 0d, "Deviation must not be negative");
+        Validate.isTrue(dateJitter >= 0, "Date jitter must not be negative");
+        this.valueDeviation = valueDeviation;
+        this.dateJitter = dateJitter;
+    }
+
+    public static Perturbation ofValue(double valueDeviation) {
+        return new Perturbation(valueDeviation, 0);
+    }
+
+    public static Perturbation ofDate(int dateJitter) {
+        return new Perturbation(0d, dateJitter);
+    }
+
+    public double valueDeviation() {
+        return valueDeviation;
+    }
+
+    public int dateJitter() {
+        return dateJitter;
+    }
+
+    long value(long kopecks, RandomGenerator random) {
+        if (valueDeviation == 0d) return kopecks;
+        final double factor = 1d + valueDeviation * random.nextGaussian();
+        return Math.max(0L, Math.round(kopecks * factor));
+    }
+
+    int shift(RandomGenerator random) {
+        return dateJitter == 0 ? 0 : random.nextInt(-dateJitter, dateJitter + 1);
+    }
+
+    @Override
+    public boolean sameValueAs(Perturbation that) {
+        return that != null && Double.compare(valueDeviation, that.valueDeviation) == 0 && dateJitter == that.dateJitter;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Perturbation that = (Perturbation) o;
+        return sameValueAs(that);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(valueDeviation, dateJitter);
+    }
+
+    @Override
+    public String toString() {
+        return "Perturbation{" +
+                "valueDeviation=" + valueDeviation +
+                ", dateJitter=" + dateJitter +
+                '}';
+    }
+}
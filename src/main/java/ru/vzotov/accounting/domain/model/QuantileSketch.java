@@ -0,0 +1,140 @@
+package ru.vzotov.accounting.domain.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming summary of a distribution of <code>long</code> values.
+ * <p>
+ * The sketch keeps a bounded number of samples organized in compactors (levels): every level holds up to
+ * <code>capacity</code> samples, each sample of level <i>h</i> represents 2<sup>h</sup> original values.
+ * When a level is full, it is sorted and every other sample is promoted to the next level.
+ * Memory usage is <code>O(capacity * log(n / capacity))</code>, rank error is about <code>1 / capacity</code>.
+ * <p>
+ * Sketches are not thread-safe, but can be merged, so every thread can fill its own sketch.
+ */
+final class QuantileSketch {
+
+    static final int DEFAULT_CAPACITY = 256;
+
+    private final int capacity;
+
+    private final List<long[]> levels = new ArrayList<>();
+
+    private int[] sizes = new int[0];
+
+    /**
+     * Which half of the sorted level is promoted on the next compaction.
+     * Alternating halves keeps the sketch unbiased and deterministic.
+     */
+    private boolean[] odd = new boolean[0];
+
+    private long count;
+
+    QuantileSketch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    QuantileSketch(int capacity) {
+        if (capacity < 2 || capacity % 2 != 0) {
+            throw new IllegalArgumentException("Capacity must be even and greater than zero");
+        }
+        this.capacity = capacity;
+    }
+
+    long count() {
+        return count;
+    }
+
+    void add(long value) {
+        append(0, value);
+        count++;
+    }
+
+    /**
+     * Merges samples of other sketch into this one.
+     *
+     * @param other sketch to merge. It is not modified.
+     * @return this sketch
+     */
+    QuantileSketch merge(QuantileSketch other) {
+        for (int h = 0; h < other.levels.size(); h++) {
+            final long[] items = other.levels.get(h);
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, items[i]);
+            }
+        }
+        count += other.count;
+        return this;
+    }
+
+    /**
+     * Estimates value of the quantile.
+     *
+     * @param quantile quantile in range [0, 1]
+     * @return estimated value, or 0 if the sketch is empty
+     */
+    long quantile(double quantile) {
+        if (quantile < 0d || quantile > 1d) {
+            throw new IllegalArgumentException("Quantile must be in range [0, 1]");
+        }
+        int total = 0;
+        for (int size : sizes) total += size;
+        if (total == 0) return 0L;
+
+        // pack value and level into single array to sort samples together with their weights
+        final long[] values = new long[total];
+        final int[] weights = new int[total];
+        final Integer[] order = new Integer[total];
+        int n = 0;
+        long weightSum = 0;
+        for (int h = 0; h < levels.size(); h++) {
+            final long[] items = levels.get(h);
+            for (int i = 0; i < sizes[h]; i++) {
+                values[n] = items[i];
+                weights[n] = h;
+                order[n] = n;
+                weightSum += 1L << h;
+                n++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(values[a], values[b]));
+
+        final double rank = quantile * weightSum;
+        long cumulative = 0;
+        for (Integer i : order) {
+            cumulative += 1L << weights[i];
+            if (cumulative >= rank) return values[i];
+        }
+        return values[order[total - 1]];
+    }
+
+    private void append(int level, long value) {
+        ensureLevel(level);
+        long[] items = levels.get(level);
+        items[sizes[level]++] = value;
+        if (sizes[level] == capacity) {
+            compact(level);
+        }
+    }
+
+    private void compact(int level) {
+        final long[] items = levels.get(level);
+        Arrays.sort(items, 0, capacity);
+        final int offset = odd[level] ? 1 : 0;
+        odd[level] = !odd[level];
+        sizes[level] = 0;
+        for (int i = offset; i < capacity; i += 2) {
+            append(level + 1, items[i]);
+        }
+    }
+
+    private void ensureLevel(int level) {
+        while (levels.size() <= level) {
+            levels.add(new long[capacity]);
+            sizes = Arrays.copyOf(sizes, levels.size());
+            odd = Arrays.copyOf(odd, levels.size());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.ddd.shared.ValueObject;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Distribution of the account remain at the end of a period, calculated by {@link BudgetSimulation}.
+ */
+public class RemainBand implements ValueObject<RemainBand> {
+
+    private final AccountNumber account;
+
+    /**
+     * Last day of the period
+     */
+    private final LocalDate date;
+
+    /**
+     * Estimated remains by quantile
+     */
+    private final Map<Double, Money> quantiles;
+
+    public RemainBand(AccountNumber account, LocalDate date, Map<Double, Money> quantiles) {
+        Validate.notNull(account);
+        Validate.notNull(date);
+        Validate.notEmpty(quantiles);
+        this.account = account;
+        this.date = date;
+        this.quantiles = Collections.unmodifiableMap(new TreeMap<>(quantiles));
+    }
+
+    public AccountNumber account() {
+        return account;
+    }
+
+    public LocalDate date() {
+        return date;
+    }
+
+    public Map<Double, Money> quantiles() {
+        return quantiles;
+    }
+
+    /**
+     * @param quantile one of the quantiles requested from simulation, e.g. <code>0.1</code>
+     * @return remain that is not exceeded with the given probability
+     */
+    public Remain remain(double quantile) {
+        final Money value = quantiles.get(quantile);
+        Validate.notNull(value, "Quantile %s was not calculated", quantile);
+        return new Remain(account, date, value);
+    }
+
+    @Override
+    public boolean sameValueAs(RemainBand that) {
+        return that != null &&
+                Objects.equals(account, that.account) &&
+                Objects.equals(date, that.date) &&
+                Objects.equals(quantiles, that.quantiles);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RemainBand that = (RemainBand) o;
+        return sameValueAs(that);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(account, date, quantiles);
+    }
+
+    @Override
+    public String toString() {
+        return "RemainBand{" +
+                "account=" + account +
+                ", date=" + date +
+                ", quantiles=" + quantiles +
+                '}';
+    }
+}
@@ -0,0 +1,200 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.BankRecord;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Synthetic remains derived from operations at regular intervals.
+ * <p>
+ * Checkpoints bound the number of operations replayed to calculate a balance or a movement:
+ * calculation starts from the nearest known remain or checkpoint instead of the last remain
+ * provided by the bank. Checkpoints are kept apart from the known remains, so a correction of
+ * operations invalidates only the checkpoints after the corrected date.
+ */
+public class RemainCheckpoints {
+
+    /**
+     * Known remains
+     */
+    private final RemainHistory remains;
+
+    /**
+     * Derived remains
+     */
+    private final RemainHistory checkpoints = new RemainHistory();
+
+    private final Period interval;
+
+    /**
+     * @param remains  known remains
+     * @param interval interval between checkpoints
+     */
+    public RemainCheckpoints(RemainHistory remains, Period interval) {
+        Validate.notNull(remains);
+        Validate.notNull(interval);
+        Validate.isTrue(!interval.isNegative() && !interval.isZero(), "Interval must be positive");
+        this.remains = remains;
+        this.interval = interval;
+    }
+
+    public static RemainCheckpoints monthly(RemainHistory remains) {
+        return new RemainCheckpoints(remains, Period.ofMonths(1));
+    }
+
+    public Period interval() {
+        return interval;
+    }
+
+    /**
+     * @return derived remains
+     */
+    public RemainHistory checkpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * Derive checkpoints of the account up to the date.
+     * Checkpoints follow the nearest known remain or checkpoint at every interval.
+     * The value of a checkpoint is the balance at the beginning of its date.
+     *
+     * @param account    account
+     * @param until      last date of checkpoints (inclusive)
+     * @param operations operations of the account made since the nearest remain, in any order.
+     *                   Operations of other accounts are skipped.
+     * @return number of derived checkpoints
+     */
+    public synchronized int checkpoint(AccountNumber account, LocalDate until, Collection<Operation> operations) {
+        Validate.notNull(until);
+        Validate.notNull(operations);
+        final Remain start = nearest(account, until);
+        if (start == null) return 0;
+
+        final List<LocalDate> dates = new ArrayList<>();
+        for (int k = 1; ; k++) {
+            // multiples of the interval do not drift at the end of month
+            final LocalDate date = start.date().plus(interval.multipliedBy(k));
+            if (date.isAfter(until)) break;
+            dates.add(date);
+        }
+        if (dates.isEmpty()) return 0;
+
+        final long[] days = new long[dates.size()];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = dates.get(i).toEpochDay();
+        }
+        // deltas[i] is a net flow between the previous checkpoint and checkpoint i
+        final long[] deltas = new long[days.length];
+        final long startDay = start.date().toEpochDay();
+        for (Operation op : operations) {
+            if (!account.equals(op.account())) continue;
+            final long day = op.date().toEpochDay();
+            if (day < startDay || day >= days[days.length - 1]) continue;
+            Validate.isTrue(op.amount().currency().equals(start.value().currency()));
+            int i = Arrays.binarySearch(days, day);
+            i = i < 0 ? -i - 1 : i + 1; // first checkpoint after the day
+            deltas[i] += signed(op);
+        }
+
+        final List<Remain> result = new ArrayList<>(days.length);
+        long value = start.value().rawAmount();
+        for (int i = 0; i < days.length; i++) {
+            value += deltas[i];
+            result.add(new Remain(account, dates.get(i), Money.ofRaw(value, start.value().currency())));
+        }
+        checkpoints.addAll(result);
+        return result.size();
+    }
+
+    /**
+     * Invalidate checkpoints after a correction of operations.
+     *
+     * @param account account
+     * @param date    date of added, removed or changed operation
+     * @return number of removed checkpoints
+     */
+    public synchronized int invalidate(AccountNumber account, LocalDate date) {
+        // checkpoint is the balance at the beginning of its date, so it does not depend on operations of that date
+        return checkpoints.removeAfter(account, date);
+    }
+
+    /**
+     * Find the nearest known remain or checkpoint on or before the date.
+     * Known remain is preferred to a checkpoint of the same date.
+     *
+     * @return remain or null if the account has no remains on or before the date
+     */
+    public Remain nearest(AccountNumber account, LocalDate date) {
+        final Remain known = remains.floor(account, date);
+        final Remain derived = checkpoints.floor(account, date);
+        if (derived == null) return known;
+        if (known == null) return derived;
+        return derived.date().isAfter(known.date()) ? derived : known;
+    }
+
+    /**
+     * Calculate balance at the end of the date starting from the nearest remain or checkpoint.
+     *
+     * @param operations operations of the account. Operations made before the nearest remain or after the date are skipped.
+     * @see Balance#of(RemainHistory, AccountNumber, LocalDate, Collection)
+     */
+    public Balance balance(AccountNumber account, LocalDate date, Collection<Operation> operations) {
+        Validate.notNull(operations);
+        final Remain remain = nearest(account, date);
+        Validate.notNull(remain, "No remain of account %s on or before %s", account, date);
+        return new Balance(remain, operations.stream()
+                .filter(op -> !op.date().isBefore(remain.date()) && !op.date().isAfter(date))
+                .toList());
+    }
+
+    /**
+     * Calculate movement of the account within time range starting from the nearest remain or checkpoint.
+     *
+     * @param from       first day of time range (inclusive)
+     * @param to         last day of time range (inclusive)
+     * @param operations operations of the account
+     * @return movement with the remain at the beginning of the first day and the remain at the end of the last day
+     */
+    public AccountMovement movement(AccountNumber account, LocalDate from, LocalDate to, Collection<Operation> operations) {
+        Validate.notNull(operations);
+        Validate.isTrue(!from.isAfter(to));
+        final Remain remain = nearest(account, from);
+        Validate.notNull(remain, "No remain of account %s on or before %s", account, from);
+
+        long start = remain.value().rawAmount();
+        long finish = 0L;
+        final List<BankRecord<?>> movement = new ArrayList<>();
+        for (Operation op : operations) {
+            if (!account.equals(op.account()) || op.date().isBefore(remain.date()) || op.date().isAfter(to)) continue;
+            Validate.isTrue(op.amount().currency().equals(remain.value().currency()));
+            if (op.date().isBefore(from)) {
+                start += signed(op);
+            } else {
+                finish += signed(op);
+                movement.add(op);
+            }
+        }
+        return new AccountMovement(
+                new Remain(account, from, Money.ofRaw(start, remain.value().currency())),
+                new Remain(account, to, Money.ofRaw(start + finish, remain.value().currency())),
+                movement);
+    }
+
+    private static long signed(Operation op) {
+        return switch (op.type()) {
+            case DEPOSIT -> op.amount().rawAmount();
+            case WITHDRAW -> -op.amount().rawAmount();
+            //noinspection UnnecessaryDefault
+            default -> throw new IllegalArgumentException("Unknown operation type");
+        };
+    }
+}
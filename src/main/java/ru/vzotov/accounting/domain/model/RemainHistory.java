@@ -0,0 +1,193 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.AccountNumber;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * History of known remains by account.
+ * <p>
+ * Remains of every account are kept sorted by date next to an array of their epoch days,
+ * so the latest remain on or before a date is found by binary search.
+ * Lookups return the added instances, so they keep their identity and surrogate keys.
+ * The history is thread-safe: arrays of an account are replaced on every update (copy-on-write),
+ * lookups never block. A remain added for an already known date replaces the previous one.
+ * <p>
+ * The history can be shared by many budget and balance calculations instead of passing
+ * and re-sorting lists of remains on every request.
+ */
+public class RemainHistory {
+
+    private final Map<AccountNumber, Series> accounts = new ConcurrentHashMap<>();
+
+    public RemainHistory() {
+    }
+
+    public RemainHistory(Collection<Remain> remains) {
+        addAll(remains);
+    }
+
+    public void add(Remain remain) {
+        Validate.notNull(remain);
+        addAll(Collections.singletonList(remain));
+    }
+
+    /**
+     * Add remains in bulk. Remains are sorted once per account and merged with the known ones.
+     *
+     * @param remains remains of any accounts in any order
+     */
+    public void addAll(Collection<Remain> remains) {
+        Validate.notNull(remains);
+        final Map<AccountNumber, List<Remain>> byAccount = new HashMap<>();
+        for (Remain remain : remains) {
+            Validate.notNull(remain);
+            byAccount.computeIfAbsent(remain.account(), a -> new ArrayList<>()).add(remain);
+        }
+        byAccount.forEach((account, added) -> {
+            // stable sort keeps the last of remains with the same date
+            added.sort(Comparator.comparing(Remain::date));
+            accounts.compute(account, (a, series) -> Series.merge(series, added));
+        });
+    }
+
+    /**
+     * Remove remains of the account dated after the date.
+     *
+     * @param account account
+     * @param date    date
+     * @return number of removed remains
+     */
+    public int removeAfter(AccountNumber account, LocalDate date) {
+        Validate.notNull(date);
+        final long day = date.toEpochDay();
+        final int[] removed = new int[1];
+        accounts.computeIfPresent(account, (a, series) -> {
+            final int n = series.floor(day) + 1;
+            removed[0] = series.days.length - n;
+            if (n == 0) return null;
+            return removed[0] == 0 ? series :
+                    new Series(Arrays.copyOf(series.days, n), Arrays.copyOf(series.remains, n));
+        });
+        return removed[0];
+    }
+
+    /**
+     * @return accounts with known remains
+     */
+    public Set<AccountNumber> accounts() {
+        return Collections.unmodifiableSet(accounts.keySet());
+    }
+
+    /**
+     * @param account account
+     * @return number of known remains of the account
+     */
+    public int size(AccountNumber account) {
+        final Series series = accounts.get(account);
+        return series == null ? 0 : series.days.length;
+    }
+
+    /**
+     * Find the latest remain on or before the date.
+     *
+     * @param account account
+     * @param date    date
+     * @return remain or null if there is no remain of the account on or before the date
+     */
+    public Remain floor(AccountNumber account, LocalDate date) {
+        Validate.notNull(date);
+        final Series series = accounts.get(account);
+        if (series == null) return null;
+        final int i = series.floor(date.toEpochDay());
+        return i < 0 ? null : series.remains[i];
+    }
+
+    /**
+     * Find the latest remains on or before the date for all accounts.
+     *
+     * @param date date
+     * @return remains by account. Accounts without remains on or before the date are not included.
+     */
+    public Map<AccountNumber, Remain> floor(LocalDate date) {
+        Validate.notNull(date);
+        final long day = date.toEpochDay();
+        final Map<AccountNumber, Remain> result = new HashMap<>();
+        accounts.forEach((account, series) -> {
+            final int i = series.floor(day);
+            if (i >= 0) result.put(account, series.remains[i]);
+        });
+        return result;
+    }
+
+    /**
+     * @param account account
+     * @return known remains of the account sorted by date
+     */
+    public List<Remain> remains(AccountNumber account) {
+        final Series series = accounts.get(account);
+        if (series == null) return Collections.emptyList();
+        return Collections.unmodifiableList(Arrays.asList(series.remains));
+    }
+
+    /**
+     * Immutable remains of an account
+     */
+    private static final class Series {
+
+        final long[] days;
+
+        final Remain[] remains;
+
+        Series(long[] days, Remain[] remains) {
+            this.days = days;
+            this.remains = remains;
+        }
+
+        int floor(long day) {
+            final int i = Arrays.binarySearch(days, day);
+            return i >= 0 ? i : -i - 2;
+        }
+
+        /**
+         * Merge sorted remains into the series
+         */
+        static Series merge(Series series, List<Remain> added) {
+            final long[] oldDays = series == null ? new long[0] : series.days;
+            final Remain[] oldRemains = series == null ? new Remain[0] : series.remains;
+            final long[] days = new long[oldDays.length + added.size()];
+            final Remain[] remains = new Remain[days.length];
+            int i = 0, j = 0, n = 0;
+            while (i < oldDays.length || j < added.size()) {
+                final long day;
+                final Remain remain;
+                if (j == added.size() || (i < oldDays.length && oldDays[i] < added.get(j).date().toEpochDay())) {
+                    day = oldDays[i];
+                    remain = oldRemains[i++];
+                } else {
+                    remain = added.get(j++);
+                    day = remain.date().toEpochDay();
+                    if (i < oldDays.length && oldDays[i] == day) i++; // replaced
+                }
+                if (n > 0 && days[n - 1] == day) {
+                    remains[n - 1] = remain; // later remain with the same date wins
+                } else {
+                    days[n] = day;
+                    remains[n++] = remain;
+                }
+            }
+            return new Series(Arrays.copyOf(days, n), Arrays.copyOf(remains, n));
+        }
+    }
+}
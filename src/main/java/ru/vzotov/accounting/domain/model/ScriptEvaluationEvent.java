@@ -0,0 +1,37 @@
+package ru.vzotov.accounting.domain.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event of a script evaluation of a budget rule.
+ */
+@Name("ru.vzotov.accounting.ScriptEvaluation")
+@Label("Script Evaluation")
+@Description("Evaluation of the calculation script of a budget rule")
+@Category({"Accounting", "Budget"})
+@Threshold("20 ms")
+final class ScriptEvaluationEvent extends Event {
+
+    /**
+     * Type of the event. Events are not created while no recording enables the type.
+     */
+    static final EventType TYPE = EventType.getEventType(ScriptEvaluationEvent.class);
+
+    @Label("Rule")
+    String ruleId;
+
+    @Label("Rule Name")
+    String ruleName;
+
+    @Label("Date")
+    String date;
+
+    @Label("Expression")
+    String expression;
+}
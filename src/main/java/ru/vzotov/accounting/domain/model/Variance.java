@@ -0,0 +1,125 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.apache.commons.lang3.Validate;
+import ru.vzotov.banking.domain.model.BudgetCategoryId;
+import ru.vzotov.ddd.shared.ValueObject;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Planned and actual amounts of a budget rule or category within a period.
+ */
+public class Variance implements ValueObject<Variance> {
+
+    /**
+     * First day of the period
+     */
+    private final LocalDate from;
+
+    /**
+     * Last day of the period
+     */
+    private final LocalDate to;
+
+    /**
+     * Budget rule. Absent for actual operations that were not planned.
+     */
+    private final BudgetRule rule;
+
+    /**
+     * Budget category
+     */
+    private final BudgetCategoryId category;
+
+    /**
+     * Planned amount
+     */
+    private final Money planned;
+
+    /**
+     * Actual amount
+     */
+    private final Money actual;
+
+    public Variance(LocalDate from, LocalDate to, BudgetRule rule, BudgetCategoryId category, Money planned, Money actual) {
+        Validate.notNull(from);
+        Validate.notNull(to);
+        Validate.notNull(planned);
+        Validate.notNull(actual);
+        this.from = from;
+        this.to = to;
+        this.rule = rule;
+        this.category = category;
+        this.planned = planned;
+        this.actual = actual;
+    }
+
+    public LocalDate from() {
+        return from;
+    }
+
+    public LocalDate to() {
+        return to;
+    }
+
+    public BudgetRule rule() {
+        return rule;
+    }
+
+    public BudgetCategoryId category() {
+        return category;
+    }
+
+    public Money planned() {
+        return planned;
+    }
+
+    public Money actual() {
+        return actual;
+    }
+
+    /**
+     * @return difference between actual and planned amounts
+     */
+    public Money delta() {
+        return actual.subtract(planned);
+    }
+
+    @Override
+    public boolean sameValueAs(Variance that) {
+        return that != null &&
+                Objects.equals(from, that.from) &&
+                Objects.equals(to, that.to) &&
+                Objects.equals(rule, that.rule) &&
+                Objects.equals(category, that.category) &&
+                Objects.equals(planned, that.planned) &&
+                Objects.equals(actual, that.actual);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Variance that = (Variance) o;
+        return sameValueAs(that);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(from, to, rule, category, planned, actual);
+    }
+
+    @Override
+    public String toString() {
+        return "Variance{" +
+                "from=" + from +
+                ", to=" + to +
+                ", rule=" + (rule == null ? null : rule.ruleId()) +
+                ", category=" + category +
+                ", planned=" + planned +
+                ", actual=" + actual +
+                '}';
+    }
+}
@@ -0,0 +1,55 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.junit.jupiter.api.Test;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.BankRecord;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.banking.domain.model.OperationType;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AccountMovementTest {
+
+    private static final AccountNumber ACCOUNT = new AccountNumber("40817810108290012345");
+
+    @Test
+    public void testSummary() {
+        final LocalDate from = LocalDate.of(2020, Month.MARCH, 2);
+        final LocalDate to = LocalDate.of(2020, Month.MARCH, 8);
+        final List<BankRecord<?>> operations = List.of(
+                new Operation(new OperationId("op-1"), from, Money.rubles(10.0d), OperationType.WITHDRAW, ACCOUNT, "op-1"),
+                new Operation(new OperationId("op-2"), to, Money.rubles(50.0d), OperationType.DEPOSIT, ACCOUNT, "op-2"),
+                new Operation(new OperationId("op-3"), to, Money.rubles(15.0d), OperationType.WITHDRAW, ACCOUNT, "op-3")
+        );
+        final AccountMovement movement = new AccountMovement(
+                new Remain(ACCOUNT, from, Money.rubles(100.0d)),
+                new Remain(ACCOUNT, to, Money.rubles(125.0d)),
+                operations);
+
+        assertThat(movement.isSummary()).isFalse();
+        assertThat(movement.count()).isEqualTo(3);
+        assertThat(movement.deposit()).isEqualTo(Money.rubles(50.0d));
+        assertThat(movement.withdraw()).isEqualTo(Money.rubles(25.0d));
+
+        final AccountMovement summary = movement.summary((account, start, finish) -> {
+            assertThat(account).isEqualTo(ACCOUNT);
+            assertThat(start).isEqualTo(from);
+            assertThat(finish).isEqualTo(to);
+            return operations;
+        });
+        assertThat(summary.isSummary()).isTrue();
+        assertThat(summary.count()).isEqualTo(3);
+        assertThat(summary.deposit()).isEqualTo(movement.deposit());
+        assertThat(summary.withdraw()).isEqualTo(movement.withdraw());
+        assertThat(summary.operations()).isEqualTo(operations);
+
+        assertThatThrownBy(() -> movement.summary(null).operations()).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,203 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.BankRecord;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.banking.domain.model.OperationType;
+import ru.vzotov.calendar.domain.model.Recurrence;
+import ru.vzotov.calendar.domain.model.RecurrenceUnit;
+import ru.vzotov.calendar.domain.model.WorkCalendars;
+import ru.vzotov.domain.model.Money;
+import ru.vzotov.person.domain.model.PersonId;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that canonical scenarios do not allocate more memory than configured
+ * in <code>allocation-budgets.properties</code>.
+ * <p>
+ * Budgets are expressed in units of the memory allocated by one {@link Money#add(Money)},
+ * measured by the same JVM, so they do not depend on the JVM and on the implementation of money.
+ * Allocations of the common fork-join pool workers are counted too,
+ * so work moved to other threads by parallel streams does not escape the budget.
+ */
+public class AllocationBudgetTest {
+
+    private static final int WARMUP = 20;
+
+    private static final int ITERATIONS = 20;
+
+    private static final AccountNumber ACCOUNT = new AccountNumber("40817810108290012345");
+
+    private static final LocalDate START = LocalDate.of(2020, Month.JANUARY, 1);
+
+    private static final Properties BUDGETS = new Properties();
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    /**
+     * Bytes allocated by one addition of money
+     */
+    private static double unit;
+
+    @BeforeAll
+    public static void setUp() throws IOException {
+        try (InputStream in = AllocationBudgetTest.class.getResourceAsStream("/allocation-budgets.properties")) {
+            BUDGETS.load(in);
+        }
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            threads = bean;
+            unit = unit();
+        }
+    }
+
+    private static double unit() {
+        final int count = 10_000;
+        final Money[] operands = new Money[count];
+        final Money[] results = new Money[count];
+        for (int i = 0; i < count; i++) {
+            operands[i] = Money.kopecks(i);
+        }
+        final Money value = Money.kopecks(100L);
+        return (double) allocations(() -> {
+            for (int i = 0; i < count; i++) {
+                results[i] = value.add(operands[i]);
+            }
+        }) / count;
+    }
+
+    @Test
+    public void testBudgetCalculate() {
+        final Random random = new Random(1L);
+        final Set<BudgetRule> rules = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            rules.add(new BudgetRule(
+                    BudgetRuleId.nextId(),
+                    i % 4 == 0 ? BudgetRuleType.INCOME : BudgetRuleType.EXPENSE,
+                    null, null, ACCOUNT, ACCOUNT,
+                    i % 2 == 0
+                            ? new Recurrence(START, null, RecurrenceUnit.WEEKLY)
+                            : new Recurrence(START, null, RecurrenceUnit.MONTHLY, 1, 1 + i),
+                    "rule " + i,
+                    Money.kopecks(100L + random.nextInt(100_000))
+            ));
+        }
+        final Budget budget = new Budget(BudgetId.nextId(), PersonId.nextId(), "allocations", rules);
+        final List<BankRecord<?>> operations = new ArrayList<>(operations(random, 1000));
+        final List<Remain> remains = List.of(new Remain(ACCOUNT, START, Money.rubles(1000.0d)));
+
+        assertAllocations("budget.calculate", () -> budget.calculate(
+                WorkCalendars.CALENDAR_2020, remains, ACCOUNT, START, START.plusWeeks(13).minusDays(1), operations));
+    }
+
+    @Test
+    public void testBalance() {
+        final List<Operation> operations = operations(new Random(2L), 10_000);
+        final Remain remain = new Remain(ACCOUNT, START, Money.rubles(1000.0d));
+
+        assertAllocations("balance.construct", () -> new Balance(remain, operations).value());
+    }
+
+    @Test
+    public void testBudgetBalanceTotals() {
+        final Random random = new Random(3L);
+        final List<BudgetPlan> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final BudgetRuleType type = i % 4 == 0 ? BudgetRuleType.INCOME : BudgetRuleType.EXPENSE;
+            final Money value = Money.kopecks(100L + random.nextInt(100_000));
+            final BudgetRule rule = new BudgetRule(BudgetRuleId.nextId(), type, null, null, ACCOUNT, ACCOUNT,
+                    new Recurrence(START), "rule " + i, value);
+            items.add(new BudgetPlan(BudgetPlanId.nextId(), rule, START, BudgetDirection.of(type.symbol()), value,
+                    ACCOUNT, ACCOUNT, null, null));
+        }
+        final BudgetBalance balance = new BudgetBalance(START, START.plusDays(6), items, List.of(), List.of());
+
+        assertAllocations("budgetBalance.totals", balance::balance);
+    }
+
+    private static List<Operation> operations(Random random, int count) {
+        final List<Operation> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new Operation(
+                    new OperationId("op-" + i),
+                    START.plusDays(random.nextInt(91)),
+                    Money.kopecks(100L + random.nextInt(100_000)),
+                    random.nextBoolean() ? OperationType.DEPOSIT : OperationType.WITHDRAW,
+                    ACCOUNT,
+                    "operation " + i
+            ));
+        }
+        return result;
+    }
+
+    private static void assertAllocations(String scenario, Scenario action) {
+        assumeTrue(threads != null, "Thread allocation counters are not supported by the JVM");
+        final double budget = Double.parseDouble(BUDGETS.getProperty(scenario));
+        final long allocated = allocations(action);
+        assertThat(allocated / unit)
+                .as("Allocations per operation of %s, %d bytes, in units of %.1f bytes", scenario, allocated, unit)
+                .isLessThanOrEqualTo(budget);
+    }
+
+    /**
+     * @return bytes allocated by one run of the action, after warmup
+     */
+    private static long allocations(Scenario action) {
+        try {
+            for (int i = 0; i < WARMUP; i++) {
+                action.run();
+            }
+            final long before = allocatedBytes(false);
+            for (int i = 0; i < ITERATIONS; i++) {
+                action.run();
+            }
+            return (allocatedBytes(true) - before) / ITERATIONS;
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Bytes allocated by the current thread and by the workers of the common pool.
+     * The current thread is read at the very end of the measurement or at the very start of it,
+     * so that the lookup of the workers is not counted.
+     */
+    private static long allocatedBytes(boolean finish) {
+        final long current = Thread.currentThread().getId();
+        long result = finish ? threads.getThreadAllocatedBytes(current) : 0L;
+        final long[] workers = Arrays.stream(threads.getThreadInfo(threads.getAllThreadIds()))
+                .filter(info -> info != null && info.getThreadName().startsWith("ForkJoinPool.commonPool-worker-"))
+                .mapToLong(ThreadInfo::getThreadId)
+                .toArray();
+        for (long allocated : threads.getThreadAllocatedBytes(workers)) {
+            if (allocated > 0L) result += allocated;
+        }
+        if (!finish) result += threads.getThreadAllocatedBytes(current);
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface Scenario {
+        void run() throws Exception;
+    }
+}
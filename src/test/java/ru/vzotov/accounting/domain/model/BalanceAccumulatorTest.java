@@ -0,0 +1,72 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.junit.jupiter.api.Test;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.banking.domain.model.OperationType;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BalanceAccumulatorTest {
+
+    private static final AccountNumber ACCOUNT = new AccountNumber("40817810108290012345");
+
+    private static final Remain REMAIN = new Remain(ACCOUNT, LocalDate.of(2020, Month.MARCH, 1), Money.rubles(100.0d));
+
+    private static Operation operation(String id, int day, double amount, OperationType type) {
+        return new Operation(new OperationId(id), LocalDate.of(2020, Month.MARCH, day), Money.rubles(amount), type, ACCOUNT, id);
+    }
+
+    @Test
+    public void testAppend() {
+        final Operation op1 = operation("op-1", 2, 10.0d, OperationType.WITHDRAW);
+        final Operation op2 = operation("op-2", 3, 50.0d, OperationType.DEPOSIT);
+        final Operation op3 = operation("op-3", 4, 30.0d, OperationType.WITHDRAW);
+
+        final BalanceAccumulator accumulator = new BalanceAccumulator(REMAIN, List.of(op1, op2));
+        final Balance snapshot = accumulator.snapshot();
+        assertThat(snapshot.value()).isEqualTo(Money.rubles(140.0d));
+        assertThat(snapshot.value()).isEqualTo(new Balance(REMAIN, List.of(op1, op2)).value());
+
+        accumulator.add(op3);
+        assertThat(accumulator.value()).isEqualTo(Money.rubles(110.0d));
+        assertThat(snapshot.value()).isEqualTo(Money.rubles(140.0d));
+        assertThat(snapshot.operations()).containsExactly(op1, op2);
+        assertThat(accumulator.snapshot().operations()).containsExactly(op1, op2, op3);
+    }
+
+    @Test
+    public void testCorrection() {
+        final Operation op1 = operation("op-1", 2, 10.0d, OperationType.WITHDRAW);
+        final Operation op2 = operation("op-2", 3, 50.0d, OperationType.DEPOSIT);
+        final Operation corrected = operation("op-2", 3, 20.0d, OperationType.DEPOSIT);
+
+        final BalanceAccumulator accumulator = new BalanceAccumulator(REMAIN, List.of(op1, op2));
+        final Balance snapshot = accumulator.snapshot();
+
+        assertThat(accumulator.remove(op1)).isTrue();
+        assertThat(accumulator.value()).isEqualTo(Money.rubles(150.0d));
+        assertThat(accumulator.replace(op2, corrected)).isTrue();
+        assertThat(accumulator.value()).isEqualTo(Money.rubles(120.0d));
+        assertThat(accumulator.remove(op1)).isFalse();
+
+        assertThat(snapshot.value()).isEqualTo(Money.rubles(140.0d));
+        assertThat(snapshot.operations()).containsExactly(op1, op2);
+    }
+
+    @Test
+    public void testOperationsBeforeRemain() {
+        final Operation early = new Operation(new OperationId("op-0"), REMAIN.date().minusDays(1),
+                Money.rubles(10.0d), OperationType.WITHDRAW, ACCOUNT, "op-0");
+        final BalanceAccumulator accumulator = new BalanceAccumulator(REMAIN);
+        accumulator.add(early);
+        assertThat(accumulator.value()).isEqualTo(Money.rubles(100.0d));
+        assertThat(accumulator.size()).isEqualTo(1);
+    }
+}
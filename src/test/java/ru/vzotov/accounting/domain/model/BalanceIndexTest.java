@@ -0,0 +1,46 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.junit.jupiter.api.Test;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.banking.domain.model.OperationType;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BalanceIndexTest {
+
+    private static final AccountNumber ACCOUNT = new AccountNumber("40817810108290012345");
+
+    private static Operation operation(String id, LocalDate date, double amount, OperationType type) {
+        return new Operation(new OperationId(id), date, Money.rubles(amount), type, ACCOUNT, id);
+    }
+
+    @Test
+    public void testBalanceAt() {
+        final Remain remain = new Remain(ACCOUNT, LocalDate.of(2020, Month.MARCH, 1), Money.rubles(100.0d));
+        final List<Operation> operations = List.of(
+                operation("op-1", LocalDate.of(2020, Month.FEBRUARY, 20), 30.0d, OperationType.WITHDRAW),
+                operation("op-2", LocalDate.of(2020, Month.MARCH, 1), 10.0d, OperationType.WITHDRAW),
+                operation("op-3", LocalDate.of(2020, Month.MARCH, 15), 50.0d, OperationType.DEPOSIT),
+                operation("op-4", LocalDate.of(2021, Month.JANUARY, 10), 40.0d, OperationType.WITHDRAW)
+        );
+        final BalanceIndex index = new BalanceIndex(remain, operations);
+
+        assertThat(index.balanceAt(LocalDate.of(2020, Month.FEBRUARY, 19))).isEqualTo(Money.rubles(130.0d));
+        assertThat(index.balanceAt(LocalDate.of(2020, Month.FEBRUARY, 29))).isEqualTo(Money.rubles(100.0d));
+        assertThat(index.balanceAt(LocalDate.of(2020, Month.MARCH, 1))).isEqualTo(Money.rubles(90.0d));
+        assertThat(index.balanceAt(LocalDate.of(2020, Month.MARCH, 31)))
+                .isEqualTo(Money.rubles(140.0d))
+                .isEqualTo(new Balance(remain, operations.subList(0, 3)).value());
+        assertThat(index.balanceAt(LocalDate.of(2022, Month.JANUARY, 1))).isEqualTo(Money.rubles(100.0d));
+
+        assertThat(index.netFlow(LocalDate.of(2020, Month.MARCH, 1), LocalDate.of(2020, Month.MARCH, 31))).isEqualTo(Money.rubles(40.0d));
+        assertThat(index.netFlow(LocalDate.of(2019, Month.JANUARY, 1), LocalDate.of(2019, Month.DECEMBER, 31))).isEqualTo(Money.rubles(0.0d));
+    }
+}
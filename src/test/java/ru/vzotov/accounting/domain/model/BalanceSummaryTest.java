@@ -0,0 +1,75 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.junit.jupiter.api.Test;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.banking.domain.model.OperationType;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BalanceSummaryTest {
+
+    private static final AccountNumber ACCOUNT = new AccountNumber("40817810108290012345");
+
+    private static Operation operation(String id, LocalDate date, Money amount, OperationType type) {
+        return new Operation(new OperationId(id), date, amount, type, ACCOUNT, id);
+    }
+
+    @Test
+    public void testSummary() {
+        final Remain remain = new Remain(ACCOUNT, LocalDate.of(2020, Month.MARCH, 1), Money.rubles(100.0d));
+        final List<Operation> operations = List.of(
+                operation("op-1", LocalDate.of(2020, Month.FEBRUARY, 20), Money.rubles(30.0d), OperationType.WITHDRAW),
+                operation("op-2", LocalDate.of(2020, Month.MARCH, 1), Money.rubles(10.0d), OperationType.WITHDRAW),
+                operation("op-3", LocalDate.of(2020, Month.MARCH, 15), Money.rubles(50.0d), OperationType.DEPOSIT),
+                operation("op-4", LocalDate.of(2020, Month.MARCH, 20), Money.rubles(15.0d), OperationType.WITHDRAW)
+        );
+        final BalanceSummary expected = new BalanceSummary(remain, 3, Money.rubles(50.0d), Money.rubles(25.0d));
+
+        assertThat(BalanceSummary.of(remain, operations.iterator())).isEqualTo(expected);
+        assertThat(BalanceSummary.of(remain, operations.spliterator())).isEqualTo(expected);
+        assertThat(BalanceSummary.of(remain, operations.stream())).isEqualTo(expected);
+        assertThat(expected.value())
+                .isEqualTo(Money.rubles(125.0d))
+                .isEqualTo(new Balance(remain, operations).value());
+    }
+
+    @Test
+    public void testParallel() {
+        final Remain remain = new Remain(ACCOUNT, LocalDate.of(2020, Month.MARCH, 1), Money.rubles(100.0d));
+        final List<Operation> operations = new ArrayList<>();
+        long expected = Money.rubles(100.0d).rawAmount();
+        for (int i = 0; i < 1 << 15; i++) {
+            final LocalDate date = remain.date().plusDays(i % 60 - 10);
+            final OperationType type = i % 3 == 0 ? OperationType.DEPOSIT : OperationType.WITHDRAW;
+            final Money amount = Money.kopecks(i % 1000 + 1);
+            operations.add(operation("op-" + i, date, amount, type));
+            if (!date.isBefore(remain.date())) {
+                expected += type == OperationType.DEPOSIT ? amount.rawAmount() : -amount.rawAmount();
+            }
+        }
+
+        assertThat(new Balance(remain, operations).value()).isEqualTo(Money.kopecks(expected));
+        assertThat(Balance.parallel(remain, operations).value()).isEqualTo(Money.kopecks(expected));
+        assertThat(operations.parallelStream().collect(BalanceSummary.summarizing(remain)))
+                .isEqualTo(BalanceSummary.of(remain, operations.iterator()));
+    }
+
+    @Test
+    public void testCurrency() {
+        final Remain remain = new Remain(ACCOUNT, LocalDate.of(2020, Month.MARCH, 1), Money.rubles(100.0d));
+        final Operation op = operation("op-1", LocalDate.of(2020, Month.MARCH, 2),
+                Money.ofRaw(1000, Currency.getInstance("USD")), OperationType.DEPOSIT);
+        assertThatThrownBy(() -> BalanceSummary.of(remain, List.of(op).iterator()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,177 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.junit.jupiter.api.Test;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.BankRecord;
+import ru.vzotov.banking.domain.model.BudgetCategoryId;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.banking.domain.model.OperationType;
+import ru.vzotov.calendar.domain.model.Recurrence;
+import ru.vzotov.calendar.domain.model.RecurrenceUnit;
+import ru.vzotov.cashreceipt.domain.model.ReceiptId;
+import ru.vzotov.domain.model.Money;
+import ru.vzotov.person.domain.model.PersonId;
+import ru.vzotov.purchase.domain.model.PurchaseId;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BinaryCodecTest {
+
+    private static final AccountNumber ACCOUNT = new AccountNumber("40817810108290012345");
+
+    @Test
+    public void testBalance() {
+        final LocalDate from = LocalDate.of(2020, Month.MARCH, 2);
+        final LocalDate to = LocalDate.of(2020, Month.MARCH, 8);
+        final BudgetRule rule = new BudgetRule(
+                BudgetRuleId.nextId(),
+                BudgetRuleType.EXPENSE,
+                BudgetCategoryId.of("rent"),
+                null,
+                ACCOUNT,
+                null,
+                new Recurrence(LocalDate.of(2020, Month.JANUARY, 1), null, RecurrenceUnit.MONTHLY, 1, 5),
+                "Аренда",
+                Money.rubles(30000.0d),
+                new Calculation("value")
+        );
+        final BudgetPlan item = new BudgetPlan(BudgetPlanId.nextId(), rule, LocalDate.of(2020, Month.MARCH, 5),
+                BudgetDirection.EXPENSE, Money.rubles(30000.0d), ACCOUNT, null, rule.categoryId(), null);
+        final Remain remain = new Remain(ACCOUNT, to, Money.rubles(-29900.0d));
+        final List<BankRecord<?>> operations = List.of(
+                new Operation(new OperationId("op1"), from, Money.rubles(100.0d), OperationType.DEPOSIT, ACCOUNT, "op1"));
+        final AccountMovement movement = new AccountMovement(new Remain(ACCOUNT, from, Money.rubles(0.0d)),
+                new Remain(ACCOUNT, to, Money.rubles(100.0d)), operations);
+        final BudgetBalance balance = new BudgetBalance(from, to, List.of(item), List.of(remain), List.of(movement));
+
+        final BinaryCodec.Encoder encoder = new BinaryCodec.Encoder();
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        encoder.encode(balance, buffer);
+        final int first = buffer.position();
+        encoder.encode(balance, buffer);
+        // rules and identifiers are not repeated in the second frame
+        assertThat(buffer.position() - first).isLessThan(first / 2);
+        buffer.flip();
+
+        final BinaryCodec.Decoder decoder = new BinaryCodec.Decoder((account, start, finish) -> operations);
+        final BudgetBalance decoded = decoder.decodeBalance(buffer);
+        assertThat(decoded).isEqualTo(balance);
+        assertThat(decoded.items()).singleElement().satisfies(plan -> {
+            assertThat(plan.rule().name()).isEqualTo("Аренда");
+            assertThat(plan.rule().recurrence()).isEqualTo(rule.recurrence());
+            assertThat(plan.value()).isEqualTo(Money.rubles(30000.0d));
+            assertThat(plan.source()).isEqualTo(ACCOUNT);
+            assertThat(plan.target()).isNull();
+        });
+        assertThat(decoded.remains()).singleElement().satisfies(r -> assertThat(r.value()).isEqualTo(Money.rubles(-29900.0d)));
+        assertThat(decoded.movements()).singleElement().satisfies(m -> {
+            assertThat(m.isSummary()).isTrue();
+            assertThat(m.deposit()).isEqualTo(Money.rubles(100.0d));
+            assertThat(m.operations()).isEqualTo(operations);
+        });
+
+        assertThat(decoder.decode(buffer)).isEqualTo(balance);
+        assertThat(buffer.hasRemaining()).isFalse();
+        assertThatThrownBy(() -> decoder.decode(buffer)).isInstanceOf(BufferUnderflowException.class);
+    }
+
+    @Test
+    public void testDeal() {
+        final Deal deal = new Deal(new DealId("deal"), new PersonId("user"), LocalDate.of(2021, 12, 10), Money.kopecks(-100),
+                "Deal description", null, BudgetCategoryId.of("food"),
+                Collections.singleton(new ReceiptId("receipt1")), Collections.singleton(new OperationId("op1")),
+                Collections.emptySet(), List.of(new PurchaseId("purchase1"), new PurchaseId("purchase2")));
+
+        final BinaryCodec.Encoder encoder = new BinaryCodec.Encoder();
+        assertThatThrownBy(() -> encoder.encode(deal, ByteBuffer.allocate(16))).isInstanceOf(BufferOverflowException.class);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        encoder.encode(deal, buffer);
+        buffer.flip();
+
+        final Deal decoded = new BinaryCodec.Decoder().decodeDeal(buffer);
+        assertThat(decoded).isEqualTo(deal);
+        assertThat(decoded.owner()).isEqualTo(deal.owner());
+        assertThat(decoded.amount()).isEqualTo(deal.amount());
+        assertThat(decoded.description()).isEqualTo(deal.description());
+        assertThat(decoded.comment()).isNull();
+        assertThat(decoded.category()).isEqualTo(deal.category());
+        assertThat(decoded.receipts()).isEqualTo(deal.receipts());
+        assertThat(decoded.operations()).isEqualTo(deal.operations());
+        assertThat(decoded.purchases()).isEqualTo(deal.purchases());
+    }
+
+    @Test
+    public void testEditedRule() {
+        final BudgetRuleId ruleId = BudgetRuleId.nextId();
+        final Recurrence recurrence = new Recurrence(LocalDate.of(2020, Month.JANUARY, 1), null, RecurrenceUnit.MONTHLY, 1, 5);
+        final BudgetRule rule = new BudgetRule(ruleId, BudgetRuleType.EXPENSE, null, null, ACCOUNT, null,
+                recurrence, "Rent", Money.rubles(30000.0d), null, true);
+        final BudgetRule edited = new BudgetRule(ruleId, BudgetRuleType.EXPENSE, null, null, ACCOUNT, null,
+                recurrence, "Rent", Money.rubles(35000.0d), null, true);
+        final BudgetRule disabled = new BudgetRule(ruleId, BudgetRuleType.EXPENSE, null, null, ACCOUNT, null,
+                recurrence, "Rent", Money.rubles(35000.0d), null, false);
+
+        final BinaryCodec.Encoder encoder = new BinaryCodec.Encoder();
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        for (BudgetRule r : List.of(rule, edited, disabled, rule)) {
+            encoder.encode(new BudgetPlan(BudgetPlanId.nextId(), r, LocalDate.of(2020, Month.MARCH, 5),
+                    BudgetDirection.EXPENSE, r.value(), ACCOUNT, null, null, null), buffer);
+        }
+        buffer.flip();
+
+        final BinaryCodec.Decoder decoder = new BinaryCodec.Decoder();
+        final BudgetRule first = decoder.decodePlan(buffer).rule();
+        assertThat(first.value()).isEqualTo(Money.rubles(30000.0d));
+        assertThat(decoder.decodePlan(buffer).rule().value()).isEqualTo(Money.rubles(35000.0d));
+        final BudgetRule third = decoder.decodePlan(buffer).rule();
+        assertThat(third.value()).isEqualTo(Money.rubles(35000.0d));
+        assertThat(third.isEnabled()).isFalse();
+        // the original rule is still known to both sides
+        assertThat(decoder.decodePlan(buffer).rule()).isSameAs(first);
+    }
+
+    @Test
+    public void testMalformedFrame() {
+        final Deal deal = new Deal(new DealId("deal"), new PersonId("user"), LocalDate.of(2021, 12, 10), Money.kopecks(-100),
+                "Deal description", null, BudgetCategoryId.of("food"),
+                Collections.emptySet(), Collections.singleton(new OperationId("op1")), Collections.emptySet(), Collections.emptyList());
+        final Deal other = new Deal(new DealId("other"), new PersonId("another user"), LocalDate.of(2021, 12, 11), Money.kopecks(-200),
+                null, null, BudgetCategoryId.of("rent"),
+                Collections.emptySet(), Collections.singleton(new OperationId("op2")), Collections.emptySet(), Collections.emptyList());
+
+        final ByteBuffer valid = ByteBuffer.allocate(1024);
+        final BinaryCodec.Encoder encoder = new BinaryCodec.Encoder();
+        encoder.encode(deal, valid);
+        encoder.encode(deal, valid);
+        valid.flip();
+
+        // a frame of another stream with a wrong payload length
+        final ByteBuffer malformed = ByteBuffer.allocate(1024);
+        new BinaryCodec.Encoder().encode(other, malformed);
+        malformed.put((byte) 0);
+        malformed.putInt(2, malformed.position() - BinaryCodec.HEADER);
+        malformed.flip();
+
+        final BinaryCodec.Decoder decoder = new BinaryCodec.Decoder();
+        assertThatThrownBy(() -> decoder.decodeDeal(malformed)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(malformed.position()).isZero();
+
+        assertThat(decoder.decodeDeal(valid).owner()).isEqualTo(deal.owner());
+        final Deal decoded = decoder.decodeDeal(valid);
+        assertThat(decoded.dealId()).isEqualTo(deal.dealId());
+        assertThat(decoded.owner()).isEqualTo(deal.owner());
+        assertThat(decoded.category()).isEqualTo(deal.category());
+        assertThat(decoded.operations()).isEqualTo(deal.operations());
+    }
+}
@@ -0,0 +1,153 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.junit.jupiter.api.Test;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.banking.domain.model.OperationType;
+import ru.vzotov.calendar.domain.model.Recurrence;
+import ru.vzotov.calendar.domain.model.RecurrenceUnit;
+import ru.vzotov.calendar.domain.model.WorkCalendars;
+import ru.vzotov.domain.model.Money;
+import ru.vzotov.person.domain.model.PersonId;
+
+import javax.script.ScriptException;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BudgetMetricsTest {
+
+    private static final AccountNumber ACCOUNT = new AccountNumber("40817810108290012345");
+    private static final LocalDate START = LocalDate.of(2020, Month.MARCH, 1);
+    private static final LocalDate FINISH = LocalDate.of(2020, Month.MARCH, 31);
+
+    @Test
+    public void testCallbacks() throws ScriptException {
+        final Recording metrics = new Recording(true);
+        final List<BudgetBalance> result = calculate(metrics);
+
+        assertThat(metrics.forecasts).isEqualTo(1);
+        assertThat(metrics.operations).isEqualTo(1);
+        assertThat(metrics.phases.get(BudgetMetrics.Phase.RULES)).isEqualTo(result.size());
+        assertThat(metrics.phases.get(BudgetMetrics.Phase.BUCKETING)).isEqualTo(1);
+        assertThat(metrics.phases.get(BudgetMetrics.Phase.REMAINS)).isEqualTo(result.size());
+        assertThat(metrics.phases.get(BudgetMetrics.Phase.MOVEMENTS)).isEqualTo(result.size());
+        // every rule is checked for every day of every period
+        assertThat(metrics.rules).isEqualTo(2 * result.size());
+        assertThat(metrics.checks).isEqualTo(2 * 31);
+        assertThat(metrics.matches).isPositive();
+        // salary is paid once a month, so its script is evaluated once
+        assertThat(metrics.ruleScripts).isEqualTo(1);
+        assertThat(metrics.scripts).isEqualTo(1);
+    }
+
+    @Test
+    public void testDisabled() throws ScriptException {
+        final Recording metrics = new Recording(false);
+        final List<BudgetBalance> result = calculate(metrics);
+        assertThat(result).hasSameSizeAs(calculate(BudgetMetrics.NOOP));
+
+        assertThat(BudgetMetrics.NOOP.isEnabled()).isFalse();
+        assertThat(metrics.forecasts).isZero();
+        assertThat(metrics.phases).isEmpty();
+        assertThat(metrics.rules).isZero();
+        assertThat(metrics.scripts).isZero();
+    }
+
+    @Test
+    public void testAdapter() throws ScriptException {
+        final Map<String, Integer> timers = new HashMap<>();
+        final Map<String, Long> counters = new HashMap<>();
+        final List<BudgetBalance> result = calculate(BudgetMetrics.of(
+                (name, nanos) -> timers.merge(name, 1, Integer::sum),
+                (name, increment) -> counters.merge(name, increment, Long::sum)
+        ));
+
+        assertThat(timers).containsEntry("budget.forecast", 1)
+                .containsEntry("budget.phase.rules", result.size())
+                .containsEntry("budget.phase.bucketing", 1)
+                .containsEntry("budget.phase.remains", result.size())
+                .containsEntry("budget.phase.movements", result.size())
+                .containsEntry("budget.script", 1);
+        assertThat(counters).containsEntry("budget.rule.checks", 62L)
+                .containsEntry("budget.script.evaluations", 1L)
+                .containsKey("budget.rule.matches");
+    }
+
+    private static List<BudgetBalance> calculate(BudgetMetrics metrics) throws ScriptException {
+        final Budget budget = new Budget(BudgetId.nextId(), PersonId.nextId(), "default", Set.of(
+                new BudgetRule(
+                        BudgetRuleId.nextId(), BudgetRuleType.EXPENSE, null, null, ACCOUNT, null,
+                        new Recurrence(START, null, RecurrenceUnit.WEEKLY), "Гипермаркет", Money.rubles(1500.0d)
+                ),
+                new BudgetRule(
+                        BudgetRuleId.nextId(), BudgetRuleType.INCOME, null, null, null, ACCOUNT,
+                        new Recurrence(START, null, RecurrenceUnit.MONTHLY, 1, 5), "Заработная плата", Money.rubles(20000.0d),
+                        new Calculation("value.amount().doubleValue() * 1.1;")
+                )
+        ));
+        return budget.calculate(
+                WorkCalendars.CALENDAR_2020,
+                Collections.emptyList(),
+                ACCOUNT,
+                START,
+                FINISH,
+                List.of(new Operation(new OperationId("op-1"), START.plusDays(1), Money.rubles(10d),
+                        OperationType.WITHDRAW, ACCOUNT, "test operation 1")),
+                metrics
+        );
+    }
+
+    private static class Recording implements BudgetMetrics {
+        final boolean enabled;
+        final Map<Phase, Integer> phases = new EnumMap<>(Phase.class);
+        int forecasts;
+        int operations;
+        int rules;
+        int checks;
+        int matches;
+        int ruleScripts;
+        int scripts;
+
+        Recording(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        @Override
+        public void onForecast(BudgetSnapshot budget, LocalDate start, LocalDate finish, int operations, long nanos) {
+            forecasts++;
+            this.operations += operations;
+        }
+
+        @Override
+        public void onPhase(Phase phase, LocalDate from, LocalDate to, long nanos) {
+            phases.merge(phase, 1, Integer::sum);
+        }
+
+        @Override
+        public void onRule(BudgetRule rule, LocalDate from, LocalDate to, int checks, int matches, int scripts, long scriptNanos) {
+            rules++;
+            this.checks += checks;
+            this.matches += matches;
+            ruleScripts += scripts;
+        }
+
+        @Override
+        public void onScript(Calculation calculation, long nanos) {
+            scripts++;
+        }
+    }
+}
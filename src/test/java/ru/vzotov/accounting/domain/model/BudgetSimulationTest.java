@@ -0,0 +1,116 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.junit.jupiter.api.Test;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.calendar.domain.model.Recurrence;
+import ru.vzotov.calendar.domain.model.RecurrenceUnit;
+import ru.vzotov.calendar.domain.model.WorkCalendars;
+import ru.vzotov.domain.model.Money;
+import ru.vzotov.person.domain.model.PersonId;
+
+import javax.script.ScriptException;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BudgetSimulationTest {
+
+    private static final AccountNumber ACCOUNT = new AccountNumber("40817810108290012345");
+
+    private static final BudgetRule RULE = new BudgetRule(
+            BudgetRuleId.nextId(),
+            BudgetRuleType.EXPENSE,
+            null,
+            null,
+            ACCOUNT,
+            null,
+            new Recurrence(LocalDate.of(2020, Month.JANUARY, 1), null, RecurrenceUnit.WEEKLY),
+            "Гипермаркет",
+            Money.rubles(1500.0d)
+    );
+
+    private static List<BudgetBalance> forecast() throws ScriptException {
+        Budget budget = new Budget(BudgetId.nextId(), PersonId.nextId(), "default", Set.of(RULE));
+        return budget.calculate(
+                WorkCalendars.CALENDAR_2020,
+                List.of(new Remain(ACCOUNT, LocalDate.of(2020, Month.FEBRUARY, 28), Money.rubles(10000.0d))),
+                ACCOUNT,
+                LocalDate.of(2020, Month.MARCH, 1),
+                LocalDate.of(2020, Month.MARCH, 31),
+                Collections.emptyList()
+        );
+    }
+
+    @Test
+    public void testWithoutPerturbation() throws ScriptException {
+        final List<BudgetBalance> forecast = forecast();
+        final List<RemainBand> bands = new BudgetSimulation(forecast, ACCOUNT).run(100, 1L, 0.1d, 0.9d);
+
+        assertThat(bands).hasSize(forecast.size());
+        for (int i = 0; i < forecast.size(); i++) {
+            final Remain expected = forecast.get(i).remains().get(0);
+            assertThat(bands.get(i).remain(0.1d).value()).isEqualTo(expected.value());
+            assertThat(bands.get(i).remain(0.9d).value()).isEqualTo(expected.value());
+        }
+    }
+
+    @Test
+    public void testBands() throws ScriptException {
+        final List<BudgetBalance> forecast = forecast();
+        final BudgetSimulation simulation = new BudgetSimulation(forecast, ACCOUNT)
+                .perturb(RULE.ruleId(), new Perturbation(0.2d, 3));
+
+        final List<RemainBand> bands = simulation.run(2000, 42L, 0.1d, 0.5d, 0.9d);
+        assertThat(bands).isEqualTo(simulation.run(2000, 42L, 0.1d, 0.5d, 0.9d));
+
+        final RemainBand last = bands.get(bands.size() - 1);
+        final long p10 = last.remain(0.1d).value().rawAmount();
+        final long p50 = last.remain(0.5d).value().rawAmount();
+        final long p90 = last.remain(0.9d).value().rawAmount();
+        assertThat(p10).isLessThan(p50);
+        assertThat(p50).isLessThan(p90);
+    }
+
+    @Test
+    public void testDateAroundOccurrence() throws ScriptException {
+        final BudgetRule rule = new BudgetRule(
+                BudgetRuleId.nextId(),
+                BudgetRuleType.EXPENSE,
+                null,
+                null,
+                ACCOUNT,
+                null,
+                new Recurrence(LocalDate.of(2020, Month.JANUARY, 1), null, RecurrenceUnit.MONTHLY, 1, 14),
+                "Аренда",
+                Money.rubles(5000.0d)
+        );
+        final Budget budget = new Budget(BudgetId.nextId(), PersonId.nextId(), "default", Set.of(rule));
+        final List<BudgetBalance> forecast = budget.calculate(
+                WorkCalendars.CALENDAR_2020,
+                List.of(new Remain(ACCOUNT, LocalDate.of(2020, Month.FEBRUARY, 28), Money.rubles(10000.0d))),
+                ACCOUNT,
+                LocalDate.of(2020, Month.MARCH, 1),
+                LocalDate.of(2020, Month.MARCH, 31),
+                Collections.emptyList()
+        );
+        final int period = forecast.indexOf(forecast.stream()
+                .filter(b -> b.items().stream().anyMatch(i -> i.rule().equals(rule)))
+                .findFirst().orElseThrow());
+        final BudgetPlan plan = forecast.get(period).items().get(0);
+        assertThat(plan.occurrence()).isEqualTo(LocalDate.of(2020, Month.MARCH, 14));
+        assertThat(plan.occurrence()).isNotEqualTo(plan.date());
+
+        final List<RemainBand> bands = new BudgetSimulation(forecast, ACCOUNT)
+                .perturb(rule.ruleId(), Perturbation.ofDate(1))
+                .run(200, 7L, 0.0d, 1.0d);
+
+        // the payment is moved around March 14 only, so it never leaves for an earlier period
+        for (int i = 0; i < period; i++) {
+            assertThat(bands.get(i).remain(0.0d).value()).isEqualTo(bands.get(i).remain(1.0d).value());
+        }
+    }
+}
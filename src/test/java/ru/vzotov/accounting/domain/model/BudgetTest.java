@@ -19,9 +19,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class BudgetTest {
 
@@ -135,6 +137,246 @@ public class BudgetTest {
         assertThat(result).hasSize(5);
     }
 
+    @Test
+    public void testSnapshot() {
+        final AccountNumber number = new AccountNumber("40817810108290012345");
+        final BudgetRule rule = new BudgetRule(
+                BudgetRuleId.nextId(),
+                BudgetRuleType.EXPENSE,
+                null,
+                null,
+                number,
+                null,
+                new Recurrence(LocalDate.of(2020, Month.JANUARY, 1), null, RecurrenceUnit.WEEKLY),
+                "Гипермаркет",
+                Money.rubles(1500.0d)
+        );
+
+        Budget budget = new Budget(BudgetId.nextId(), PersonId.nextId(), "default", new HashSet<>());
+        BudgetSnapshot empty = budget.snapshot();
+        assertThat(budget.snapshot()).isSameAs(empty);
+
+        budget.addRule(rule);
+        BudgetSnapshot snapshot = budget.snapshot();
+        assertThat(snapshot).isNotSameAs(empty);
+        assertThat(empty.rules()).isEmpty();
+        assertThat(snapshot.rules()).containsExactly(rule);
+
+        budget.deleteRule(rule);
+        assertThat(snapshot.rules()).containsExactly(rule);
+        assertThat(budget.rules()).isEmpty();
+    }
+
+    @Test
+    public void testScenarios() throws ScriptException {
+        final AccountNumber number = new AccountNumber("40817810108290012345");
+        final LocalDate start = LocalDate.of(2020, Month.JANUARY, 1);
+        final BudgetRule food = new BudgetRule(
+                BudgetRuleId.nextId(), BudgetRuleType.EXPENSE, null, null, number, null,
+                new Recurrence(start, null, RecurrenceUnit.WEEKLY), "Гипермаркет", Money.rubles(1500.0d)
+        );
+        final BudgetRule salary = new BudgetRule(
+                BudgetRuleId.nextId(), BudgetRuleType.INCOME, null, null, null, number,
+                new Recurrence(start, null, RecurrenceUnit.MONTHLY, 1, 5), "Заработная плата", Money.rubles(20000.0d)
+        );
+        final Budget budget = new Budget(BudgetId.nextId(), PersonId.nextId(), "default", Set.of(food, salary));
+
+        final BudgetScenario withoutFood = new BudgetScenario("without food", Set.of(food.ruleId()), Set.of());
+        final BudgetScenarios scenarios = new BudgetScenarios(
+                budget.snapshot(),
+                WorkCalendars.CALENDAR_2020,
+                Collections.emptyList(),
+                number,
+                LocalDate.of(2020, Month.MARCH, 1),
+                LocalDate.of(2020, Month.MARCH, 31),
+                Collections.emptyList()
+        );
+
+        final List<BudgetBalance> expected = budget.calculate(
+                WorkCalendars.CALENDAR_2020,
+                Collections.emptyList(),
+                number,
+                LocalDate.of(2020, Month.MARCH, 1),
+                LocalDate.of(2020, Month.MARCH, 31)
+        );
+        final List<BudgetBalance> base = scenarios.base();
+        assertThat(base).hasSameSizeAs(expected);
+        for (int i = 0; i < base.size(); i++) {
+            assertThat(base.get(i).balance()).isEqualTo(expected.get(i).balance());
+            assertThat(base.get(i).remains()).containsExactlyInAnyOrderElementsOf(expected.get(i).remains());
+        }
+
+        final List<BudgetBalance> result = scenarios.evaluate(List.of(withoutFood)).get(withoutFood);
+        assertThat(result).hasSameSizeAs(expected);
+        assertThat(result).allSatisfy(balance -> assertThat(balance.expenses()).isNull());
+        assertThat(result.get(result.size() - 1).remains().get(0).value()).isEqualTo(Money.rubles(20000.0d));
+    }
+
+    @Test
+    public void testScenariosAddedAndModifiedRules() throws ScriptException {
+        final AccountNumber number = new AccountNumber("40817810108290012345");
+        final LocalDate start = LocalDate.of(2020, Month.JANUARY, 1);
+        final BudgetRule food = new BudgetRule(
+                BudgetRuleId.nextId(), BudgetRuleType.EXPENSE, null, null, number, null,
+                new Recurrence(start, null, RecurrenceUnit.WEEKLY), "Гипермаркет", Money.rubles(1500.0d)
+        );
+        final BudgetRule salary = new BudgetRule(
+                BudgetRuleId.nextId(), BudgetRuleType.INCOME, null, null, null, number,
+                new Recurrence(start, null, RecurrenceUnit.MONTHLY, 1, 5), "Заработная плата", Money.rubles(20000.0d)
+        );
+        final BudgetRule bonus = new BudgetRule(
+                BudgetRuleId.nextId(), BudgetRuleType.INCOME, null, null, null, number,
+                new Recurrence(start, null, RecurrenceUnit.MONTHLY, 1, 20), "Премия", Money.rubles(5000.0d)
+        );
+        final BudgetRule cheaperFood = new BudgetRule(
+                food.ruleId(), BudgetRuleType.EXPENSE, null, null, number, null,
+                new Recurrence(start, null, RecurrenceUnit.WEEKLY), "Гипермаркет", Money.rubles(500.0d)
+        );
+        final Budget budget = new Budget(BudgetId.nextId(), PersonId.nextId(), "default", Set.of(food, salary));
+
+        final BudgetScenario withBonus = new BudgetScenario("with bonus", Set.of(), Set.of(bonus));
+        final BudgetScenario withCheaperFood = new BudgetScenario("cheaper food", Set.of(food.ruleId()), Set.of(cheaperFood));
+        final BudgetScenarios scenarios = new BudgetScenarios(
+                budget.snapshot(),
+                WorkCalendars.CALENDAR_2020,
+                Collections.emptyList(),
+                number,
+                LocalDate.of(2020, Month.MARCH, 1),
+                LocalDate.of(2020, Month.MARCH, 31),
+                Collections.emptyList()
+        );
+
+        final Map<BudgetScenario, List<BudgetBalance>> result = scenarios.evaluate(List.of(withBonus, withCheaperFood));
+        assertThat(result.keySet()).containsExactly(withBonus, withCheaperFood);
+        assertSameForecast(result.get(withBonus), forecast(Set.of(food, salary, bonus), number));
+        assertSameForecast(result.get(withCheaperFood), forecast(Set.of(cheaperFood, salary), number));
+
+        final List<BudgetBalance> base = scenarios.base();
+        assertThat(result.get(withCheaperFood).get(base.size() - 1).remains().get(0).value())
+                .isNotEqualTo(base.get(base.size() - 1).remains().get(0).value());
+    }
+
+    @Test
+    public void testScenariosDisabledRule() throws ScriptException {
+        final AccountNumber number = new AccountNumber("40817810108290012345");
+        final LocalDate start = LocalDate.of(2020, Month.JANUARY, 1);
+        final BudgetRule food = new BudgetRule(
+                BudgetRuleId.nextId(), BudgetRuleType.EXPENSE, null, null, number, null,
+                new Recurrence(start, null, RecurrenceUnit.WEEKLY), "Гипермаркет", Money.rubles(1500.0d)
+        );
+        final BudgetRule salary = new BudgetRule(
+                BudgetRuleId.nextId(), BudgetRuleType.INCOME, null, null, null, number,
+                new Recurrence(start, null, RecurrenceUnit.MONTHLY, 1, 5), "Заработная плата", Money.rubles(20000.0d)
+        );
+        // equal to the food rule except for the enabled flag
+        final BudgetRule disabledFood = new BudgetRule(
+                food.ruleId(), BudgetRuleType.EXPENSE, null, null, number, null,
+                new Recurrence(start, null, RecurrenceUnit.WEEKLY), "Гипермаркет", Money.rubles(1500.0d), null, false
+        );
+        final Budget budget = new Budget(BudgetId.nextId(), PersonId.nextId(), "default", Set.of(food, salary));
+
+        final BudgetScenario withoutFood = new BudgetScenario("food disabled", Set.of(food.ruleId()), Set.of(disabledFood));
+        final BudgetScenarios scenarios = new BudgetScenarios(
+                budget.snapshot(),
+                WorkCalendars.CALENDAR_2020,
+                Collections.emptyList(),
+                number,
+                LocalDate.of(2020, Month.MARCH, 1),
+                LocalDate.of(2020, Month.MARCH, 31),
+                Collections.emptyList()
+        );
+
+        final List<BudgetBalance> result = scenarios.evaluate(List.of(withoutFood)).get(withoutFood);
+        assertSameForecast(result, forecast(Set.of(disabledFood, salary), number));
+        assertThat(result).allSatisfy(balance -> assertThat(balance.expenses()).isNull());
+        assertThat(scenarios.base()).anySatisfy(balance -> assertThat(balance.expenses()).isNotNull());
+    }
+
+    @Test
+    public void testScenariosScriptError() throws ScriptException {
+        final AccountNumber number = new AccountNumber("40817810108290012345");
+        final LocalDate start = LocalDate.of(2020, Month.JANUARY, 1);
+        final Budget budget = new Budget(BudgetId.nextId(), PersonId.nextId(), "default", Set.of(new BudgetRule(
+                BudgetRuleId.nextId(), BudgetRuleType.EXPENSE, null, null, number, null,
+                new Recurrence(start, null, RecurrenceUnit.WEEKLY), "Гипермаркет", Money.rubles(1500.0d)
+        )));
+        final Set<BudgetRule> added = new HashSet<>();
+        for (int i = 1; i <= 8; i++) {
+            added.add(new BudgetRule(
+                    BudgetRuleId.nextId(), BudgetRuleType.EXPENSE, null, null, number, null,
+                    new Recurrence(start, null, RecurrenceUnit.MONTHLY, 1, i), "Расход " + i, Money.rubles(100.0d * i)
+            ));
+        }
+        added.add(new BudgetRule(
+                BudgetRuleId.nextId(), BudgetRuleType.EXPENSE, null, null, number, null,
+                new Recurrence(start, null, RecurrenceUnit.MONTHLY, 1, 10), "Ошибка", Money.rubles(100.0d),
+                new Calculation("throw new Error('broken');")
+        ));
+        final BudgetScenarios scenarios = new BudgetScenarios(
+                budget.snapshot(),
+                WorkCalendars.CALENDAR_2020,
+                Collections.emptyList(),
+                number,
+                LocalDate.of(2020, Month.MARCH, 1),
+                LocalDate.of(2020, Month.MARCH, 31),
+                Collections.emptyList()
+        );
+
+        assertThatThrownBy(() -> scenarios.evaluate(List.of(new BudgetScenario("broken", Set.of(), added))))
+                .isInstanceOf(ScriptException.class);
+    }
+
+    private static List<BudgetBalance> forecast(Set<BudgetRule> rules, AccountNumber number) throws ScriptException {
+        return new Budget(BudgetId.nextId(), PersonId.nextId(), "expected", rules).calculate(
+                WorkCalendars.CALENDAR_2020,
+                Collections.emptyList(),
+                number,
+                LocalDate.of(2020, Month.MARCH, 1),
+                LocalDate.of(2020, Month.MARCH, 31)
+        );
+    }
+
+    private static void assertSameForecast(List<BudgetBalance> actual, List<BudgetBalance> expected) {
+        assertThat(actual).hasSameSizeAs(expected);
+        for (int i = 0; i < actual.size(); i++) {
+            assertThat(actual.get(i).balance()).isEqualTo(expected.get(i).balance());
+            assertThat(actual.get(i).remains()).containsExactlyInAnyOrderElementsOf(expected.get(i).remains());
+        }
+    }
+
+    @Test
+    public void testExplain() throws ScriptException {
+        final AccountNumber number = new AccountNumber("40817810108290012345");
+        final BudgetRule rule = new BudgetRule(
+                BudgetRuleId.nextId(), BudgetRuleType.EXPENSE, null, null, number, null,
+                new Recurrence(LocalDate.of(2020, Month.JANUARY, 1), null, RecurrenceUnit.WEEKLY), "Гипермаркет", Money.rubles(1500.0d)
+        );
+        final Budget budget = new Budget(BudgetId.nextId(), PersonId.nextId(), "default", Set.of(rule));
+
+        final BudgetForecast forecast = budget.explain(
+                WorkCalendars.CALENDAR_2020,
+                Collections.emptyList(),
+                number,
+                LocalDate.of(2020, Month.MARCH, 1),
+                LocalDate.of(2020, Month.MARCH, 31),
+                Collections.emptyList()
+        );
+
+        assertThat(forecast.balances()).hasSize(5);
+        assertThat(forecast.profile().periods()).hasSize(5);
+        assertThat(forecast.profile().rules()).hasSize(1);
+        final BudgetProfile.RuleProfile profile = forecast.profile().rules().get(0);
+        assertThat(profile.rule()).isEqualTo(rule);
+        assertThat(profile.checks()).isEqualTo(31);
+        assertThat(profile.occurrences()).isEqualTo(forecast.balances().stream().filter(b -> !b.items().isEmpty()).count());
+        assertThat(profile.scripts()).isZero();
+        assertThat(forecast.profile().periods())
+                .allSatisfy(period -> assertThat(period.nanos(BudgetMetrics.Phase.BUCKETING)).isZero());
+        assertThat(forecast.profile().toString())
+                .contains("Bucketing of operations:")
+                .doesNotContain("bucketing, ms");
+    }
+
     @Test
     public void testRecurrenceNth() {
         Recurrence recurrence = new Recurrence(LocalDate.of(2020, Month.JANUARY, 2), LocalDate.of(2020, Month.MARCH, 31), RecurrenceUnit.WEEKLY, 3, 3);
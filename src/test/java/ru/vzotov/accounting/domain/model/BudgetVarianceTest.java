@@ -0,0 +1,220 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.BankRecord;
+import ru.vzotov.banking.domain.model.BudgetCategoryId;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.banking.domain.model.OperationType;
+import ru.vzotov.calendar.domain.model.Recurrence;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BudgetVarianceTest {
+
+    private static final AccountNumber ACCOUNT = new AccountNumber("40817810108290012345");
+    private static final AccountNumber OTHER_ACCOUNT = new AccountNumber("40817810108290054321");
+    private static final Currency USD = Currency.getInstance("USD");
+
+    private static final BudgetCategoryId FOOD = BudgetCategoryId.of("food");
+    private static final BudgetCategoryId RENT = BudgetCategoryId.of("rent");
+    private static final BudgetCategoryId TRAVEL = BudgetCategoryId.of("travel");
+
+    private static final LocalDate FIRST_FROM = LocalDate.of(2020, Month.MARCH, 1);
+    private static final LocalDate FIRST_TO = LocalDate.of(2020, Month.MARCH, 7);
+    private static final LocalDate SECOND_FROM = LocalDate.of(2020, Month.MARCH, 8);
+    private static final LocalDate SECOND_TO = LocalDate.of(2020, Month.MARCH, 14);
+
+    private final Map<BankRecord<?>, BudgetCategoryId> categories = new HashMap<>();
+
+    private BudgetRule food;
+    private BudgetRule cafe;
+    private BudgetRule rent;
+    private BudgetRule salary;
+    private List<BudgetBalance> forecast;
+
+    @BeforeEach
+    public void setUp() {
+        food = rule(BudgetRuleType.EXPENSE, FOOD, "Гипермаркет", 1000.0d);
+        cafe = rule(BudgetRuleType.EXPENSE, FOOD, "Кафе", 1010.0d);
+        rent = rule(BudgetRuleType.EXPENSE, RENT, "Аренда", 1040.0d);
+        salary = rule(BudgetRuleType.INCOME, null, "Заработная плата", 20000.0d);
+        forecast = List.of(
+                new BudgetBalance(FIRST_FROM, FIRST_TO, List.of(
+                        plan(food, BudgetDirection.EXPENSE),
+                        plan(cafe, BudgetDirection.EXPENSE),
+                        plan(rent, BudgetDirection.EXPENSE),
+                        plan(salary, BudgetDirection.INCOME)
+                ), List.of(), List.of()),
+                new BudgetBalance(SECOND_FROM, SECOND_TO, List.of(
+                        plan(food, BudgetDirection.EXPENSE)
+                ), List.of(), List.of())
+        );
+    }
+
+    @Test
+    public void testByRule() {
+        final BudgetVariance variance = variance(Money.rubles(50.0d), 0d);
+
+        assertThat(variance.byRule()).containsExactly(
+                new Variance(FIRST_FROM, FIRST_TO, food, FOOD, Money.rubles(1000.0d), Money.rubles(0.0d)),
+                new Variance(FIRST_FROM, FIRST_TO, cafe, FOOD, Money.rubles(1010.0d), Money.rubles(1008.0d)),
+                new Variance(FIRST_FROM, FIRST_TO, rent, RENT, Money.rubles(1040.0d), Money.rubles(1005.0d)),
+                new Variance(FIRST_FROM, FIRST_TO, salary, null, Money.rubles(20000.0d), Money.rubles(20000.0d)),
+                new Variance(FIRST_FROM, FIRST_TO, null, TRAVEL, Money.ofRaw(0L, USD), Money.ofRaw(100000L, USD)),
+                new Variance(FIRST_FROM, FIRST_TO, null, FOOD, Money.rubles(0.0d), Money.rubles(1300.0d)),
+                new Variance(FIRST_FROM, FIRST_TO, null, null, Money.rubles(0.0d), Money.rubles(500.0d)),
+                new Variance(SECOND_FROM, SECOND_TO, food, FOOD, Money.rubles(1000.0d), Money.rubles(990.0d))
+        );
+    }
+
+    @Test
+    public void testByCategory() {
+        final BudgetVariance variance = variance(Money.rubles(50.0d), 0d);
+
+        assertThat(variance.byCategory()).containsExactly(
+                new Variance(FIRST_FROM, FIRST_TO, null, FOOD, Money.rubles(2010.0d), Money.rubles(2308.0d)),
+                new Variance(FIRST_FROM, FIRST_TO, null, RENT, Money.rubles(1040.0d), Money.rubles(1005.0d)),
+                new Variance(FIRST_FROM, FIRST_TO, null, null, Money.rubles(20000.0d), Money.rubles(20500.0d)),
+                new Variance(FIRST_FROM, FIRST_TO, null, TRAVEL, Money.ofRaw(0L, USD), Money.ofRaw(100000L, USD)),
+                new Variance(SECOND_FROM, SECOND_TO, null, FOOD, Money.rubles(1000.0d), Money.rubles(990.0d))
+        );
+    }
+
+    @Test
+    public void testByCategoryCurrencies() {
+        final BudgetVariance variance = variance(Money.rubles(50.0d), 0d);
+        final Operation usd = new Operation(new OperationId("op-8"), FIRST_FROM.plusDays(3), Money.ofRaw(50000L, USD),
+                OperationType.WITHDRAW, ACCOUNT, "usd food");
+        categories.put(usd, FOOD);
+        assertThat(variance.add(usd)).isTrue();
+
+        assertThat(variance.byCategory()).containsExactly(
+                new Variance(FIRST_FROM, FIRST_TO, null, FOOD, Money.rubles(2010.0d), Money.rubles(2308.0d)),
+                new Variance(FIRST_FROM, FIRST_TO, null, RENT, Money.rubles(1040.0d), Money.rubles(1005.0d)),
+                new Variance(FIRST_FROM, FIRST_TO, null, null, Money.rubles(20000.0d), Money.rubles(20500.0d)),
+                new Variance(FIRST_FROM, FIRST_TO, null, TRAVEL, Money.ofRaw(0L, USD), Money.ofRaw(100000L, USD)),
+                new Variance(FIRST_FROM, FIRST_TO, null, FOOD, Money.ofRaw(0L, USD), Money.ofRaw(50000L, USD)),
+                new Variance(SECOND_FROM, SECOND_TO, null, FOOD, Money.rubles(1000.0d), Money.rubles(990.0d))
+        );
+        assertThat(variance.byRule()).contains(
+                new Variance(FIRST_FROM, FIRST_TO, null, FOOD, Money.rubles(0.0d), Money.rubles(1300.0d)),
+                new Variance(FIRST_FROM, FIRST_TO, null, FOOD, Money.ofRaw(0L, USD), Money.ofRaw(50000L, USD))
+        );
+    }
+
+    @Test
+    public void testRelativeTolerance() {
+        final BudgetVariance variance = new BudgetVariance(forecast, ACCOUNT, Money.rubles(0.0d), 0.1d, categories::get);
+
+        // 1040 * 0.1 = 104, so rent is matched while food items are out of tolerance
+        assertThat(variance.add(operation("op-1", 2, 1140.0d, OperationType.WITHDRAW, RENT))).isTrue();
+        // 1000 * 0.1 = 100, so the second period food is not matched
+        assertThat(variance.add(operation("op-2", 9, 1101.0d, OperationType.WITHDRAW, FOOD))).isTrue();
+
+        assertThat(variance.byRule()).contains(
+                new Variance(FIRST_FROM, FIRST_TO, rent, RENT, Money.rubles(1040.0d), Money.rubles(1140.0d)),
+                new Variance(SECOND_FROM, SECOND_TO, food, FOOD, Money.rubles(1000.0d), Money.rubles(0.0d)),
+                new Variance(SECOND_FROM, SECOND_TO, null, FOOD, Money.rubles(0.0d), Money.rubles(1101.0d))
+        );
+    }
+
+    @Test
+    public void testAdd() {
+        final BudgetVariance variance = new BudgetVariance(forecast, ACCOUNT, Money.rubles(50.0d), 0d, categories::get);
+
+        assertThat(variance.add(operation("op-0", 0, 1000.0d, OperationType.WITHDRAW, FOOD))).isFalse();
+        assertThat(variance.add(operation("op-15", 15, 1000.0d, OperationType.WITHDRAW, FOOD))).isFalse();
+
+        assertThat(variance.add(operation("op-1", 2, 1000.0d, OperationType.WITHDRAW, FOOD))).isTrue();
+        assertThat(variance.byRule()).contains(
+                new Variance(FIRST_FROM, FIRST_TO, food, FOOD, Money.rubles(1000.0d), Money.rubles(1000.0d)),
+                new Variance(FIRST_FROM, FIRST_TO, cafe, FOOD, Money.rubles(1010.0d), Money.rubles(0.0d))
+        );
+
+        // food is already matched, so the same amount goes to the next closest plan item
+        assertThat(variance.add(operation("op-2", 3, 1000.0d, OperationType.WITHDRAW, FOOD))).isTrue();
+        assertThat(variance.byRule()).contains(
+                new Variance(FIRST_FROM, FIRST_TO, food, FOOD, Money.rubles(1000.0d), Money.rubles(1000.0d)),
+                new Variance(FIRST_FROM, FIRST_TO, cafe, FOOD, Money.rubles(1010.0d), Money.rubles(1000.0d))
+        );
+
+        // both food items are matched and rent is of another category
+        assertThat(variance.add(operation("op-3", 4, 1020.0d, OperationType.WITHDRAW, FOOD))).isTrue();
+        assertThat(variance.byRule()).contains(
+                new Variance(FIRST_FROM, FIRST_TO, rent, RENT, Money.rubles(1040.0d), Money.rubles(0.0d)),
+                new Variance(FIRST_FROM, FIRST_TO, null, FOOD, Money.rubles(0.0d), Money.rubles(1020.0d))
+        );
+    }
+
+    @Test
+    public void testMove() {
+        final BudgetRule move = new BudgetRule(BudgetRuleId.nextId(), BudgetRuleType.MOVE, null, null,
+                ACCOUNT, OTHER_ACCOUNT, new Recurrence(FIRST_FROM), "Перевод", Money.rubles(3000.0d));
+        final BudgetVariance variance = new BudgetVariance(List.of(
+                new BudgetBalance(FIRST_FROM, FIRST_TO, List.of(plan(move, BudgetDirection.MOVE)), List.of(), List.of())
+        ), ACCOUNT, Money.rubles(0.0d), 0d, categories::get);
+
+        variance.add(new Operation(new OperationId("op-1"), FIRST_FROM.plusDays(1), Money.rubles(3000.0d),
+                OperationType.WITHDRAW, ACCOUNT, "withdraw"));
+        variance.add(new Operation(new OperationId("op-2"), FIRST_FROM.plusDays(1), Money.rubles(3000.0d),
+                OperationType.DEPOSIT, OTHER_ACCOUNT, "deposit"));
+
+        assertThat(variance.byRule()).containsExactly(
+                new Variance(FIRST_FROM, FIRST_TO, move, null, Money.rubles(3000.0d), Money.rubles(3000.0d)),
+                new Variance(FIRST_FROM, FIRST_TO, null, null, Money.rubles(0.0d), Money.rubles(3000.0d))
+        );
+    }
+
+    private BudgetVariance variance(Money absoluteTolerance, double relativeTolerance) {
+        final BudgetVariance variance = new BudgetVariance(forecast, ACCOUNT, absoluteTolerance, relativeTolerance, categories::get);
+        final Operation usd = new Operation(new OperationId("op-2"), FIRST_FROM.plusDays(2), Money.ofRaw(100000L, USD),
+                OperationType.WITHDRAW, ACCOUNT, "usd");
+        categories.put(usd, TRAVEL);
+        variance.addAll(List.of(
+                // closest amounts belong to food items, rent is matched by category
+                operation("op-1", 2, 1005.0d, OperationType.WITHDRAW, RENT),
+                // no plan items in this currency
+                usd,
+                // category is unknown, so the closest amount is matched
+                operation("op-3", 4, 1008.0d, OperationType.WITHDRAW, null),
+                // out of tolerance
+                operation("op-4", 5, 1300.0d, OperationType.WITHDRAW, FOOD),
+                operation("op-5", 5, 20000.0d, OperationType.DEPOSIT, null),
+                // no plan items for the account
+                new Operation(new OperationId("op-6"), FIRST_FROM.plusDays(5), Money.rubles(500.0d),
+                        OperationType.WITHDRAW, OTHER_ACCOUNT, "other"),
+                operation("op-7", 9, 990.0d, OperationType.WITHDRAW, FOOD)
+        ));
+        return variance;
+    }
+
+    private Operation operation(String id, int day, double amount, OperationType type, BudgetCategoryId category) {
+        final Operation operation = new Operation(new OperationId(id), FIRST_FROM.plusDays(day - 1),
+                Money.rubles(amount), type, ACCOUNT, id);
+        if (category != null) categories.put(operation, category);
+        return operation;
+    }
+
+    private static BudgetRule rule(BudgetRuleType type, BudgetCategoryId category, String name, double value) {
+        return new BudgetRule(BudgetRuleId.nextId(), type, category, null,
+                type == BudgetRuleType.EXPENSE ? ACCOUNT : null,
+                type == BudgetRuleType.INCOME ? ACCOUNT : null,
+                new Recurrence(FIRST_FROM), name, Money.rubles(value));
+    }
+
+    private static BudgetPlan plan(BudgetRule rule, BudgetDirection direction) {
+        return new BudgetPlan(BudgetPlanId.nextId(), rule, FIRST_FROM, direction, rule.value(),
+                rule.sourceAccount(), rule.targetAccount(), rule.categoryId(), null);
+    }
+}
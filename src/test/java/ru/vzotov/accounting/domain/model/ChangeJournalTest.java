@@ -0,0 +1,185 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.junit.jupiter.api.Test;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.BudgetCategoryId;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.calendar.domain.model.Recurrence;
+import ru.vzotov.calendar.domain.model.RecurrenceUnit;
+import ru.vzotov.domain.model.Money;
+import ru.vzotov.person.domain.model.PersonId;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class ChangeJournalTest {
+
+    private static final PersonId OWNER = new PersonId("user");
+
+    @Test
+    public void testDeals() {
+        final ChangeJournal journal = new ChangeJournal();
+        final List<List<DomainChange>> batches = new ArrayList<>();
+        journal.subscribe(batches::add);
+
+        final DealIndex index = new DealIndex();
+        final Deal target = new Deal(new DealId("target"), OWNER, LocalDate.of(2021, 12, 10), Money.kopecks(100));
+        final Deal source = new Deal(new DealId("source"), OWNER, LocalDate.of(2021, 12, 11), Money.kopecks(200),
+                null, null, null,
+                Collections.emptySet(), Collections.singleton(new OperationId("op1")), Collections.emptySet(), Collections.emptyList());
+        index.register(target);
+        index.register(source);
+        target.setListener(DealListener.compose(index, journal));
+        source.setListener(DealListener.compose(index, journal));
+
+        target.addOperation(new OperationId("op2"));
+        target.assignCategory(BudgetCategoryId.of("food"));
+        target.join(source);
+
+        assertThat(journal.lastSequence()).isEqualTo(5);
+        assertThat(journal.read(1, 10)).extracting(DomainChange::type).containsExactly(
+                DomainChange.Type.DEAL_OPERATION_ADDED,
+                DomainChange.Type.DEAL_CATEGORY_ASSIGNED,
+                DomainChange.Type.DEAL_OPERATION_REMOVED,
+                DomainChange.Type.DEAL_OPERATION_ADDED,
+                DomainChange.Type.DEAL_JOINED);
+        assertThat(journal.read(5, 10)).singleElement().satisfies(change -> {
+            assertThat(change.sequence()).isEqualTo(5);
+            assertThat(change.aggregate()).isEqualTo(target.dealId());
+            assertThat(change.subject()).isEqualTo(source.dealId());
+        });
+        assertThat(batches).hasSize(5);
+        assertThat(index.ownerOf(new OperationId("op1"))).isEqualTo(target.dealId());
+
+        journal.truncate(4);
+        assertThat(journal.read(4, 10)).hasSize(2);
+        assertThatThrownBy(() -> journal.read(1, 10)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testRejectedAddition() {
+        final ChangeJournal journal = new ChangeJournal();
+        final DealIndex index = new DealIndex();
+        final OperationId operation = new OperationId("op1");
+        final Deal first = new Deal(new DealId("first"), OWNER, LocalDate.of(2021, 12, 10), Money.kopecks(100),
+                null, null, null,
+                Collections.emptySet(), Collections.singleton(operation), Collections.emptySet(), Collections.emptyList());
+        final Deal second = new Deal(new DealId("second"), OWNER, LocalDate.of(2021, 12, 11), Money.kopecks(200));
+        first.setListener(journal);
+        second.setListener(journal);
+        index.register(first);
+        index.register(second);
+        second.setListener(DealListener.compose(journal, index));
+
+        assertThatThrownBy(() -> second.addOperation(operation)).isInstanceOf(IllegalStateException.class);
+        assertThat(second.operations()).isEmpty();
+        assertThat(journal.lastSequence()).isZero();
+
+        first.moveOperation(operation, second);
+        assertThat(journal.read(1, 10)).extracting(DomainChange::type, DomainChange::aggregate).containsExactly(
+                tuple(DomainChange.Type.DEAL_OPERATION_REMOVED, first.dealId()),
+                tuple(DomainChange.Type.DEAL_OPERATION_ADDED, second.dealId()));
+    }
+
+    @Test
+    public void testSubscriberChangesDeal() throws Exception {
+        final ChangeJournal journal = new ChangeJournal();
+        final Deal deal = new Deal(new DealId("deal"), OWNER, LocalDate.of(2021, 12, 10), Money.kopecks(100));
+        deal.setListener(journal);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final List<DomainChange> delivered = new ArrayList<>();
+        journal.subscribe(changes -> {
+            delivered.addAll(changes);
+            if (delivered.size() == 1) {
+                // the change is delivered after the lock of the deal is released, so another thread may change it
+                try {
+                    executor.submit(() -> deal.assignCategory(BudgetCategoryId.of("food"))).get(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+
+        deal.addOperation(new OperationId("op1"));
+        executor.shutdown();
+
+        assertThat(delivered).extracting(DomainChange::sequence, DomainChange::type).containsExactly(
+                tuple(1L, DomainChange.Type.DEAL_OPERATION_ADDED),
+                tuple(2L, DomainChange.Type.DEAL_CATEGORY_ASSIGNED));
+    }
+
+    @Test
+    public void testBatch() {
+        final ChangeJournal journal = new ChangeJournal();
+        final List<List<DomainChange>> batches = new ArrayList<>();
+        journal.subscribe(batches::add);
+
+        final Budget budget = new Budget(BudgetId.nextId(), PersonId.nextId(), "default", new HashSet<>());
+        final BudgetRule rule = new BudgetRule(
+                BudgetRuleId.nextId(),
+                BudgetRuleType.EXPENSE,
+                null,
+                null,
+                new AccountNumber("40817810108290012345"),
+                null,
+                new Recurrence(LocalDate.of(2020, 1, 1), null, RecurrenceUnit.MONTHLY, 1, 5),
+                "Rent",
+                Money.rubles(30000.0d)
+        );
+
+        final ChangeJournal.Batch batch = journal.batch();
+        budget.setListener(batch);
+        budget.addRule(rule);
+        budget.deleteRule(rule);
+        assertThat(batch.size()).isEqualTo(2);
+        assertThat(journal.lastSequence()).isZero();
+
+        batch.commit();
+        assertThat(batch.size()).isZero();
+        assertThat(batches).singleElement().satisfies(changes -> assertThat(changes)
+                .extracting(DomainChange::type, DomainChange::sequence, DomainChange::subject)
+                .containsExactly(
+                        tuple(DomainChange.Type.BUDGET_RULE_ADDED, 1L, rule.ruleId()),
+                        tuple(DomainChange.Type.BUDGET_RULE_DELETED, 2L, rule.ruleId())));
+    }
+
+    @Test
+    public void testUnchangedRules() {
+        final ChangeJournal journal = new ChangeJournal();
+        final Budget budget = new Budget(BudgetId.nextId(), PersonId.nextId(), "default", new HashSet<>());
+        final BudgetRule rule = new BudgetRule(
+                BudgetRuleId.nextId(),
+                BudgetRuleType.EXPENSE,
+                null,
+                null,
+                new AccountNumber("40817810108290012345"),
+                null,
+                new Recurrence(LocalDate.of(2020, 1, 1), null, RecurrenceUnit.MONTHLY, 1, 5),
+                "Rent",
+                Money.rubles(30000.0d)
+        );
+        budget.setListener(journal);
+
+        budget.deleteRule(rule);
+        budget.addRule(rule);
+        final BudgetSnapshot snapshot = budget.snapshot();
+        budget.addRule(rule);
+        assertThat(budget.snapshot()).isSameAs(snapshot);
+        budget.deleteRule(rule);
+        budget.deleteRule(rule);
+
+        assertThat(journal.read(1, 10)).extracting(DomainChange::type).containsExactly(
+                DomainChange.Type.BUDGET_RULE_ADDED,
+                DomainChange.Type.BUDGET_RULE_DELETED);
+    }
+}
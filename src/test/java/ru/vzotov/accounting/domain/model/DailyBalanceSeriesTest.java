@@ -0,0 +1,60 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.junit.jupiter.api.Test;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.banking.domain.model.OperationType;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DailyBalanceSeriesTest {
+
+    private static final AccountNumber CARD = new AccountNumber("40817810108290012345");
+    private static final AccountNumber SAVINGS = new AccountNumber("40817810108290054321");
+
+    private static Operation operation(String id, AccountNumber account, LocalDate date, double amount, OperationType type) {
+        return new Operation(new OperationId(id), date, Money.rubles(amount), type, account, id);
+    }
+
+    @Test
+    public void testSeries() {
+        final LocalDate from = LocalDate.of(2020, Month.MARCH, 1);
+        final LocalDate to = LocalDate.of(2020, Month.MARCH, 31);
+        final List<Remain> remains = List.of(
+                new Remain(CARD, LocalDate.of(2020, Month.FEBRUARY, 1), Money.rubles(100.0d)),
+                new Remain(SAVINGS, from, Money.rubles(1000.0d))
+        );
+        final List<Operation> operations = List.of(
+                operation("op-1", CARD, LocalDate.of(2020, Month.JANUARY, 20), 500.0d, OperationType.WITHDRAW),
+                operation("op-2", CARD, LocalDate.of(2020, Month.FEBRUARY, 10), 30.0d, OperationType.WITHDRAW),
+                operation("op-3", CARD, LocalDate.of(2020, Month.MARCH, 1), 10.0d, OperationType.WITHDRAW),
+                operation("op-4", CARD, LocalDate.of(2020, Month.MARCH, 15), 50.0d, OperationType.DEPOSIT),
+                operation("op-5", SAVINGS, LocalDate.of(2020, Month.MARCH, 15), 50.0d, OperationType.WITHDRAW),
+                operation("op-6", SAVINGS, LocalDate.of(2020, Month.APRIL, 1), 70.0d, OperationType.WITHDRAW)
+        );
+
+        final DailyBalanceSeries series = DailyBalanceSeries.of(from, to, remains, operations, Collections.emptyList(), CARD);
+
+        assertThat(series.days()).isEqualTo(31);
+        assertThat(series.accounts()).containsExactlyInAnyOrder(CARD, SAVINGS);
+        assertThat(series.value(CARD, from)).isEqualTo(Money.rubles(60.0d));
+        assertThat(series.value(CARD, LocalDate.of(2020, Month.MARCH, 14))).isEqualTo(Money.rubles(60.0d));
+        assertThat(series.value(CARD, to))
+                .isEqualTo(Money.rubles(110.0d))
+                .isEqualTo(new Balance(remains.get(0), operations.subList(1, 4)).value());
+        assertThat(series.value(SAVINGS, from)).isEqualTo(Money.rubles(1000.0d));
+        assertThat(series.remain(SAVINGS, to)).isEqualTo(new Remain(SAVINGS, to, Money.rubles(950.0d)));
+        assertThat(series.rawValues(SAVINGS)).hasSize(31);
+
+        assertThatThrownBy(() -> series.value(CARD, LocalDate.of(2020, Month.APRIL, 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
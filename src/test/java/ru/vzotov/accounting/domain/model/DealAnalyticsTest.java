@@ -0,0 +1,57 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.junit.jupiter.api.Test;
+import ru.vzotov.banking.domain.model.BudgetCategoryId;
+import ru.vzotov.domain.model.Money;
+import ru.vzotov.person.domain.model.PersonId;
+import ru.vzotov.purchase.domain.model.PurchaseId;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DealAnalyticsTest {
+
+    private static final PersonId ALICE = new PersonId("alice");
+    private static final PersonId BOB = new PersonId("bob");
+    private static final BudgetCategoryId FOOD = BudgetCategoryId.of("food");
+    private static final BudgetCategoryId RENT = BudgetCategoryId.of("rent");
+
+    private static Deal deal(PersonId owner, LocalDate date, long kopecks, BudgetCategoryId category) {
+        return new Deal(DealId.nextId(), owner, date, Money.kopecks(kopecks), null, null, category);
+    }
+
+    @Test
+    public void testAggregates() {
+        final List<Deal> deals = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            deals.add(deal(i % 2 == 0 ? ALICE : BOB, LocalDate.of(2021, Month.JANUARY, 1 + i % 31), 100, FOOD));
+        }
+        deals.add(deal(ALICE, LocalDate.of(2021, Month.JANUARY, 5), 150000, RENT));
+        final Deal withPurchase = deal(BOB, LocalDate.of(2021, Month.FEBRUARY, 3), 300, null);
+        withPurchase.addPurchase(new PurchaseId("purchase1"));
+        deals.add(withPurchase);
+
+        final DealAnalytics analytics = DealAnalytics.of(Money.kopecks(0).currency(), deals);
+
+        assertThat(analytics.total().count()).isEqualTo(1002);
+        assertThat(analytics.total().sum()).isEqualTo(Money.kopecks(100000 + 150000 + 300));
+        assertThat(analytics.byCategory().get(FOOD).sum()).isEqualTo(Money.kopecks(100000));
+        assertThat(analytics.byCategory().get(null).count()).isEqualTo(1);
+        assertThat(analytics.byMonth().get(YearMonth.of(2021, Month.FEBRUARY)).sum()).isEqualTo(Money.kopecks(300));
+        assertThat(analytics.byOwner().get(ALICE).count()).isEqualTo(501);
+        assertThat(analytics.withPurchases().count()).isEqualTo(1);
+        assertThat(analytics.withoutPurchases().count()).isEqualTo(1001);
+        assertThat(analytics.topCategories(1)).extracting(e -> e.getKey()).containsExactly(RENT);
+        assertThat(analytics.topCategories(YearMonth.of(2021, Month.FEBRUARY), 5)).extracting(e -> e.getKey()).containsExactly((BudgetCategoryId) null);
+
+        analytics.addAll(List.of(deal(BOB, LocalDate.of(2021, Month.FEBRUARY, 10), 200000, FOOD)));
+        assertThat(analytics.byCategory(YearMonth.of(2021, Month.FEBRUARY)).get(FOOD).sum()).isEqualTo(Money.kopecks(200000));
+        assertThat(analytics.topCategories(1)).extracting(e -> e.getKey()).containsExactly(FOOD);
+        assertThat(analytics.total().count()).isEqualTo(1003);
+    }
+}
@@ -0,0 +1,55 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.junit.jupiter.api.Test;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.cashreceipt.domain.model.ReceiptId;
+import ru.vzotov.domain.model.Money;
+import ru.vzotov.person.domain.model.PersonId;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DealMatcherTest {
+
+    private static final PersonId OWNER = new PersonId("user");
+
+    @Test
+    public void testMatch() {
+        final LocalDate date = LocalDate.of(2021, Month.DECEMBER, 10);
+        final List<DealMatcher.Record> records = List.of(
+                DealMatcher.Record.operation(new OperationId("op1"), date, Money.rubles(100.0d)),
+                DealMatcher.Record.receipt(new ReceiptId("receipt1"), date.plusDays(1), Money.rubles(100.0d)),
+                // amount is out of tolerance
+                DealMatcher.Record.operation(new OperationId("op2"), date, Money.rubles(250.0d)),
+                DealMatcher.Record.receipt(new ReceiptId("receipt2"), date, Money.rubles(252.0d)),
+                // date is out of tolerance
+                DealMatcher.Record.operation(new OperationId("op3"), date, Money.rubles(500.0d)),
+                DealMatcher.Record.receipt(new ReceiptId("receipt3"), date.plusDays(5), Money.rubles(500.0d)),
+                // two receipts for one operation
+                DealMatcher.Record.operation(new OperationId("op4"), date.plusDays(2), Money.rubles(700.0d)),
+                DealMatcher.Record.receipt(new ReceiptId("receipt4"), date.plusDays(2), Money.rubles(700.5d)),
+                DealMatcher.Record.receipt(new ReceiptId("receipt5"), date.plusDays(3), Money.rubles(699.5d))
+        );
+
+        final DealMatcher matcher = new DealMatcher(2, Money.rubles(1.0d));
+        final List<DealMatcher.Match> matches = matcher.match(records);
+
+        assertThat(matches).hasSize(2);
+        assertThat(matches.get(0).operations()).containsExactly(new OperationId("op1"));
+        assertThat(matches.get(0).receipts()).hasSize(1);
+        assertThat(matches.get(0).date()).isEqualTo(date);
+        assertThat(matches.get(0).isAmbiguous()).isFalse();
+        assertThat(matches.get(1).operations()).containsExactly(new OperationId("op4"));
+        assertThat(matches.get(1).receipts()).hasSize(2);
+        assertThat(matches.get(1).isAmbiguous()).isTrue();
+
+        final List<Deal> deals = matcher.createDeals(OWNER, records);
+        assertThat(deals).hasSize(1);
+        assertThat(deals.get(0).operations()).containsExactly(new OperationId("op1"));
+        assertThat(deals.get(0).amount()).isEqualTo(Money.rubles(100.0d));
+        assertThat(deals.get(0).owner()).isEqualTo(OWNER);
+    }
+}
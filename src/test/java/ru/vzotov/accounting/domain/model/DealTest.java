@@ -9,7 +9,17 @@ import ru.vzotov.person.domain.model.PersonId;
 import ru.vzotov.purchase.domain.model.PurchaseId;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -106,4 +116,227 @@ public class DealTest {
         assertThat(target.description()).isEqualTo("Target deal description");
         assertThat(target.comment()).isEqualTo("Target deal comment");
     }
+
+    @Test
+    public void testIndex() {
+        OperationId operation1 = new OperationId("op1");
+        OperationId operation2 = new OperationId("op2");
+        ReceiptId receipt = new ReceiptId("receipt1");
+        PurchaseId purchase = new PurchaseId("purchase1");
+
+        Deal first = new Deal(new DealId("first"), OWNER, LocalDate.of(2021, 12, 10), Money.kopecks(100),
+                null, null, null,
+                Collections.singleton(receipt), Collections.singleton(operation1), Collections.emptySet(), Collections.emptyList());
+        Deal second = new Deal(new DealId("second"), OWNER, LocalDate.of(2021, 12, 11), Money.kopecks(200));
+
+        DealIndex index = new DealIndex();
+        index.register(first);
+        index.register(second);
+
+        assertThat(index.ownerOf(operation1)).isEqualTo(first.dealId());
+        assertThat(index.ownerOf(receipt)).isEqualTo(first.dealId());
+        assertThat(index.ownerOf(operation2)).isNull();
+
+        second.addOperation(operation2);
+        second.addPurchase(purchase);
+        assertThat(index.ownerOf(operation2)).isEqualTo(second.dealId());
+        assertThat(index.ownerOf(purchase)).isEqualTo(second.dealId());
+
+        first.moveReceipt(receipt, second);
+        assertThat(index.ownerOf(receipt)).isEqualTo(second.dealId());
+
+        assertThatThrownBy(() -> first.addOperation(operation2)).isInstanceOf(IllegalStateException.class);
+        assertThat(first.operations()).containsExactly(operation1);
+
+        first.join(second);
+        assertThat(index.ownerOf(operation2)).isEqualTo(first.dealId());
+        assertThat(index.ownerOf(receipt)).isEqualTo(first.dealId());
+        assertThat(index.ownerOf(purchase)).isEqualTo(first.dealId());
+
+        first.setOperations(Collections.singleton(operation2));
+        assertThat(index.ownerOf(operation1)).isNull();
+
+        index.unregister(first);
+        assertThat(index.ownerOf(operation2)).isNull();
+    }
+
+    @Test
+    public void testRegisterConflict() {
+        OperationId operation1 = new OperationId("op1");
+        OperationId operation2 = new OperationId("op2");
+        ReceiptId receipt = new ReceiptId("receipt1");
+
+        Deal first = new Deal(new DealId("first"), OWNER, LocalDate.of(2021, 12, 10), Money.kopecks(100),
+                null, null, null,
+                Collections.emptySet(), Collections.singleton(operation2), Collections.emptySet(), Collections.emptyList());
+        Deal second = new Deal(new DealId("second"), OWNER, LocalDate.of(2021, 12, 11), Money.kopecks(200),
+                null, null, null,
+                Collections.singleton(receipt), new LinkedHashSet<>(List.of(operation1, operation2)), Collections.emptySet(), Collections.emptyList());
+        ChangeJournal journal = new ChangeJournal();
+        second.setListener(journal);
+
+        DealIndex index = new DealIndex();
+        index.register(first);
+        assertThatThrownBy(() -> index.register(second)).isInstanceOf(IllegalStateException.class);
+        assertThat(index.ownerOf(operation1)).isNull();
+        assertThat(index.ownerOf(operation2)).isEqualTo(first.dealId());
+        assertThat(index.ownerOf(receipt)).isNull();
+        assertThat(second.listener()).isSameAs(journal);
+
+        second.setOperations(Collections.singleton(operation1));
+        index.register(second);
+        index.register(second);
+        assertThat(index.ownerOf(operation1)).isEqualTo(second.dealId());
+
+        second.addOperation(new OperationId("op3"));
+        assertThat(index.ownerOf(new OperationId("op3"))).isEqualTo(second.dealId());
+        assertThat(journal.read(1, 10)).extracting(DomainChange::type).containsExactly(
+                DomainChange.Type.DEAL_OPERATION_REMOVED,
+                DomainChange.Type.DEAL_OPERATION_ADDED);
+
+        index.unregister(second);
+        assertThat(second.listener()).isSameAs(journal);
+        assertThat(index.ownerOf(operation1)).isNull();
+    }
+
+    @Test
+    public void testRejectedJoin() {
+        OperationId operation1 = new OperationId("op1");
+        OperationId operation2 = new OperationId("op2");
+        OperationId rejected = new OperationId("rejected");
+        ReceiptId receipt1 = new ReceiptId("receipt1");
+        ReceiptId receipt2 = new ReceiptId("receipt2");
+        PurchaseId purchase1 = new PurchaseId("purchase1");
+        PurchaseId purchase2 = new PurchaseId("purchase2");
+
+        Deal target = new Deal(new DealId("target"), OWNER, LocalDate.of(2021, 12, 10), Money.kopecks(100),
+                null, null, null,
+                Collections.singleton(receipt1), Collections.singleton(operation1), Collections.emptySet(), Collections.singletonList(purchase1));
+        Deal source = new Deal(new DealId("source"), OWNER, LocalDate.of(2021, 12, 11), Money.kopecks(200),
+                null, null, null,
+                Collections.singleton(receipt2), new LinkedHashSet<>(List.of(operation2, rejected)), Collections.emptySet(), Collections.singletonList(purchase2));
+        DealIndex index = new DealIndex();
+        index.register(target);
+        index.register(source);
+        target.setListener(DealListener.compose(new DealListener() {
+            @Override
+            public void addingOperation(Deal deal, OperationId operation) {
+                if (rejected.equals(operation)) throw new IllegalStateException("rejected");
+            }
+        }, target.listener()));
+
+        assertThatThrownBy(() -> target.join(source)).isInstanceOf(IllegalStateException.class);
+        assertThat(target.receipts()).containsExactly(receipt1);
+        assertThat(target.operations()).containsExactly(operation1);
+        assertThat(target.purchases()).containsExactly(purchase1);
+        assertThat(source.receipts()).containsExactly(receipt2);
+        assertThat(source.operations()).containsExactlyInAnyOrder(operation2, rejected);
+        assertThat(source.purchases()).containsExactly(purchase2);
+        assertThat(index.ownerOf(receipt2)).isEqualTo(source.dealId());
+        assertThat(index.ownerOf(operation2)).isEqualTo(source.dealId());
+        assertThat(index.ownerOf(rejected)).isEqualTo(source.dealId());
+        assertThat(index.ownerOf(purchase2)).isEqualTo(source.dealId());
+    }
+
+    @Test
+    public void testManyOperations() {
+        Deal deal = new Deal(new DealId("deal"), OWNER, LocalDate.of(2021, 12, 10), Money.kopecks(100));
+        assertThat(deal.operations()).isEmpty();
+        assertThat(deal.cardOperations()).isEmpty();
+
+        for (int i = 0; i < CompactSet.THRESHOLD * 2; i++) {
+            deal.addOperation(new OperationId("op" + i));
+            deal.addOperation(new OperationId("op" + i));
+        }
+        assertThat(deal.operations()).hasSize(CompactSet.THRESHOLD * 2).contains(new OperationId("op0"));
+
+        deal.setOperations(Collections.singleton(new OperationId("op3")));
+        assertThat(deal.operations()).containsExactly(new OperationId("op3"));
+    }
+
+    @Test
+    public void testConcurrentJoin() throws InterruptedException {
+        final int deals = 8;
+        final List<Deal> ring = new ArrayList<>();
+        final Set<OperationId> all = new HashSet<>();
+        for (int i = 0; i < deals; i++) {
+            final OperationId operation = new OperationId("op" + i);
+            all.add(operation);
+            ring.add(new Deal(new DealId("deal" + i), OWNER, LocalDate.of(2021, 12, 10), Money.kopecks(100),
+                    null, null, null,
+                    Collections.emptySet(), Collections.singleton(operation), Collections.emptySet(), Collections.emptyList()));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(deals);
+        for (int t = 0; t < deals; t++) {
+            final int thread = t;
+            executor.execute(() -> {
+                final Random random = new Random(thread);
+                for (int k = 0; k < 2000; k++) {
+                    final int i = random.nextInt(deals);
+                    final int j = (i + 1 + random.nextInt(deals - 1)) % deals;
+                    ring.get(i).join(ring.get(j));
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        final List<OperationId> operations = ring.stream().flatMap(deal -> deal.operations().stream()).toList();
+        assertThat(operations).hasSize(deals).containsExactlyInAnyOrderElementsOf(all);
+    }
+
+    @Test
+    public void testRejectedSetOperations() {
+        OperationId own = new OperationId("op0");
+        OperationId conflicting = new OperationId("op2");
+        Deal first = new Deal(new DealId("first"), OWNER, LocalDate.of(2021, 12, 10), Money.kopecks(100),
+                null, null, null,
+                Collections.emptySet(), Collections.singleton(conflicting), Collections.emptySet(), Collections.emptyList());
+        Deal second = new Deal(new DealId("second"), OWNER, LocalDate.of(2021, 12, 11), Money.kopecks(200),
+                null, null, null,
+                Collections.emptySet(), Collections.singleton(own), Collections.emptySet(), Collections.emptyList());
+        DealIndex index = new DealIndex();
+        index.register(first);
+        index.register(second);
+
+        Set<OperationId> operations = new LinkedHashSet<>(List.of(new OperationId("op1"), conflicting, new OperationId("op3")));
+        assertThatThrownBy(() -> second.setOperations(operations)).isInstanceOf(IllegalStateException.class);
+        assertThat(second.operations()).containsExactly(own);
+        assertThat(index.ownerOf(own)).isEqualTo(second.dealId());
+        assertThat(index.ownerOf(new OperationId("op1"))).isNull();
+        assertThat(index.ownerOf(conflicting)).isEqualTo(first.dealId());
+        assertThat(index.ownerOf(new OperationId("op3"))).isNull();
+
+        Deal third = new Deal(new DealId("third"), OWNER, LocalDate.of(2021, 12, 12), Money.kopecks(300),
+                null, null, null,
+                Collections.emptySet(), Collections.singleton(conflicting), Collections.emptySet(), Collections.emptyList());
+        assertThatThrownBy(() -> third.moveOperation(conflicting, second)).isInstanceOf(IllegalStateException.class);
+        assertThat(third.operations()).containsExactly(conflicting);
+        assertThat(second.operations()).containsExactly(own);
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        final Deal deal = new Deal(new DealId("deal"), OWNER, LocalDate.of(2021, 12, 10), Money.kopecks(100));
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Future<?> writer = executor.submit(() -> {
+            for (int k = 0; k < 20000; k++) {
+                deal.addOperation(new OperationId("op" + k % 64));
+                deal.addPurchase(new PurchaseId("purchase" + k % 64));
+                if (k % 64 == 63) {
+                    deal.setOperations(Collections.emptySet());
+                    deal.setPurchases(Collections.emptyList());
+                }
+            }
+        });
+        while (!writer.isDone()) {
+            assertThat(deal.operationCount()).isBetween(0, 64);
+        }
+        writer.get();
+        executor.shutdown();
+        assertThat(deal.hasPurchases()).isTrue();
+        assertThat(deal.operationCount()).isEqualTo(20000 % 64);
+        assertThat(deal.operations()).hasSize(20000 % 64);
+    }
 }
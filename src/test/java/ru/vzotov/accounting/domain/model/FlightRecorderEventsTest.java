@@ -0,0 +1,83 @@
+package ru.vzotov.accounting.domain.model;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.Test;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.banking.domain.model.OperationType;
+import ru.vzotov.calendar.domain.model.Recurrence;
+import ru.vzotov.calendar.domain.model.RecurrenceUnit;
+import ru.vzotov.calendar.domain.model.WorkCalendars;
+import ru.vzotov.domain.model.Money;
+import ru.vzotov.person.domain.model.PersonId;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FlightRecorderEventsTest {
+
+    private static final String BALANCE = "ru.vzotov.accounting.BalanceCalculation";
+    private static final String BUDGET = "ru.vzotov.accounting.BudgetCalculation";
+    private static final String SCRIPT = "ru.vzotov.accounting.ScriptEvaluation";
+
+    private static final AccountNumber ACCOUNT = new AccountNumber("40817810108290012345");
+
+    @Test
+    public void testEvents() throws Exception {
+        final LocalDate start = LocalDate.of(2020, Month.MARCH, 1);
+        final Budget budget = new Budget(BudgetId.nextId(), PersonId.nextId(), "default", Set.of(new BudgetRule(
+                BudgetRuleId.nextId(), BudgetRuleType.INCOME, null, null, null, ACCOUNT,
+                new Recurrence(start, null, RecurrenceUnit.MONTHLY, 1, 5), "Заработная плата", Money.rubles(20000.0d),
+                new Calculation("value.amount().doubleValue() * 1.1;")
+        )));
+        final Remain remain = new Remain(ACCOUNT, start, Money.rubles(100.0d));
+        final List<Operation> operations = List.of(new Operation(
+                new OperationId("op-1"), start.plusDays(1), Money.rubles(10.0d), OperationType.WITHDRAW, ACCOUNT, "op-1"));
+
+        final Map<String, RecordedEvent> events = new ConcurrentHashMap<>();
+        final CountDownLatch received = new CountDownLatch(3);
+        try (RecordingStream stream = new RecordingStream()) {
+            for (String name : List.of(BALANCE, BUDGET, SCRIPT)) {
+                stream.enable(name).withThreshold(Duration.ZERO);
+                stream.onEvent(name, event -> {
+                    if (events.putIfAbsent(name, event) == null) received.countDown();
+                });
+            }
+            stream.startAsync();
+
+            new Balance(remain, operations);
+            budget.calculate(WorkCalendars.CALENDAR_2020, Collections.emptyList(), ACCOUNT,
+                    start, LocalDate.of(2020, Month.MARCH, 31));
+
+            assertThat(received.await(30, TimeUnit.SECONDS)).isTrue();
+        }
+
+        final RecordedEvent balance = events.get(BALANCE);
+        assertThat(balance.getString("account")).isEqualTo(ACCOUNT.number());
+        assertThat(balance.getString("remainDate")).isEqualTo("2020-03-01");
+        assertThat(balance.getInt("operations")).isEqualTo(1);
+
+        final RecordedEvent forecast = events.get(BUDGET);
+        assertThat(forecast.getString("budgetId")).isEqualTo(budget.budgetId().value());
+        assertThat(forecast.getString("start")).isEqualTo("2020-03-01");
+        assertThat(forecast.getString("finish")).isEqualTo("2020-03-31");
+        assertThat(forecast.getInt("rules")).isEqualTo(1);
+        assertThat(forecast.getInt("operations")).isZero();
+
+        final RecordedEvent script = events.get(SCRIPT);
+        assertThat(script.getString("ruleName")).isEqualTo("Заработная плата");
+        assertThat(script.getString("date")).isEqualTo("2020-03-05");
+    }
+}
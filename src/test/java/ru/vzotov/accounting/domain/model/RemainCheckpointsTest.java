@@ -0,0 +1,61 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.junit.jupiter.api.Test;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.banking.domain.model.OperationType;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RemainCheckpointsTest {
+
+    private static final AccountNumber ACCOUNT = new AccountNumber("40817810108290012345");
+
+    private static Operation operation(String id, LocalDate date, double amount, OperationType type) {
+        return new Operation(new OperationId(id), date, Money.rubles(amount), type, ACCOUNT, id);
+    }
+
+    @Test
+    public void testCheckpoints() {
+        final Remain remain = new Remain(ACCOUNT, LocalDate.of(2020, Month.JANUARY, 1), Money.rubles(100.0d));
+        final List<Operation> operations = new ArrayList<>(List.of(
+                operation("op-1", LocalDate.of(2020, Month.JANUARY, 10), 10.0d, OperationType.WITHDRAW),
+                operation("op-2", LocalDate.of(2020, Month.FEBRUARY, 1), 50.0d, OperationType.DEPOSIT),
+                operation("op-3", LocalDate.of(2020, Month.MARCH, 20), 20.0d, OperationType.WITHDRAW),
+                operation("op-4", LocalDate.of(2020, Month.APRIL, 5), 5.0d, OperationType.WITHDRAW)
+        ));
+        final RemainCheckpoints checkpoints = RemainCheckpoints.monthly(new RemainHistory(List.of(remain)));
+
+        assertThat(checkpoints.checkpoint(ACCOUNT, LocalDate.of(2020, Month.APRIL, 15), operations)).isEqualTo(3);
+        assertThat(checkpoints.checkpoints().remains(ACCOUNT))
+                .extracting(Remain::value)
+                .containsExactly(Money.rubles(90.0d), Money.rubles(140.0d), Money.rubles(120.0d));
+        assertThat(checkpoints.nearest(ACCOUNT, LocalDate.of(2020, Month.APRIL, 15)).date()).isEqualTo(LocalDate.of(2020, Month.APRIL, 1));
+
+        final LocalDate date = LocalDate.of(2020, Month.APRIL, 30);
+        assertThat(checkpoints.balance(ACCOUNT, date, operations).value())
+                .isEqualTo(Money.rubles(115.0d))
+                .isEqualTo(new Balance(remain, operations).value());
+
+        final AccountMovement movement = checkpoints.movement(ACCOUNT, LocalDate.of(2020, Month.MARCH, 15), date, operations);
+        assertThat(movement.start().value()).isEqualTo(Money.rubles(140.0d));
+        assertThat(movement.finish().value()).isEqualTo(Money.rubles(115.0d));
+        assertThat(movement.operations()).hasSize(2);
+
+        // correction in February invalidates checkpoints of March and April
+        operations.add(operation("op-5", LocalDate.of(2020, Month.FEBRUARY, 15), 40.0d, OperationType.WITHDRAW));
+        assertThat(checkpoints.invalidate(ACCOUNT, LocalDate.of(2020, Month.FEBRUARY, 15))).isEqualTo(2);
+        assertThat(checkpoints.nearest(ACCOUNT, date).date()).isEqualTo(LocalDate.of(2020, Month.FEBRUARY, 1));
+        assertThat(checkpoints.checkpoint(ACCOUNT, date, operations)).isEqualTo(2);
+        assertThat(checkpoints.balance(ACCOUNT, date, operations).value())
+                .isEqualTo(Money.rubles(75.0d))
+                .isEqualTo(new Balance(remain, operations).value());
+    }
+}
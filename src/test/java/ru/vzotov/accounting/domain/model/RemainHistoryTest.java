@@ -0,0 +1,78 @@
+package ru.vzotov.accounting.domain.model;
+
+import org.junit.jupiter.api.Test;
+import ru.vzotov.banking.domain.model.AccountNumber;
+import ru.vzotov.banking.domain.model.Operation;
+import ru.vzotov.banking.domain.model.OperationId;
+import ru.vzotov.banking.domain.model.OperationType;
+import ru.vzotov.domain.model.Money;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Currency;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RemainHistoryTest {
+
+    private static final AccountNumber CARD = new AccountNumber("40817810108290012345");
+    private static final AccountNumber SAVINGS = new AccountNumber("40817810108290054321");
+
+    @Test
+    public void testFloor() {
+        final RemainHistory history = new RemainHistory(List.of(
+                new Remain(CARD, LocalDate.of(2020, Month.MARCH, 1), Money.rubles(300.0d)),
+                new Remain(CARD, LocalDate.of(2020, Month.JANUARY, 1), Money.rubles(100.0d)),
+                new Remain(SAVINGS, LocalDate.of(2020, Month.FEBRUARY, 1), Money.rubles(1000.0d))
+        ));
+        history.addAll(List.of(
+                new Remain(CARD, LocalDate.of(2020, Month.FEBRUARY, 1), Money.rubles(200.0d)),
+                new Remain(CARD, LocalDate.of(2020, Month.MARCH, 1), Money.rubles(350.0d))
+        ));
+
+        assertThat(history.accounts()).containsExactlyInAnyOrder(CARD, SAVINGS);
+        assertThat(history.size(CARD)).isEqualTo(3);
+        assertThat(history.floor(CARD, LocalDate.of(2019, Month.DECEMBER, 31))).isNull();
+        assertThat(history.floor(CARD, LocalDate.of(2020, Month.JANUARY, 1)).value()).isEqualTo(Money.rubles(100.0d));
+        assertThat(history.floor(CARD, LocalDate.of(2020, Month.FEBRUARY, 15)).value()).isEqualTo(Money.rubles(200.0d));
+        assertThat(history.floor(CARD, LocalDate.of(2021, Month.JANUARY, 1)))
+                .isEqualTo(new Remain(CARD, LocalDate.of(2020, Month.MARCH, 1), Money.rubles(350.0d)));
+        assertThat(history.floor(LocalDate.of(2020, Month.JANUARY, 15))).containsOnlyKeys(CARD);
+        assertThat(history.floor(LocalDate.of(2020, Month.FEBRUARY, 15))).containsOnlyKeys(CARD, SAVINGS);
+        assertThat(history.remains(CARD)).extracting(Remain::date).containsExactly(
+                LocalDate.of(2020, Month.JANUARY, 1),
+                LocalDate.of(2020, Month.FEBRUARY, 1),
+                LocalDate.of(2020, Month.MARCH, 1));
+    }
+
+    @Test
+    public void testInstances() {
+        final Remain january = new Remain(CARD, LocalDate.of(2020, Month.JANUARY, 1), Money.rubles(100.0d));
+        final Remain february = new Remain(CARD, LocalDate.of(2020, Month.FEBRUARY, 1), Money.ofRaw(5000L, Currency.getInstance("USD")));
+        final Remain savings = new Remain(SAVINGS, LocalDate.of(2020, Month.JANUARY, 1), Money.rubles(1000.0d));
+        final RemainHistory history = new RemainHistory(List.of(february, january, savings));
+
+        assertThat(history.floor(CARD, LocalDate.of(2020, Month.JANUARY, 31))).isSameAs(january);
+        assertThat(history.floor(CARD, LocalDate.of(2020, Month.FEBRUARY, 1))).isSameAs(february);
+        assertThat(history.floor(LocalDate.of(2020, Month.JANUARY, 31)).get(SAVINGS)).isSameAs(savings);
+        assertThat(history.remains(CARD)).containsExactly(january, february);
+    }
+
+    @Test
+    public void testBalance() {
+        final RemainHistory history = new RemainHistory(List.of(
+                new Remain(CARD, LocalDate.of(2020, Month.JANUARY, 1), Money.rubles(100.0d)),
+                new Remain(CARD, LocalDate.of(2020, Month.FEBRUARY, 1), Money.rubles(200.0d))
+        ));
+        final List<Operation> operations = List.of(
+                new Operation(new OperationId("op-1"), LocalDate.of(2020, Month.JANUARY, 10), Money.rubles(50.0d), OperationType.WITHDRAW, CARD, "op-1"),
+                new Operation(new OperationId("op-2"), LocalDate.of(2020, Month.FEBRUARY, 10), Money.rubles(30.0d), OperationType.WITHDRAW, CARD, "op-2"),
+                new Operation(new OperationId("op-3"), LocalDate.of(2020, Month.MARCH, 10), Money.rubles(20.0d), OperationType.DEPOSIT, CARD, "op-3")
+        );
+
+        assertThat(Balance.of(history, CARD, LocalDate.of(2020, Month.JANUARY, 31), operations).value()).isEqualTo(Money.rubles(50.0d));
+        assertThat(Balance.of(history, CARD, LocalDate.of(2020, Month.FEBRUARY, 29), operations).value()).isEqualTo(Money.rubles(170.0d));
+        assertThat(Balance.of(history, CARD, LocalDate.of(2020, Month.MARCH, 31), operations).value()).isEqualTo(Money.rubles(190.0d));
+    }
+}